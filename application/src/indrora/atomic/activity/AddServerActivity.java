@@ -162,6 +162,8 @@ public class AddServerActivity extends SherlockActivity implements OnClickListen
         }
       }
 
+      ((Spinner) findViewById(R.id.flood_control)).setSelection(server.getFloodControl());
+
       // Make the requested server null, since we don't care anymore.
       if(_action.equals(ACTION_DUPE_SERVER)) {
         this.server = null;
@@ -397,6 +399,7 @@ public class AddServerActivity extends SherlockActivity implements OnClickListen
     String charset = ((Spinner) findViewById(R.id.charset)).getSelectedItem().toString();
     Boolean useSSL = ((CheckBox) findViewById(R.id.useSSL)).isChecked();
     Boolean autoConnect = ((CheckBox) findViewById(R.id.autoconnect)).isChecked();
+    int floodControl = ((Spinner) findViewById(R.id.flood_control)).getSelectedItemPosition();
 
     Server server = new Server();
     server.setHost(host);
@@ -406,6 +409,7 @@ public class AddServerActivity extends SherlockActivity implements OnClickListen
     server.setCharset(charset);
     server.setUseSSL(useSSL);
     server.setAutoconnect(autoConnect);
+    server.setFloodControl(floodControl);
     server.setStatus(Status.DISCONNECTED);
 
     return server;
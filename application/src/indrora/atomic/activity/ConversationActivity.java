@@ -25,7 +25,11 @@ import indrora.atomic.Atomic;
 import indrora.atomic.R;
 import indrora.atomic.adapter.ConversationPagerAdapter;
 import indrora.atomic.adapter.MessageListAdapter;
+import indrora.atomic.adapter.SearchHitAdapter;
 import indrora.atomic.command.CommandParser;
+import indrora.atomic.db.MessageLog;
+import indrora.atomic.db.SearchHit;
+import indrora.atomic.db.SearchQuery;
 import indrora.atomic.indicator.ConversationIndicator;
 import indrora.atomic.indicator.ConversationTitlePageIndicator.IndicatorStyle;
 import indrora.atomic.irc.IRCBinder;
@@ -37,6 +41,7 @@ import indrora.atomic.listener.SpeechClickListener;
 import indrora.atomic.model.Broadcast;
 import indrora.atomic.model.ColorScheme;
 import indrora.atomic.model.Conversation;
+import indrora.atomic.model.EventBus;
 import indrora.atomic.model.Extra;
 import indrora.atomic.model.Message;
 import indrora.atomic.model.Message.MessageColor;
@@ -46,11 +51,13 @@ import indrora.atomic.model.Server;
 import indrora.atomic.model.ServerInfo;
 import indrora.atomic.model.Settings;
 import indrora.atomic.model.Status;
-import indrora.atomic.receiver.ConversationReceiver;
-import indrora.atomic.receiver.ServerReceiver;
+import indrora.atomic.utils.FrameScheduler;
+import indrora.atomic.view.MessageListView;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 
@@ -61,7 +68,6 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnClickListener;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
@@ -70,6 +76,7 @@ import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.speech.RecognizerIntent;
 import android.support.v4.view.ViewPager;
 import android.support.v4.view.ViewPager.OnPageChangeListener;
@@ -110,6 +117,13 @@ public class ConversationActivity extends SherlockActivity implements
   private static final int REQUEST_CODE_USER = 3;
   private static final int REQUEST_CODE_NICK_COMPLETION = 4;
 
+  // Main thread time spent on new messages per frame, in ms, and the
+  // most messages added to the lists per frame.
+  private static final long FRAME_BUDGET = 8;
+  private static final int MAX_MESSAGES_PER_FRAME = 100;
+
+  private static final int MAX_SEARCH_RESULTS = 200;
+
   public static final String EXTRA_TARGET = "target";
 
   private static ColorScheme _scheme;
@@ -121,8 +135,6 @@ public class ConversationActivity extends SherlockActivity implements
   private int serverId;
   private Server server;
   private IRCBinder binder;
-  private ConversationReceiver channelReceiver;
-  private ServerReceiver serverReceiver;
 
   private ViewPager pager;
   private ConversationIndicator indicator;
@@ -146,6 +158,16 @@ public class ConversationActivity extends SherlockActivity implements
 
   private boolean reconnectDialogActive = false;
 
+  // Conversations with buffered messages waiting for the next frame.
+  private final LinkedHashSet<String> dirtyConversations = new LinkedHashSet<String>();
+  private final FrameScheduler frameScheduler = new FrameScheduler(
+    new FrameScheduler.Task() {
+      @Override
+      public boolean onFrame(long deadline) {
+        return updateConversations(deadline);
+      }
+    }, FRAME_BUDGET);
+
   private final OnKeyListener inputKeyListener = new OnKeyListener() {
     /**
      * On key pressed (input line)
@@ -421,25 +443,10 @@ public class ConversationActivity extends SherlockActivity implements
    */
   @Override
   public void onResume() {
-    // register the receivers as early as possible, otherwise we may loose a
-    // broadcast message
-    channelReceiver = new ConversationReceiver(server.getId(), this);
-    registerReceiver(channelReceiver, new IntentFilter(
-                       Broadcast.CONVERSATION_MESSAGE));
-    registerReceiver(channelReceiver, new IntentFilter(
-                       Broadcast.CONVERSATION_NEW));
-    registerReceiver(channelReceiver, new IntentFilter(
-                       Broadcast.CONVERSATION_REMOVE));
-    registerReceiver(channelReceiver, new IntentFilter(
-                       Broadcast.CONVERSATION_TOPIC));
-
-    registerReceiver(channelReceiver, new IntentFilter(
-        Broadcast.CONVERSATION_CLEAR));
-
-    
-    serverReceiver = new ServerReceiver(this);
-    registerReceiver(serverReceiver, new IntentFilter(
-                       Broadcast.SERVER_UPDATE));
+    // register the listeners as early as possible, otherwise we may loose
+    // an event
+    EventBus.getInstance().register(server.getId(), (ConversationListener) this);
+    EventBus.getInstance().register((ServerListener) this);
 
     super.onResume();
 
@@ -483,8 +490,7 @@ public class ConversationActivity extends SherlockActivity implements
       mAdapter = pagerAdapter.getItemAdapter(name);
 
       if (mAdapter != null) {
-        mAdapter.addBulkMessages(conversation.getBuffer());
-        conversation.clearBuffer();
+        mAdapter.addBulkMessages(conversation.pollBufferedMessages());
       } else {
         // Was conversation created while we were paused?
         if (pagerAdapter.getPositionByName(name) == -1) {
@@ -551,8 +557,12 @@ public class ConversationActivity extends SherlockActivity implements
     }
 
     unbindService(this);
-    unregisterReceiver(channelReceiver);
-    unregisterReceiver(serverReceiver);
+    EventBus.getInstance().unregister((ConversationListener) this);
+    EventBus.getInstance().unregister((ServerListener) this);
+
+    // Whatever is still buffered is picked up again in onResume().
+    frameScheduler.cancel();
+    dirtyConversations.clear();
 
     // Force the OSK to go away
     // This makes it so that if the implicit keyboard doesn't work, the explicit one
@@ -645,6 +655,10 @@ public class ConversationActivity extends SherlockActivity implements
                              REQUEST_CODE_JOIN);
       break;
 
+    case R.id.search:
+      showSearchDialog(pagerAdapter.getItem(pager.getCurrentItem()));
+      break;
+
       /* Get users in the channel. */
     case R.id.users:
       Conversation conversationForUserList = pagerAdapter.getItem(pager
@@ -716,13 +730,7 @@ public class ConversationActivity extends SherlockActivity implements
                                          .getHistorySize());
                     server.addConversation(query);
 
-                    Intent intent = Broadcast
-                                    .createConversationIntent(
-                                      Broadcast.CONVERSATION_NEW,
-                                      server.getId(),
-                                      nicknameWithoutPrefix);
-                    binder.getService().sendBroadcast(
-                      intent);
+                    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_NEW, server.getId(), nicknameWithoutPrefix);
                   }
                   break;
                 case 2:
@@ -806,6 +814,90 @@ public class ConversationActivity extends SherlockActivity implements
     return true;
   }
 
+  /**
+   * Ask for a query and search the history of a conversation
+   *
+   * @param conversation
+   */
+  private void showSearchDialog(final Conversation conversation) {
+    if (conversation.getLog() == null) {
+      Toast.makeText(this, R.string.search_not_logged, Toast.LENGTH_SHORT).show();
+      return;
+    }
+
+    final EditText input = new EditText(this);
+    input.setHint(R.string.search_hint);
+    input.setSingleLine();
+
+    new AlertDialog.Builder(this)
+      .setTitle(R.string.search)
+      .setView(input)
+      .setPositiveButton(R.string.search, new OnClickListener() {
+        @Override
+        public void onClick(DialogInterface dialog, int which) {
+          search(conversation, input.getText().toString());
+        }
+      })
+      .setNegativeButton(android.R.string.cancel, null)
+      .show();
+  }
+
+  /**
+   * Search the log of a conversation in the background and show the hits
+   *
+   * @param conversation
+   * @param text The query as typed by the user
+   */
+  private void search(final Conversation conversation, String text) {
+    MessageLog log = conversation.getLog();
+    if (log == null) {
+      return;
+    }
+
+    log.search(SearchQuery.parse(text), MAX_SEARCH_RESULTS, new MessageLog.SearchCallback() {
+      @Override
+      public void onResults(final List<SearchHit> hits) {
+        runOnUiThread(new Runnable() {
+          @Override
+          public void run() {
+            if (!isFinishing()) {
+              showSearchResults(conversation, hits);
+            }
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Show search hits; picking one scrolls the conversation to it
+   *
+   * @param conversation
+   * @param hits
+   */
+  private void showSearchResults(final Conversation conversation, final List<SearchHit> hits) {
+    if (hits.isEmpty()) {
+      Toast.makeText(this, R.string.search_no_results, Toast.LENGTH_SHORT).show();
+      return;
+    }
+
+    new AlertDialog.Builder(this)
+      .setTitle(getString(R.string.search_results, hits.size()))
+      .setAdapter(new SearchHitAdapter(this, hits), new OnClickListener() {
+        @Override
+        public void onClick(DialogInterface dialog, int which) {
+          String name = conversation.getName();
+          pager.setCurrentItem(pagerAdapter.getPositionByName(name));
+
+          MessageListView view = pagerAdapter.getItemView(name);
+          if (view != null) {
+            view.showMessage(hits.get(which).getIndex());
+          }
+        }
+      })
+      .show();
+  }
+
   /**
    * Get server object assigned to this activity
    *
@@ -820,37 +912,79 @@ public class ConversationActivity extends SherlockActivity implements
    */
   @Override
   public void onConversationMessage(String target) {
-    Conversation conversation = server.getConversation(target);
+    // The buffered messages are taken over in the next frame, together
+    // with those of every other conversation that changed until then.
+    dirtyConversations.add(target);
+    frameScheduler.schedule();
+  }
 
-    if (conversation == null) {
-      // In an early state it can happen that the conversation object
-      // is not created yet.
-      return;
-    }
+  /**
+   * Move buffered messages of the changed conversations into their
+   * adapters, until the frame's deadline passes or MAX_MESSAGES_PER_FRAME
+   * messages were added. Each adapter is notified and the indicator
+   * refreshed once.
+   *
+   * @param deadline SystemClock.uptimeMillis() by which to stop
+   * @return true if messages are left for the next frame
+   */
+  private boolean updateConversations(long deadline) {
+    int added = 0;
+    boolean more = false;
+
+    Iterator<String> iterator = dirtyConversations.iterator();
+    while (iterator.hasNext()) {
+      String target = iterator.next();
+      Conversation conversation = server.getConversation(target);
+
+      if (conversation == null) {
+        // In an early state it can happen that the conversation object
+        // is not created yet.
+        iterator.remove();
+        continue;
+      }
 
-    MessageListAdapter adapter = pagerAdapter.getItemAdapter(target);
+      MessageListAdapter adapter = pagerAdapter.getItemAdapter(target);
+      boolean changed = false;
+
+      while (conversation.hasBufferedMessages()) {
+        if (added >= MAX_MESSAGES_PER_FRAME || SystemClock.uptimeMillis() > deadline) {
+          more = true;
+          break;
+        }
 
-    while (conversation.hasBufferedMessages()) {
-      Message message = conversation.pollBufferedMessage();
+        Message message = conversation.pollBufferedMessage();
 
-      if (adapter != null && message != null) {
-        adapter.addMessage(message);
-        int status;
+        if (adapter != null && message != null) {
+          adapter.addMessage(message, false);
+          changed = true;
+          added++;
+          int status;
 
-        switch (message.getType()) {
-        case Message.TYPE_MISC:
-          status = Conversation.STATUS_MISC;
-          break;
+          switch (message.getType()) {
+          case Message.TYPE_MISC:
+            status = Conversation.STATUS_MISC;
+            break;
 
-        default:
-          status = Conversation.STATUS_MESSAGE;
-          break;
+          default:
+            status = Conversation.STATUS_MESSAGE;
+            break;
+          }
+          conversation.setStatus(status);
         }
-        conversation.setStatus(status);
       }
+
+      if (changed) {
+        adapter.notifyDataSetChanged();
+      }
+      if (more) {
+        break;
+      }
+      iterator.remove();
     }
 
     indicator.updateStateColors();
+
+    return more;
   }
 
   /**
@@ -0,0 +1,70 @@
+/*
+Yaaic - Yet Another Android IRC Client
+
+Copyright 2009-2013 Sebastian Kaspari
+
+This file is part of Yaaic.
+
+Yaaic is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Yaaic is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package indrora.atomic.activity;
+
+import indrora.atomic.Atomic;
+import indrora.atomic.R;
+import indrora.atomic.db.MessageLogger;
+import indrora.atomic.model.Server;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import android.app.Activity;
+import android.app.AlertDialog.Builder;
+import android.content.DialogInterface;
+import android.content.DialogInterface.OnClickListener;
+import android.os.Bundle;
+
+/**
+ * Asks whether to delete the history kept on disk, and does so
+ */
+public class ForgetHistoryActivity extends Activity {
+  @Override
+  protected void onCreate(Bundle savedInstanceState) {
+    super.onCreate(savedInstanceState);
+    Builder builder = new Builder(this);
+    builder.setTitle(R.string.settings_forget_history);
+    builder.setMessage(R.string.settings_forget_history_long);
+    builder.setPositiveButton(android.R.string.yes, new OnClickListener() {
+      @Override
+      public void onClick(DialogInterface dialog, int which) {
+        // Open conversations start over with an empty log
+        ArrayList<Server> servers = Atomic.getInstance().getServersAsArrayList();
+        for (Server server : servers) {
+          server.closeLogs();
+        }
+        MessageLogger.getInstance().delete(new File(getFilesDir(), MessageLogger.DIRECTORY));
+        for (Server server : servers) {
+          server.openLogs();
+        }
+        finish();
+      }
+    });
+    builder.setNegativeButton(android.R.string.no, new OnClickListener() {
+      @Override
+      public void onClick(DialogInterface dialog, int which) {
+        finish();
+      }
+    });
+    builder.create().show();
+  }
+}
@@ -27,11 +27,10 @@ import indrora.atomic.db.Database;
 import indrora.atomic.irc.IRCBinder;
 import indrora.atomic.irc.IRCService;
 import indrora.atomic.listener.ServerListener;
-import indrora.atomic.model.Broadcast;
+import indrora.atomic.model.EventBus;
 import indrora.atomic.model.Extra;
 import indrora.atomic.model.Server;
 import indrora.atomic.model.Status;
-import indrora.atomic.receiver.ServerReceiver;
 import indrora.atomic.utils.LatchingValue;
 
 import java.util.ArrayList;
@@ -44,7 +43,6 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
@@ -71,7 +69,6 @@ import com.actionbarsherlock.view.MenuItem;
  */
 public class ServersActivity extends SherlockActivity implements ServiceConnection, ServerListener, OnItemClickListener, OnItemLongClickListener {
   private IRCBinder binder;
-  private ServerReceiver receiver;
   private ServerListAdapter adapter;
   private ListView list;
   private static int instanceCount = 0;
@@ -135,8 +132,7 @@ public class ServersActivity extends SherlockActivity implements ServiceConnecti
     }
     bindService(intent, this, flags);
 
-    receiver = new ServerReceiver(this);
-    registerReceiver(receiver, new IntentFilter(Broadcast.SERVER_UPDATE));
+    EventBus.getInstance().register(this);
 
     adapter.loadServers();
   }
@@ -153,7 +149,7 @@ public class ServersActivity extends SherlockActivity implements ServiceConnecti
     }
 
     unbindService(this);
-    unregisterReceiver(receiver);
+    EventBus.getInstance().unregister(this);
   }
 
   /**
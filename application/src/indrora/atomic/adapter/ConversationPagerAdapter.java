@@ -26,9 +26,10 @@ import indrora.atomic.model.Conversation;
 import indrora.atomic.model.Server;
 import indrora.atomic.view.MessageListView;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Locale;
 
 
 import android.content.Context;
@@ -50,8 +51,11 @@ public class ConversationPagerAdapter extends PagerAdapter implements Conversati
   public static final int COLOR_HIGHLIGHT = 0xFFFFBB00;
 
   private final Server server;
-  private LinkedList<ConversationInfo> conversations;
+  private ArrayList<ConversationInfo> conversations;
   private final HashMap<Integer, View> views;
+  // Lower case conversation name to position; rebuilt whenever
+  // conversations are added or removed
+  private final HashMap<String, Integer> positions;
 
   /**
    * Container class to remember conversation and view association.
@@ -85,8 +89,9 @@ public class ConversationPagerAdapter extends PagerAdapter implements Conversati
   public ConversationPagerAdapter(Context context, Server server) {
     this.server = server;
 
-    conversations = new LinkedList<ConversationInfo>();
+    conversations = new ArrayList<ConversationInfo>();
     views = new HashMap<Integer, View>();
+    positions = new HashMap<String, Integer>();
   }
 
   /**
@@ -97,6 +102,7 @@ public class ConversationPagerAdapter extends PagerAdapter implements Conversati
   public void addConversation(Conversation conversation) {
     conversations.add(new ConversationInfo(conversation));
     Collections.sort(conversations);
+    updatePositions();
 
     notifyDataSetChanged();
   }
@@ -108,6 +114,7 @@ public class ConversationPagerAdapter extends PagerAdapter implements Conversati
    */
   public void removeConversation(int position) {
     conversations.remove(position);
+    updatePositions();
 
     notifyDataSetChanged();
   }
@@ -162,6 +169,22 @@ public class ConversationPagerAdapter extends PagerAdapter implements Conversati
     return getItemAdapter(getPositionByName(name));
   }
 
+  /**
+   * Get the {@link MessageListView} for the conversation with the given
+   * name.
+   *
+   * @param name
+   * @return The view, or null if it was not created yet
+   */
+  public MessageListView getItemView(String name) {
+    ConversationInfo convInfo = getItemInfo(getPositionByName(name));
+    if (convInfo != null) {
+      return convInfo.view;
+    } else {
+      return null;
+    }
+  }
+
   /**
    * Get ConversationInfo on item at position
    *
@@ -181,24 +204,34 @@ public class ConversationPagerAdapter extends PagerAdapter implements Conversati
    * @return The item
    */
   public int getPositionByName(String name) {
+    if (name == null) {
+      return -1;
+    }
+
+    Integer position = positions.get(name.toLowerCase(Locale.US));
+    return position != null ? position : -1;
+  }
+
+  private void updatePositions() {
+    positions.clear();
+
     // Optimization - cache field lookups
     int mSize = conversations.size();
-    LinkedList<ConversationInfo> mItems = this.conversations;
+    ArrayList<ConversationInfo> mItems = this.conversations;
 
-    for (int i = 0; i <  mSize; i++) {
-      if (mItems.get(i).conv.getName().equalsIgnoreCase(name)) {
-        return i;
-      }
+    // Walk backwards so that, as before, the first of several equal
+    // names wins
+    for (int i = mSize - 1; i >= 0; i--) {
+      positions.put(mItems.get(i).conv.getName().toLowerCase(Locale.US), i);
     }
-
-    return -1;
   }
 
   /**
    * Remove all conversations.
    */
   public void clearConversations() {
-    conversations = new LinkedList<ConversationInfo>();
+    conversations = new ArrayList<ConversationInfo>();
+    positions.clear();
   }
 
   /**
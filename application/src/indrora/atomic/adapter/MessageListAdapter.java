@@ -21,18 +21,25 @@ along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
 package indrora.atomic.adapter;
 
 import indrora.atomic.App;
+import indrora.atomic.db.MessageLog;
 import indrora.atomic.model.ColorScheme;
 import indrora.atomic.model.Conversation;
 import indrora.atomic.model.Message;
+import indrora.atomic.model.MessageRenderer;
 import indrora.atomic.model.Settings;
+import indrora.atomic.utils.CircularArray;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.database.DataSetObserver;
 import android.graphics.Typeface;
 import android.os.Build;
+import android.os.Handler;
 import android.text.util.Linkify;
 import android.view.View;
 import android.view.ViewGroup;
@@ -42,12 +49,93 @@ import android.widget.TextView;
 /**
  * Adapter for (channel) messages in a ListView
  *
+ * Starts out with the conversation's history and loads older messages
+ * from the conversation's log page by page when asked to; as new messages
+ * come in, the oldest are dropped again until no more than
+ * MAX_PAGED_MESSAGES of those are left on top of the history. Messages are
+ * rendered in the background by MessageRenderer; a message that is shown
+ * before it is rendered is shown as plain text until it is. Only the
+ * renderings of the RENDER_CACHE_SIZE most recently shown messages are
+ * kept.
+ *
+ * The id of an item is the sequence number of its message (see
+ * Conversation), so it stays the same when messages are dropped from or
+ * put in front of the list.
+ *
  * @author Sebastian Kaspari <sebastian@yaaic.org>
  */
 public class MessageListAdapter extends BaseAdapter {
-  private final LinkedList<CharSequence> messages;
+  /**
+   * Number of older messages loaded from the log at a time
+   */
+  public static final int PAGE_SIZE = 100;
+
+  /**
+   * Most messages loaded from the log that are kept on top of the
+   * conversation's history size; the oldest are dropped first
+   */
+  public static final int MAX_PAGED_MESSAGES = 10 * PAGE_SIZE;
+
+  private static final int RENDER_CACHE_SIZE = 150;
+
+  /**
+   * Listener for older messages loaded by loadOlderMessages()
+   */
+  public interface OnOlderMessagesListener {
+    /**
+     * Called after the given number of messages were put in front of the
+     * list, on the main thread
+     *
+     * @param count
+     */
+    public void onOlderMessagesLoaded(int count);
+  }
+
+  /**
+   * Listener for revealMessage()
+   */
+  public interface OnMessageRevealedListener {
+    /**
+     * Called once the message is in the list, on the main thread
+     *
+     * @param position The position of the message, or -1 if it is gone
+     */
+    public void onMessageRevealed(int position);
+  }
+
+  private final CircularArray<Message> messages;
+  private final Conversation conversation;
   private final Context context;
+  private final Handler handler = new Handler();
   private int historySize;
+  // Number of messages loaded from the log, up to MAX_PAGED_MESSAGES,
+  // that the list may hold on top of historySize
+  private int pagedMessages = 0;
+
+  // Sequence numbers (see Conversation) of the first message in the list
+  // and of the next one expected from the conversation's buffer
+  private long firstSequence;
+  private long nextSequence;
+
+  private boolean hasOlderMessages;
+  private boolean loadingOlderMessages = false;
+  // Changes whenever the list starts over, so that a page loaded in the
+  // meantime is not put in front of the wrong messages.
+  private int generation = 0;
+
+  private final LinkedHashMap<Message, Boolean> rendered = new LinkedHashMap<Message, Boolean>(
+    RENDER_CACHE_SIZE, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Message, Boolean> eldest) {
+      if (size() > RENDER_CACHE_SIZE) {
+        eldest.getKey().releaseRender();
+        return true;
+      }
+      return false;
+    }
+  };
+
+  private final RenderRefresher renderedListener = new RenderRefresher(this);
 
   private ColorScheme _colorScheme;
   private Settings _settings;
@@ -64,25 +152,22 @@ public class MessageListAdapter extends BaseAdapter {
     _colorScheme = App.getColorScheme();
     _settings = new Settings(context);
 
-    LinkedList<CharSequence> messages = new LinkedList<CharSequence>();
+    ArrayList<Message> history = new ArrayList<Message>();
+    long next = conversation.getMessagesSince(0, history);
 
-    // Optimization - cache field lookups
-    LinkedList<Message> mHistory =  conversation.getHistory();
-    int mSize = mHistory.size();
+    // Everything up to here is in the list now; messages added since
+    // stay buffered.
+    conversation.clearBuffer(next);
 
-    for (int i = 0; i < mSize; i++) {
-      messages.add(mHistory.get(i).render());
-    }
-
-
-
-    // XXX: We don't want to clear the buffer, we want to add only
-    //      buffered messages that are not already added (history)
-    conversation.clearBuffer();
+    historySize = conversation.getHistorySize();
+    messages = new CircularArray<Message>(Math.max(historySize, history.size()) + 1);
+    messages.addLast(history);
 
-    this.messages = messages;
+    this.conversation = conversation;
     this.context = context;
-    historySize = conversation.getHistorySize();
+    hasOlderMessages = conversation.getLog() != null;
+    firstSequence = next - history.size();
+    nextSequence = next;
   }
 
 
@@ -92,34 +177,180 @@ public class MessageListAdapter extends BaseAdapter {
    * @param message
    */
   public void addMessage(Message message) {
-    messages.add(message.render());
+    addMessage(message, true);
+  }
 
-    if (messages.size() > historySize) {
-      messages.remove(0);
+  /**
+   * Add a message to the list
+   *
+   * @param message The message just taken from the conversation with
+   *                pollBufferedMessage()
+   * @param notify Whether to notify the list now; pass false when adding
+   *               several messages and call notifyDataSetChanged() after
+   *               the last one
+   */
+  public void addMessage(Message message, boolean notify) {
+    long sequence = conversation.getReadSequence() - 1;
+    if (sequence != nextSequence) {
+      // Messages dropped out of the history before we got them; the
+      // older ones can be paged in again from the log.
+      startOver(sequence);
     }
+    nextSequence = sequence + 1;
 
-    notifyDataSetChanged();
+    messages.addLast(message);
+    trimMessages();
+
+    if (notify) {
+      notifyDataSetChanged();
+    }
   }
 
   /**
    * Add a list of messages to the list
    *
-   * @param messages
+   * @param messages The messages just taken from the conversation with
+   *                 pollBufferedMessages(), oldest first
+   */
+  public void addBulkMessages(List<Message> messages) {
+    CircularArray<Message> mMessages = this.messages;
+
+    long sequence = conversation.getReadSequence() - messages.size();
+    if (sequence != nextSequence) {
+      // See addMessage()
+      startOver(sequence);
+    }
+    nextSequence = conversation.getReadSequence();
+
+    mMessages.addLast(messages);
+    trimMessages();
+
+    notifyDataSetChanged();
+  }
+
+  private void removeOldestMessages(int count) {
+    for (int i = 0; i < count; i++) {
+      rendered.remove(messages.get(i));
+    }
+    messages.removeFirst(count);
+
+    firstSequence += count;
+    hasOlderMessages = conversation.getLog() != null;
+  }
+
+  /**
+   * Drop the oldest messages the list has no room for. Waits while a page
+   * is being loaded, so that the page still goes right in front.
+   */
+  private void trimMessages() {
+    if (loadingOlderMessages) {
+      return;
+    }
+
+    pagedMessages = Math.min(pagedMessages, MAX_PAGED_MESSAGES);
+    int excess = messages.size() - historySize - pagedMessages;
+    if (excess > 0) {
+      removeOldestMessages(excess);
+    }
+  }
+
+  /**
+   * Empty the list, to go on with the message with the given sequence
+   * number
+   */
+  private void startOver(long sequence) {
+    removeOldestMessages(messages.size());
+    firstSequence = sequence;
+    pagedMessages = 0;
+    generation++;
+  }
+
+  /**
+   * Load the next page of older messages from the conversation's log in
+   * the background. Does nothing if there are none or a page is being
+   * loaded already.
+   *
+   * @param listener Told about the messages once they are in the list
    */
-  public void addBulkMessages(LinkedList<Message> messages) {
-    LinkedList<CharSequence> mMessages = this.messages;
-    Context mContext = this.context;
-    int mSize = messages.size();
+  public void loadOlderMessages(OnOlderMessagesListener listener) {
+    if (!loadingOlderMessages) {
+      loadOlderMessages(PAGE_SIZE, listener, null);
+    }
+  }
 
-    for (int i = mSize - 1; i > -1; i--) {
-      mMessages.add(messages.get(i).render());
+  /**
+   * Make sure a message from the conversation's log is in the list,
+   * loading older messages in the background as far as needed
+   *
+   * @param index The index of the message in the log
+   * @param listener Told about the position of the message
+   */
+  public void revealMessage(final long index, final OnMessageRevealedListener listener) {
+    final long sequence = conversation.getSequence(index);
+
+    if (sequence >= firstSequence || !hasOlderMessages || conversation.getLog() == null) {
+      int position = (int) Math.min(sequence - firstSequence, messages.size() - 1);
+      listener.onMessageRevealed(position >= 0 ? position : -1);
+      return;
+    }
 
-      if (mMessages.size() > historySize) {
-        mMessages.remove(0);
+    Runnable retry = new Runnable() {
+      @Override
+      public void run() {
+        revealMessage(index, listener);
       }
+    };
+
+    if (loadingOlderMessages) {
+      // Try again after the page that is on its way
+      handler.postDelayed(retry, 50);
+    } else {
+      // Load a bit more, for context
+      loadOlderMessages((int) (firstSequence - sequence) + PAGE_SIZE / 2, null, retry);
     }
+  }
 
-    notifyDataSetChanged();
+  private void loadOlderMessages(int count, final OnOlderMessagesListener listener, final Runnable then) {
+    MessageLog log = conversation.getLog();
+    if (!hasOlderMessages || log == null) {
+      return;
+    }
+    loadingOlderMessages = true;
+
+    final int requested = generation;
+    long before = conversation.getLogIndex(firstSequence);
+
+    log.readOlder(before, count, new MessageLog.PageCallback() {
+      @Override
+      public void onPage(final List<Message> page, final boolean more) {
+        handler.post(new Runnable() {
+          @Override
+          public void run() {
+            loadingOlderMessages = false;
+
+            if (requested == generation) {
+              hasOlderMessages = more;
+              if (!page.isEmpty()) {
+                messages.addFirst(page);
+                firstSequence -= page.size();
+                // Trimmed with the next new message, not right away:
+                // revealMessage() wants to find the page in the list.
+                pagedMessages += page.size();
+                notifyDataSetChanged();
+
+                if (listener != null) {
+                  listener.onOlderMessagesLoaded(page.size());
+                }
+              }
+            }
+
+            if (then != null) {
+              then.run();
+            }
+          }
+        });
+      }
+    });
   }
 
   /**
@@ -140,18 +371,35 @@ public class MessageListAdapter extends BaseAdapter {
    */
   @Override
   public CharSequence getItem(int position) {
-    return messages.get(position);
+    Message message = messages.get(position);
+    rendered.put(message, Boolean.TRUE);
+
+    CharSequence text = message.getCachedRender();
+    if (text == null || !message.isRenderCurrent()) {
+      MessageRenderer.getInstance().render(message, renderedListener);
+    }
+    return text != null ? text : message.renderPlain();
   }
 
   /**
    * Get id of item at given position
    *
    * @param position
-   * @return
+   * @return The sequence number of the message
    */
   @Override
   public long getItemId(int position) {
-    return position;
+    return firstSequence + position;
+  }
+
+  /**
+   * Item ids stay with their messages
+   *
+   * @return true
+   */
+  @Override
+  public boolean hasStableIds() {
+    return true;
   }
 
   /**
@@ -177,7 +425,7 @@ public class MessageListAdapter extends BaseAdapter {
     }
 
     view.setText(getItem(position));
-    view.setTextSize(_settings.getFontSize());
+    view.setTextSize(_settings.getSnapshot().fontSize);
 
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
       setupViewForHoneycombAndLater(view);
@@ -196,6 +444,11 @@ public class MessageListAdapter extends BaseAdapter {
    */
   public void clear() {
     messages.clear();
+    rendered.clear();
+    firstSequence = nextSequence;
+    hasOlderMessages = false;
+    pagedMessages = 0;
+    generation++;
     notifyDataSetChanged();
   }
 
@@ -0,0 +1,67 @@
+/*
+Yaaic - Yet Another Android IRC Client
+
+Copyright 2009-2013 Sebastian Kaspari
+
+This file is part of Yaaic.
+
+Yaaic is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Yaaic is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package indrora.atomic.adapter;
+
+import indrora.atomic.model.Message;
+import indrora.atomic.model.MessageRenderer;
+
+import android.os.Handler;
+import android.widget.BaseAdapter;
+
+/**
+ * Refreshes an adapter once messages it shows are rendered
+ *
+ * Messages rendered while a refresh is posted share that refresh, so a
+ * screenful of messages finishing at once redraws the list only once.
+ * Create it on the UI thread.
+ */
+class RenderRefresher implements MessageRenderer.OnMessageRenderedListener {
+  private final BaseAdapter adapter;
+  private final Handler handler = new Handler();
+
+  // Set while a refresh is posted
+  private volatile boolean refreshPending = false;
+
+  private final Runnable refresh = new Runnable() {
+    @Override
+    public void run() {
+      refreshPending = false;
+      adapter.notifyDataSetChanged();
+    }
+  };
+
+  /**
+   * Create a new RenderRefresher
+   *
+   * @param adapter The adapter to refresh
+   */
+  RenderRefresher(BaseAdapter adapter) {
+    this.adapter = adapter;
+  }
+
+  @Override
+  public void onMessageRendered(Message message) {
+    if (!refreshPending) {
+      refreshPending = true;
+      handler.post(refresh);
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+Yaaic - Yet Another Android IRC Client
+
+Copyright 2009-2013 Sebastian Kaspari
+
+This file is part of Yaaic.
+
+Yaaic is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Yaaic is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package indrora.atomic.adapter;
+
+import indrora.atomic.db.SearchHit;
+import indrora.atomic.model.Message;
+import indrora.atomic.model.MessageRenderer;
+
+import java.util.List;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+/**
+ * Adapter for search hits in a dialog
+ *
+ * Like MessageListAdapter, hits are shown as plain text until
+ * MessageRenderer has rendered them in the background, and only the
+ * hits that are shown get rendered.
+ */
+public class SearchHitAdapter extends BaseAdapter {
+  private final List<SearchHit> hits;
+  private final LayoutInflater inflater;
+
+  private final RenderRefresher renderedListener = new RenderRefresher(this);
+
+  /**
+   * Create a new adapter for search hits
+   *
+   * @param context
+   * @param hits
+   */
+  public SearchHitAdapter(Context context, List<SearchHit> hits) {
+    this.hits = hits;
+    this.inflater = LayoutInflater.from(context);
+  }
+
+  /**
+   * Get number of items
+   */
+  @Override
+  public int getCount() {
+    return hits.size();
+  }
+
+  /**
+   * Get item at given position
+   */
+  @Override
+  public SearchHit getItem(int position) {
+    return hits.get(position);
+  }
+
+  /**
+   * Get id of item at given position
+   */
+  @Override
+  public long getItemId(int position) {
+    return position;
+  }
+
+  /**
+   * Get item view for the given position
+   */
+  @Override
+  public View getView(int position, View convertView, ViewGroup parent) {
+    TextView view = (TextView) convertView;
+    if (view == null) {
+      view = (TextView) inflater.inflate(android.R.layout.select_dialog_item, parent, false);
+    }
+
+    Message message = hits.get(position).getMessage();
+    CharSequence text = message.getCachedRender();
+    if (text == null || !message.isRenderCurrent()) {
+      MessageRenderer.getInstance().render(message, renderedListener);
+    }
+    view.setText(text != null ? text : message.renderPlain());
+
+    return view;
+  }
+}
@@ -50,13 +50,13 @@ import indrora.atomic.exception.CommandException;
 import indrora.atomic.irc.IRCService;
 import indrora.atomic.model.Broadcast;
 import indrora.atomic.model.Conversation;
+import indrora.atomic.model.EventBus;
 import indrora.atomic.model.Message;
 import indrora.atomic.model.Server;
 
 import java.util.HashMap;
 
 
-import android.content.Intent;
 
 /**
  * Parser for commands
@@ -185,13 +185,8 @@ public class CommandParser {
         Message usageMessage = new Message("Syntax: " + command.getUsage());
         conversation.addMessage(usageMessage);
 
-        Intent intent = Broadcast.createConversationIntent(
-                          Broadcast.CONVERSATION_MESSAGE,
-                          server.getId(),
-                          conversation.getName()
-                        );
+        EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), conversation.getName());
 
-        service.sendBroadcast(intent);
       }
     }
   }
@@ -25,15 +25,17 @@ import indrora.atomic.exception.CommandException;
 import indrora.atomic.irc.IRCService;
 import indrora.atomic.model.Broadcast;
 import indrora.atomic.model.Conversation;
+import indrora.atomic.model.EventBus;
 import indrora.atomic.model.Message;
 import indrora.atomic.model.Server;
 
 import java.util.Collection;
 
+import org.jibble.pircbot.OutboundQueue;
+
 import indrora.atomic.R;
 
 import android.content.Context;
-import android.content.Intent;
 
 /**
  * Command: /amsg <message>
@@ -58,15 +60,10 @@ public class AMsgHandler extends BaseHandler {
           Message message = new Message("<" + service.getConnection(server.getId()).getNick() + "> " + text);
           currentConversation.addMessage(message);
 
-          Intent intent = Broadcast.createConversationIntent(
-                            Broadcast.CONVERSATION_MESSAGE,
-                            server.getId(),
-                            currentConversation.getName()
-                          );
+          EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), currentConversation.getName());
 
-          service.sendBroadcast(intent);
 
-          service.getConnection(server.getId()).sendMessage(currentConversation.getName(), text);
+          service.getConnection(server.getId()).sendMessage(currentConversation.getName(), text, OutboundQueue.PRIORITY_BULK);
         }
       }
     } else {
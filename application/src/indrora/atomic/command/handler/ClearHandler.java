@@ -3,13 +3,13 @@ package indrora.atomic.command.handler;
 import java.util.Locale;
 
 import android.content.Context;
-import android.content.Intent;
 import android.util.Log;
 import indrora.atomic.command.BaseHandler;
 import indrora.atomic.exception.CommandException;
 import indrora.atomic.irc.IRCService;
 import indrora.atomic.model.Broadcast;
 import indrora.atomic.model.Conversation;
+import indrora.atomic.model.EventBus;
 import indrora.atomic.model.Message;
 import indrora.atomic.model.Server;
 import indrora.atomic.model.Message.MessageColor;
@@ -24,10 +24,7 @@ public class ClearHandler extends BaseHandler {
     // If we aren't passed any actual arguments, close the current conversation.
     if (params.length == 1) {
       Log.d("ClearHandler", "Clearing conversation " + conversation.getName());
-      service
-          .sendBroadcast(Broadcast.createConversationIntent(
-              Broadcast.CONVERSATION_CLEAR, server.getId(),
-              conversation.getName()));
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_CLEAR, server.getId(), conversation.getName());
       return;
     }
     // If one argument is given and it's value is "all" or "*",
@@ -35,9 +32,7 @@ public class ClearHandler extends BaseHandler {
     {
       // Clear all the channels.
       for(Conversation c : server.getConversations() ) {
-        service.sendBroadcast( Broadcast.createConversationIntent(
-            Broadcast.CONVERSATION_CLEAR, server.getId(),
-            c.getName()) );
+        EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_CLEAR, server.getId(), c.getName());
       }
       return;
     }
@@ -50,7 +45,7 @@ public class ClearHandler extends BaseHandler {
         Conversation cc = server.getConversation(params[i]);
         // So long as the conversation exists and isn't the server window.
         if(cc != null && cc.getType()!= Conversation.TYPE_SERVER ) {
-          service.sendBroadcast(Broadcast.createConversationIntent(Broadcast.CONVERSATION_CLEAR, server.getId(), cc.getName()));
+          EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_CLEAR, server.getId(), cc.getName());
         }
         // Otherwise, if the conversation doesn't actually exist
         else if(cc == null) {
@@ -60,7 +55,7 @@ public class ClearHandler extends BaseHandler {
           m.setType(Message.TYPE_SERVER);
           m.setIcon(indrora.atomic.R.drawable.error);
           server.getConversation(null).addMessage(m);
-          service.sendBroadcast(Broadcast.createConversationIntent(Broadcast.CONVERSATION_MESSAGE, server.getId(), null));
+          EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), null);
         }
       }
     }
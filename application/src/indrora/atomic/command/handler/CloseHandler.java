@@ -25,12 +25,12 @@ import indrora.atomic.exception.CommandException;
 import indrora.atomic.irc.IRCService;
 import indrora.atomic.model.Broadcast;
 import indrora.atomic.model.Conversation;
+import indrora.atomic.model.EventBus;
 import indrora.atomic.model.Server;
 
 import indrora.atomic.R;
 
 import android.content.Context;
-import android.content.Intent;
 
 /**
  * Command: /close
@@ -56,12 +56,7 @@ public class CloseHandler extends BaseHandler {
       if (conversation.getType() == Conversation.TYPE_QUERY) {
         server.removeConversation(conversation.getName());
 
-        Intent intent = Broadcast.createConversationIntent(
-                          Broadcast.CONVERSATION_REMOVE,
-                          server.getId(),
-                          conversation.getName()
-                        );
-        service.sendBroadcast(intent);
+        EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_REMOVE, server.getId(), conversation.getName());
       }
     }
   }
@@ -25,6 +25,7 @@ import indrora.atomic.exception.CommandException;
 import indrora.atomic.irc.IRCService;
 import indrora.atomic.model.Broadcast;
 import indrora.atomic.model.Conversation;
+import indrora.atomic.model.EventBus;
 import indrora.atomic.model.Message;
 import indrora.atomic.model.Server;
 
@@ -62,9 +63,7 @@ public class DCCHandler extends BaseHandler {
       message.setColor(Message.MessageColor.SERVER_EVENT);
       conversation.addMessage(message);
 
-      service.sendBroadcast(
-        Broadcast.createConversationIntent(Broadcast.CONVERSATION_MESSAGE, server.getId(), conversation.getName())
-      );
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), conversation.getName());
     } else {
       throw new CommandException(service.getString(R.string.invalid_number_of_params));
     }
@@ -25,13 +25,13 @@ import indrora.atomic.exception.CommandException;
 import indrora.atomic.irc.IRCService;
 import indrora.atomic.model.Broadcast;
 import indrora.atomic.model.Conversation;
+import indrora.atomic.model.EventBus;
 import indrora.atomic.model.Message;
 import indrora.atomic.model.Server;
 
 import indrora.atomic.R;
 
 import android.content.Context;
-import android.content.Intent;
 
 /**
  * Command: /echo <text>
@@ -48,12 +48,7 @@ public class EchoHandler extends BaseHandler {
       Message message = new Message(BaseHandler.mergeParams(params));
       conversation.addMessage(message);
 
-      Intent intent = Broadcast.createConversationIntent(
-                        Broadcast.CONVERSATION_MESSAGE,
-                        server.getId(),
-                        conversation.getName()
-                      );
-      service.sendBroadcast(intent);
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), conversation.getName());
     } else {
       throw new CommandException(service.getString(R.string.text_missing));
     }
@@ -26,6 +26,7 @@ import indrora.atomic.exception.CommandException;
 import indrora.atomic.irc.IRCService;
 import indrora.atomic.model.Broadcast;
 import indrora.atomic.model.Conversation;
+import indrora.atomic.model.EventBus;
 import indrora.atomic.model.Message;
 import indrora.atomic.model.Server;
 
@@ -35,7 +36,6 @@ import java.util.Set;
 import indrora.atomic.R;
 
 import android.content.Context;
-import android.content.Intent;
 
 /**
  * Command: /help
@@ -92,13 +92,8 @@ public class HelpHandler extends BaseHandler {
     message.setColor(Message.MessageColor.TOPIC);
     conversation.addMessage(message);
 
-    Intent intent = Broadcast.createConversationIntent(
-                      Broadcast.CONVERSATION_MESSAGE,
-                      server.getId(),
-                      conversation.getName()
-                    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), conversation.getName());
 
-    service.sendBroadcast(intent);
   }
 
   /**
@@ -120,13 +115,8 @@ public class HelpHandler extends BaseHandler {
       message.setColor(Message.MessageColor.TOPIC);
       conversation.addMessage(message);
 
-      Intent intent = Broadcast.createConversationIntent(
-                        Broadcast.CONVERSATION_MESSAGE,
-                        server.getId(),
-                        conversation.getName()
-                      );
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), conversation.getName());
 
-      service.sendBroadcast(intent);
     } else {
       throw new CommandException(service.getString(R.string.unknown_command, command));
     }
@@ -25,13 +25,13 @@ import indrora.atomic.exception.CommandException;
 import indrora.atomic.irc.IRCService;
 import indrora.atomic.model.Broadcast;
 import indrora.atomic.model.Conversation;
+import indrora.atomic.model.EventBus;
 import indrora.atomic.model.Message;
 import indrora.atomic.model.Server;
 
 import indrora.atomic.R;
 
 import android.content.Context;
-import android.content.Intent;
 
 /**
  * Command: /me <action>
@@ -56,12 +56,7 @@ public class MeHandler extends BaseHandler {
       message.setIcon(R.drawable.action);
       server.getConversation(conversation.getName()).addMessage(message);
 
-      Intent intent = Broadcast.createConversationIntent(
-                        Broadcast.CONVERSATION_MESSAGE,
-                        server.getId(),
-                        conversation.getName()
-                      );
-      service.sendBroadcast(intent);
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), conversation.getName());
 
       service.getConnection(server.getId()).sendAction(conversation.getName(), action);
     } else {
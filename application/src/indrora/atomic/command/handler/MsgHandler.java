@@ -25,13 +25,13 @@ import indrora.atomic.exception.CommandException;
 import indrora.atomic.irc.IRCService;
 import indrora.atomic.model.Broadcast;
 import indrora.atomic.model.Conversation;
+import indrora.atomic.model.EventBus;
 import indrora.atomic.model.Message;
 import indrora.atomic.model.Server;
 
 import indrora.atomic.R;
 
 import android.content.Context;
-import android.content.Intent;
 
 /**
  * Command: /msg <target> <message>
@@ -56,13 +56,8 @@ public class MsgHandler extends BaseHandler {
         Message message = new Message("<" + service.getConnection(server.getId()).getNick() + "> " + text);
         targetConversation.addMessage(message);
 
-        Intent intent = Broadcast.createConversationIntent(
-                          Broadcast.CONVERSATION_MESSAGE,
-                          server.getId(),
-                          targetConversation.getName()
-                        );
+        EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), targetConversation.getName());
 
-        service.sendBroadcast(intent);
       }
     } else {
       throw new CommandException(service.getString(R.string.invalid_number_of_params));
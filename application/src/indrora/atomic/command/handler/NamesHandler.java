@@ -25,6 +25,7 @@ import indrora.atomic.exception.CommandException;
 import indrora.atomic.irc.IRCService;
 import indrora.atomic.model.Broadcast;
 import indrora.atomic.model.Conversation;
+import indrora.atomic.model.EventBus;
 import indrora.atomic.model.Message;
 import indrora.atomic.model.Server;
 
@@ -32,7 +33,6 @@ import org.jibble.pircbot.User;
 import indrora.atomic.R;
 
 import android.content.Context;
-import android.content.Intent;
 
 /**
  * Command: /names
@@ -64,12 +64,7 @@ public class NamesHandler extends BaseHandler {
     message.setColor(Message.MessageColor.TOPIC);
     conversation.addMessage(message);
 
-    Intent intent = Broadcast.createConversationIntent(
-                      Broadcast.CONVERSATION_MESSAGE,
-                      server.getId(),
-                      conversation.getName()
-                    );
-    service.sendBroadcast(intent);
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), conversation.getName());
   }
 
   /**
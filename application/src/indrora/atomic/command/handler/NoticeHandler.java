@@ -25,13 +25,13 @@ import indrora.atomic.exception.CommandException;
 import indrora.atomic.irc.IRCService;
 import indrora.atomic.model.Broadcast;
 import indrora.atomic.model.Conversation;
+import indrora.atomic.model.EventBus;
 import indrora.atomic.model.Message;
 import indrora.atomic.model.Server;
 
 import indrora.atomic.R;
 
 import android.content.Context;
-import android.content.Intent;
 
 /**
  * Command: /notice <nickname> <message>
@@ -53,12 +53,7 @@ public class NoticeHandler extends BaseHandler {
       message.setIcon(R.drawable.info);
       conversation.addMessage(message);
 
-      Intent intent = Broadcast.createConversationIntent(
-                        Broadcast.CONVERSATION_MESSAGE,
-                        server.getId(),
-                        conversation.getName()
-                      );
-      service.sendBroadcast(intent);
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), conversation.getName());
 
       service.getConnection(server.getId()).sendNotice(params[1], text);
     } else {
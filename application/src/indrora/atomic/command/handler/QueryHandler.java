@@ -25,13 +25,13 @@ import indrora.atomic.exception.CommandException;
 import indrora.atomic.irc.IRCService;
 import indrora.atomic.model.Broadcast;
 import indrora.atomic.model.Conversation;
+import indrora.atomic.model.EventBus;
 import indrora.atomic.model.Query;
 import indrora.atomic.model.Server;
 
 import indrora.atomic.R;
 
 import android.content.Context;
-import android.content.Intent;
 
 /**
  * Command: /query <nickname>
@@ -62,12 +62,7 @@ public class QueryHandler extends BaseHandler {
       query.setHistorySize(service.getSettings().getHistorySize());
       server.addConversation(query);
 
-      Intent intent = Broadcast.createConversationIntent(
-                        Broadcast.CONVERSATION_NEW,
-                        server.getId(),
-                        query.getName()
-                      );
-      service.sendBroadcast(intent);
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_NEW, server.getId(), query.getName());
     } else {
       throw new CommandException(service.getString(R.string.invalid_number_of_params));
     }
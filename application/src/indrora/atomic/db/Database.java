@@ -44,7 +44,7 @@ import android.database.sqlite.SQLiteOpenHelper;
  */
 public class Database extends SQLiteOpenHelper {
   private static final String DATABASE_NAME = "servers.db";
-  private static final int DATABASE_VERSION = 5;
+  private static final int DATABASE_VERSION = 6;
 
   /**
    * Create a new helper for database access
@@ -72,7 +72,8 @@ public class Database extends SQLiteOpenHelper {
                + ServerConstants.IDENTITY + " INTEGER, "
                + ServerConstants.NICKSERV_PASSWORD + " TEXT, "
                + ServerConstants.SASL_USERNAME + " TEXT, "
-               + ServerConstants.SASL_PASSWORD + " TEXT"
+               + ServerConstants.SASL_PASSWORD + " TEXT, "
+               + ServerConstants.FLOOD_CONTROL + " INTEGER DEFAULT 0"
                + ");"
               );
 
@@ -155,6 +156,13 @@ public class Database extends SQLiteOpenHelper {
       db.execSQL("ALTER TABLE " + ServerConstants.TABLE_NAME + " ADD " + ServerConstants.NICKSERV_PASSWORD + " TEXT AFTER " + ServerConstants.CHARSET + ";");
       db.execSQL("ALTER TABLE " + ServerConstants.TABLE_NAME + " ADD " + ServerConstants.SASL_USERNAME + " TEXT AFTER " + ServerConstants.NICKSERV_PASSWORD + ";");
       db.execSQL("ALTER TABLE " + ServerConstants.TABLE_NAME + " ADD " + ServerConstants.SASL_PASSWORD + " TEXT AFTER " + ServerConstants.SASL_USERNAME + ";");
+
+      oldVersion = 5;
+    }
+
+    if (oldVersion == 5) {
+      // Add flood control profile to server table
+      db.execSQL("ALTER TABLE " + ServerConstants.TABLE_NAME + " ADD " + ServerConstants.FLOOD_CONTROL + " INTEGER DEFAULT 0;");
     }
   }
 
@@ -175,6 +183,7 @@ public class Database extends SQLiteOpenHelper {
     values.put(ServerConstants.USE_SSL, server.useSSL());
     values.put(ServerConstants.IDENTITY, identityId);
     values.put(ServerConstants.CHARSET, server.getCharset());
+    values.put(ServerConstants.FLOOD_CONTROL, server.getFloodControl());
     values.put(ServerConstants.AUTOCONNECT, server.getAutoconnect());
     Authentication authentication = server.getAuthentication();
     values.put(ServerConstants.NICKSERV_PASSWORD, authentication.getNickservPassword());
@@ -203,6 +212,7 @@ public class Database extends SQLiteOpenHelper {
     values.put(ServerConstants.AUTOCONNECT, server.getAutoconnect());
     values.put(ServerConstants.IDENTITY, identityId);
     values.put(ServerConstants.CHARSET, server.getCharset());
+    values.put(ServerConstants.FLOOD_CONTROL, server.getFloodControl());
     Authentication authentication = server.getAuthentication();
 
     values.put(ServerConstants.NICKSERV_PASSWORD, authentication.getNickservPassword());
@@ -409,6 +419,7 @@ public class Database extends SQLiteOpenHelper {
     server.setPassword(cursor.getString(cursor.getColumnIndex(ServerConstants.PASSWORD)));
     server.setId(cursor.getInt(cursor.getColumnIndex((ServerConstants._ID))));
     server.setCharset(cursor.getString(cursor.getColumnIndex(ServerConstants.CHARSET)));
+    server.setFloodControl(cursor.getInt(cursor.getColumnIndex(ServerConstants.FLOOD_CONTROL)));
     String useSSLvalue = cursor.getString(cursor.getColumnIndex(ServerConstants.USE_SSL));
     if (useSSLvalue != null && useSSLvalue.equals("1")) {
       server.setUseSSL(true);
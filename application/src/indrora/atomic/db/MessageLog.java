@@ -0,0 +1,701 @@
+/*
+Yaaic - Yet Another Android IRC Client
+
+Copyright 2009-2013 Sebastian Kaspari
+
+This file is part of Yaaic.
+
+Yaaic is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Yaaic is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package indrora.atomic.db;
+
+import indrora.atomic.model.Message;
+import indrora.atomic.model.Message.MessageColor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.util.Log;
+
+/**
+ * The on-disk message log of one conversation
+ *
+ * Messages are appended to segment files of up to SEGMENT_SIZE bytes in
+ * the conversation's directory; the oldest segments are deleted once
+ * there are more than MAX_SEGMENTS. A log opened again goes on with the
+ * newest segment as long as that has room. All writing happens on the
+ * MessageLogger's thread: append() only queues the message, the queue is
+ * written out WRITE_DELAY ms later and synced to disk at most every
+ * SYNC_INTERVAL ms.
+ *
+ * A segment starts with MAGIC and VERSION. Each record is the length of
+ * its body as an unsigned short followed by the body: timestamp, type,
+ * color, sender and text. A record cut short by a crash ends the
+ * segment. Next to each complete segment lies its SegmentIndex for
+ * searching.
+ *
+ * Messages are addressed by their index: the first message appended to
+ * this MessageLog has index 0, the next 1 and so on; messages logged
+ * before it was opened have negative indexes, -1 being the newest. Like
+ * the writes, all reads happen on the MessageLogger's thread and report
+ * back through a callback; nothing ever waits for that thread.
+ */
+public class MessageLog {
+  /**
+   * Receives a page of older messages, on the MessageLogger's thread
+   */
+  public interface PageCallback {
+    /**
+     * @param messages The messages, oldest first
+     * @param more true if the log has messages older than these
+     */
+    public void onPage(List<Message> messages, boolean more);
+  }
+
+  /**
+   * Receives search results, on the MessageLogger's thread
+   */
+  public interface SearchCallback {
+    /**
+     * @param hits The matching messages, newest first
+     */
+    public void onResults(List<SearchHit> hits);
+  }
+
+  private static final String TAG = "MessageLog";
+
+  public static final int SEGMENT_SIZE = 128 * 1024;
+  public static final int MAX_SEGMENTS = 8;
+
+  private static final long WRITE_DELAY = 1000;
+  private static final long SYNC_INTERVAL = 10000;
+
+  // Longer texts are cut so that every message fits in a record
+  private static final int MAX_TEXT_LENGTH = 8192;
+  private static final int MAX_SENDER_LENGTH = 256;
+
+  private static final int MAGIC = 0x41746c67; // "Atlg"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 5;
+  private static final String SUFFIX = ".log";
+  private static final String INDEX_SUFFIX = ".idx";
+
+  private final File directory;
+  private final ScheduledExecutorService executor;
+  private final ConcurrentLinkedQueue<Message> queue = new ConcurrentLinkedQueue<Message>();
+  private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+  private volatile boolean closed = false;
+
+  // Only touched on the executor
+  private boolean syncScheduled = false;
+  private long lastSync = 0;
+  private FileOutputStream file;
+  private DataOutputStream out;
+  private int segment;
+  private long segmentSize;
+  private SegmentIndex segmentIndex;
+  private long written = 0;
+  private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+  private final DataOutputStream recordOut = new DataOutputStream(record);
+  // Number of records and search indexes of segments that are complete
+  private final HashMap<Integer, Integer> recordCounts = new HashMap<Integer, Integer>();
+  private final HashMap<Integer, SegmentIndex> indexes = new HashMap<Integer, SegmentIndex>();
+
+  private final Runnable writeTask = new Runnable() {
+    @Override
+    public void run() {
+      write();
+    }
+  };
+
+  private final Runnable syncTask = new Runnable() {
+    @Override
+    public void run() {
+      syncScheduled = false;
+      sync();
+    }
+  };
+
+  /**
+   * Create a log in the given directory
+   *
+   * @param directory The directory of the conversation
+   * @param executor The thread to write on
+   */
+  MessageLog(File directory, ScheduledExecutorService executor) {
+    this.directory = directory;
+    this.executor = executor;
+  }
+
+  /**
+   * Queue a message to be written to the log. May be called on any
+   * thread; the messages get their indexes in the order of the calls.
+   *
+   * @param message
+   */
+  public void append(Message message) {
+    if (closed) {
+      return;
+    }
+    queue.add(message);
+    if (writeScheduled.compareAndSet(false, true)) {
+      executor.schedule(writeTask, WRITE_DELAY, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Read a page of messages in the background
+   *
+   * @param before The index of the message after the page
+   * @param count The number of messages wanted
+   * @param callback Gets up to count messages with indexes below before
+   */
+  public void readOlder(final long before, final int count, final PageCallback callback) {
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        write();
+
+        boolean[] more = new boolean[1];
+        List<Message> messages = read((int) (written - before), count, more);
+        callback.onPage(messages, more[0]);
+      }
+    });
+  }
+
+  /**
+   * Search the log in the background
+   *
+   * @param query
+   * @param limit The most hits wanted
+   * @param callback Gets the newest hits
+   */
+  public void search(final SearchQuery query, final int limit, final SearchCallback callback) {
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        write();
+        callback.onResults(search(query, limit));
+      }
+    });
+  }
+
+  /**
+   * Write out what is queued, sync and close the log. Messages appended
+   * afterwards are dropped.
+   */
+  public void close() {
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        if (closed) {
+          return;
+        }
+        write();
+        closeSegment();
+        closed = true;
+        queue.clear();
+        indexes.clear();
+      }
+    });
+  }
+
+  /**
+   * Read up to count messages before the newest skip ones
+   */
+  private List<Message> read(int skip, int count, boolean[] more) {
+    List<Message> messages = new ArrayList<Message>();
+    int[] segments = listSegments();
+    int i = segments.length - 1;
+
+    // Skip whole segments by their record count
+    while (skip > 0 && i >= 0) {
+      int records = countRecords(segments[i]);
+      if (skip < records) {
+        break;
+      }
+      skip -= records;
+      i--;
+    }
+
+    boolean older = false;
+    for (; i >= 0 && messages.size() < count; i--) {
+      List<Message> segment = readSegment(segmentFile(segments[i]));
+      int end = Math.max(0, segment.size() - skip);
+      int start = Math.max(0, end - (count - messages.size()));
+      skip = 0;
+
+      List<Message> page = new ArrayList<Message>(segment.subList(start, end));
+      page.addAll(messages);
+      messages = page;
+      older = start > 0;
+    }
+
+    if (more != null) {
+      more[0] = older || i >= 0;
+    }
+    return messages;
+  }
+
+  /**
+   * Find the newest messages matching a query, segment by segment
+   */
+  private List<SearchHit> search(SearchQuery query, int limit) {
+    List<SearchHit> hits = new ArrayList<SearchHit>();
+    if (query.isEmpty()) {
+      return hits;
+    }
+
+    int[] segments = listSegments();
+    // Records in the segments searched so far
+    long newer = 0;
+
+    for (int i = segments.length - 1; i >= 0 && hits.size() < limit; i--) {
+      SegmentIndex index = getIndex(segments[i]);
+      if (index == null || index.size() == 0) {
+        // Skip it, but keep the indexes of older hits right. An empty
+        // index has no time range to check, so older segments still count.
+        newer += countRecords(segments[i]);
+        continue;
+      }
+      if (index.getMaxTime() < query.getSince()) {
+        // This and all older segments are too old
+        break;
+      }
+
+      int[] matches = index.find(query);
+      if (matches.length > 0) {
+        RandomAccessFile in = null;
+        try {
+          in = new RandomAccessFile(segmentFile(segments[i]), "r");
+          for (int m = matches.length - 1; m >= 0 && hits.size() < limit; m--) {
+            Message message = readRecord(in, index.getOffset(matches[m]));
+            if (message.getTimestamp() >= query.getSince()) {
+              long indexFromEnd = newer + index.size() - 1 - matches[m];
+              hits.add(new SearchHit(message, written - 1 - indexFromEnd));
+            }
+          }
+        } catch (IOException e) {
+          Log.w(TAG, "Could not read " + segmentFile(segments[i]), e);
+        } finally {
+          closeQuietly(in);
+        }
+      }
+
+      newer += index.size();
+    }
+
+    return hits;
+  }
+
+  /**
+   * Get the search index of a segment, reading or building it if need be
+   *
+   * @return The index, or null if the segment cannot be read
+   */
+  private SegmentIndex getIndex(int segment) {
+    if (out != null && segment == this.segment) {
+      return segmentIndex;
+    }
+
+    SegmentIndex index = indexes.get(segment);
+    if (index != null) {
+      return index;
+    }
+
+    File indexFile = indexFile(segment);
+    try {
+      index = SegmentIndex.read(indexFile);
+    } catch (IOException e) {
+      // Missing or from an older version; build it again below.
+    }
+
+    if (index == null) {
+      index = buildIndex(segment, null);
+      if (index == null) {
+        return null;
+      }
+      try {
+        index.write(indexFile);
+      } catch (IOException e) {
+        Log.w(TAG, "Could not write " + indexFile, e);
+      }
+    }
+
+    indexes.put(segment, index);
+    return index;
+  }
+
+  /**
+   * Build the search index of a segment from its records
+   *
+   * @param end If not null, gets the offset after the last complete
+   *            record, or 0 if this is no segment that can be read
+   * @return The index, or null if the segment cannot be read
+   */
+  private SegmentIndex buildIndex(int segment, long[] end) {
+    SegmentIndex index = new SegmentIndex();
+    DataInputStream in = null;
+
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile(segment)), 8192));
+      if (in.readInt() != MAGIC || in.readUnsignedByte() > VERSION) {
+        return index;
+      }
+
+      byte[] body = new byte[0xffff];
+      int offset = HEADER_SIZE;
+      while (true) {
+        if (end != null) {
+          end[0] = offset;
+        }
+        int length = in.readUnsignedShort();
+        in.readFully(body, 0, length);
+        index.add(offset, decodeRecord(body, length));
+        offset += 2 + length;
+      }
+    } catch (EOFException e) {
+      // End of the segment, or a record cut short
+    } catch (IOException e) {
+      Log.w(TAG, "Could not read " + segmentFile(segment), e);
+      return null;
+    } finally {
+      closeQuietly(in);
+    }
+
+    return index;
+  }
+
+  /**
+   * Count the records of a segment. Only called on the executor, or
+   * before anything is written.
+   */
+  private int countRecords(int segment) {
+    if (out != null && segment == this.segment) {
+      return segmentIndex.size();
+    }
+
+    Integer cached = recordCounts.get(segment);
+    if (cached != null) {
+      return cached;
+    }
+    SegmentIndex index = indexes.get(segment);
+    if (index != null) {
+      return index.size();
+    }
+
+    int records = 0;
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile(segment)), 8192));
+      if (in.readInt() == MAGIC && in.readUnsignedByte() <= VERSION) {
+        while (true) {
+          int length = in.readUnsignedShort();
+          if (in.skipBytes(length) < length) {
+            break;
+          }
+          records++;
+        }
+      }
+    } catch (EOFException e) {
+      // End of the segment
+    } catch (IOException e) {
+      Log.w(TAG, "Could not read " + segmentFile(segment), e);
+    } finally {
+      closeQuietly(in);
+    }
+
+    recordCounts.put(segment, records);
+    return records;
+  }
+
+  /**
+   * Write everything queued so far to the current segment
+   */
+  private void write() {
+    writeScheduled.set(false);
+    if (closed) {
+      return;
+    }
+
+    try {
+      Message message;
+      while ((message = queue.peek()) != null) {
+        if (out == null || segmentSize >= SEGMENT_SIZE) {
+          openSegment();
+        }
+        writeRecord(message);
+        // Only now that it is in the file, so that the indexes of the
+        // messages stay in step with the conversation's sequence numbers
+        queue.poll();
+        written++;
+      }
+    } catch (IOException e) {
+      // The message stays queued and is tried again with the next write;
+      // whatever made it into the segment is cut off when it is reopened.
+      Log.w(TAG, "Could not write to " + directory, e);
+      closeSegment();
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    if (now - lastSync >= SYNC_INTERVAL) {
+      sync();
+    } else if (!syncScheduled) {
+      syncScheduled = true;
+      executor.schedule(syncTask, lastSync + SYNC_INTERVAL - now, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void writeRecord(Message message) throws IOException {
+    String sender = message.getSender();
+    String text = message.getText();
+
+    if (sender != null && sender.length() > MAX_SENDER_LENGTH) {
+      sender = sender.substring(0, MAX_SENDER_LENGTH);
+    }
+    if (text.length() > MAX_TEXT_LENGTH) {
+      text = text.substring(0, MAX_TEXT_LENGTH);
+    }
+
+    record.reset();
+    recordOut.writeLong(message.getTimestamp());
+    recordOut.writeByte(message.getType());
+    recordOut.writeByte(message.getColor().ordinal());
+    recordOut.writeBoolean(sender != null);
+    if (sender != null) {
+      recordOut.writeUTF(sender);
+    }
+    recordOut.writeUTF(text);
+
+    out.writeShort(record.size());
+    record.writeTo(out);
+    out.flush();
+    segmentIndex.add((int) segmentSize, message);
+    segmentSize += 2 + record.size();
+  }
+
+  private void openSegment() throws IOException {
+    closeSegment();
+
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create " + directory);
+    }
+
+    int[] segments = listSegments();
+    if (segments.length > 0 && reopenSegment(segments[segments.length - 1])) {
+      return;
+    }
+    segment = segments.length > 0 ? segments[segments.length - 1] + 1 : 0;
+
+    file = new FileOutputStream(segmentFile(segment));
+    out = new DataOutputStream(new BufferedOutputStream(file, 8192));
+    out.writeInt(MAGIC);
+    out.writeByte(VERSION);
+    segmentSize = HEADER_SIZE;
+    segmentIndex = new SegmentIndex();
+
+    // Retention: the new segment counts as one of MAX_SEGMENTS.
+    for (int i = 0; i < segments.length - MAX_SEGMENTS + 1; i++) {
+      segmentFile(segments[i]).delete();
+      indexFile(segments[i]).delete();
+      recordCounts.remove(segments[i]);
+      indexes.remove(segments[i]);
+    }
+  }
+
+  /**
+   * Open a segment to append to it, if it has room left. A record cut
+   * short at its end is dropped first.
+   *
+   * @return true if the segment is open now
+   */
+  private boolean reopenSegment(int segment) throws IOException {
+    File segmentFile = segmentFile(segment);
+    if (segmentFile.length() >= SEGMENT_SIZE) {
+      return false;
+    }
+
+    long[] end = new long[1];
+    SegmentIndex index = buildIndex(segment, end);
+    if (index == null || end[0] < HEADER_SIZE) {
+      return false;
+    }
+
+    RandomAccessFile truncate = new RandomAccessFile(segmentFile, "rw");
+    try {
+      truncate.setLength(end[0]);
+    } finally {
+      closeQuietly(truncate);
+    }
+
+    // The segment grows, so what is known about it is outdated.
+    indexFile(segment).delete();
+    recordCounts.remove(segment);
+    indexes.remove(segment);
+
+    this.segment = segment;
+    file = new FileOutputStream(segmentFile, true);
+    out = new DataOutputStream(new BufferedOutputStream(file, 8192));
+    segmentSize = end[0];
+    segmentIndex = index;
+    return true;
+  }
+
+  private void sync() {
+    lastSync = System.currentTimeMillis();
+    if (file == null) {
+      return;
+    }
+    try {
+      out.flush();
+      file.getFD().sync();
+    } catch (IOException e) {
+      Log.w(TAG, "Could not sync " + directory, e);
+    }
+  }
+
+  private void closeSegment() {
+    if (out == null) {
+      return;
+    }
+    sync();
+    closeQuietly(out);
+    out = null;
+    file = null;
+
+    // The segment is complete; keep its index for searching.
+    try {
+      segmentIndex.write(indexFile(segment));
+    } catch (IOException e) {
+      Log.w(TAG, "Could not write " + indexFile(segment), e);
+    }
+    indexes.put(segment, segmentIndex);
+    segmentIndex = null;
+  }
+
+  private List<Message> readSegment(File segmentFile) {
+    List<Message> messages = new ArrayList<Message>();
+    DataInputStream in = null;
+
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile), 8192));
+      if (in.readInt() != MAGIC || in.readUnsignedByte() > VERSION) {
+        return messages;
+      }
+
+      byte[] body = new byte[0xffff];
+      while (true) {
+        int length = in.readUnsignedShort();
+        in.readFully(body, 0, length);
+        messages.add(decodeRecord(body, length));
+      }
+    } catch (EOFException e) {
+      // End of the segment, or a record cut short
+    } catch (IOException e) {
+      Log.w(TAG, "Could not read " + segmentFile, e);
+    } finally {
+      closeQuietly(in);
+    }
+
+    return messages;
+  }
+
+  private static Message readRecord(RandomAccessFile in, int offset) throws IOException {
+    in.seek(offset);
+    int length = in.readUnsignedShort();
+    byte[] body = new byte[length];
+    in.readFully(body);
+    return decodeRecord(body, length);
+  }
+
+  private static Message decodeRecord(byte[] body, int length) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(body, 0, length));
+    long timestamp = in.readLong();
+    int type = in.readByte();
+    int color = in.readUnsignedByte();
+    String sender = in.readBoolean() ? in.readUTF() : null;
+    String text = in.readUTF();
+
+    Message message = new Message(text, sender, type, timestamp);
+    MessageColor[] colors = MessageColor.values();
+    if (color < colors.length) {
+      message.setColor(colors[color]);
+    }
+    return message;
+  }
+
+  private int[] listSegments() {
+    String[] names = directory.list();
+    if (names == null) {
+      return new int[0];
+    }
+
+    int[] segments = new int[names.length];
+    int count = 0;
+    for (String name : names) {
+      if (name.endsWith(SUFFIX)) {
+        try {
+          segments[count] = Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+          count++;
+        } catch (NumberFormatException e) {
+          // Not a segment
+        }
+      }
+    }
+
+    int[] sorted = new int[count];
+    System.arraycopy(segments, 0, sorted, 0, count);
+    Arrays.sort(sorted);
+    return sorted;
+  }
+
+  private File segmentFile(int segment) {
+    return new File(directory, String.format(Locale.US, "%08d", segment) + SUFFIX);
+  }
+
+  private File indexFile(int segment) {
+    return new File(directory, String.format(Locale.US, "%08d", segment) + INDEX_SUFFIX);
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        // Nothing left to do about it
+      }
+    }
+  }
+}
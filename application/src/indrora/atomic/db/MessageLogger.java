@@ -0,0 +1,129 @@
+/*
+Yaaic - Yet Another Android IRC Client
+
+Copyright 2009-2013 Sebastian Kaspari
+
+This file is part of Yaaic.
+
+Yaaic is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Yaaic is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package indrora.atomic.db;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Hands out the on-disk message logs of conversations
+ *
+ * All logs are written on one background thread. Logs are kept in
+ * directory/server id/conversation name; as long as no directory is set,
+ * open() returns null and nothing is logged.
+ */
+public class MessageLogger {
+  /**
+   * The directory in the app's files to keep the logs in
+   */
+  public static final String DIRECTORY = "scrollback";
+
+  private static MessageLogger instance;
+
+  private final ScheduledExecutorService executor;
+  private volatile File directory = null;
+
+  /**
+   * Get the global MessageLogger
+   */
+  public static synchronized MessageLogger getInstance() {
+    if (instance == null) {
+      instance = new MessageLogger();
+    }
+    return instance;
+  }
+
+  private MessageLogger() {
+    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "MessageLog");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Set the directory to keep the logs in
+   *
+   * @param directory The directory, or null to stop logging
+   */
+  public void setDirectory(File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Open the log of a conversation
+   *
+   * @param serverId
+   * @param conversation The name of the conversation
+   * @return The log, or null if logging is off
+   */
+  public MessageLog open(int serverId, String conversation) {
+    File directory = this.directory;
+    if (directory == null) {
+      return null;
+    }
+
+    String name;
+    try {
+      name = URLEncoder.encode(conversation.toLowerCase(Locale.US), "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      // Every platform has UTF-8
+      return null;
+    }
+    return new MessageLog(new File(new File(directory, String.valueOf(serverId)), name), executor);
+  }
+
+  /**
+   * Delete all logs in a directory
+   *
+   * This runs after the logs closed so far are written out, so close the
+   * logs of all conversations first and open them again afterwards.
+   *
+   * @param directory The directory the logs are kept in
+   */
+  public void delete(final File directory) {
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        deleteTree(directory);
+      }
+    });
+  }
+
+  private static void deleteTree(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteTree(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -18,36 +18,39 @@ GNU General Public License for more details.
 You should have received a copy of the GNU General Public License
 along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
  */
-package indrora.atomic.receiver;
+package indrora.atomic.db;
 
-import indrora.atomic.listener.ServerListener;
-
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
+import indrora.atomic.model.Message;
 
 /**
- * A server receiver for receiving server updates
- *
- * @author Sebastian Kaspari <sebastian@yaaic.org>
+ * A message found by MessageLog.search()
  */
-public class ServerReceiver extends BroadcastReceiver {
-  private final ServerListener listener;
+public class SearchHit {
+  private final Message message;
+  private final long index;
 
   /**
-   * Create a new server receiver
+   * Create a new hit
    *
-   * @param listener
+   * @param message
+   * @param index The index of the message in the log
+   */
+  public SearchHit(Message message, long index) {
+    this.message = message;
+    this.index = index;
+  }
+
+  /**
+   * Get the message found
    */
-  public ServerReceiver(ServerListener listener) {
-    this.listener = listener;
+  public Message getMessage() {
+    return message;
   }
 
   /**
-   * On receive broadcast
+   * Get the index of the message in the log it was found in
    */
-  @Override
-  public void onReceive(Context context, Intent intent) {
-    listener.onStatusUpdate();
+  public long getIndex() {
+    return index;
   }
 }
@@ -0,0 +1,114 @@
+/*
+Yaaic - Yet Another Android IRC Client
+
+Copyright 2009-2013 Sebastian Kaspari
+
+This file is part of Yaaic.
+
+Yaaic is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Yaaic is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package indrora.atomic.db;
+
+import java.util.LinkedHashSet;
+
+/**
+ * A search in a MessageLog
+ *
+ * Parsed from what the user typed: plain words must all occur in a
+ * message, "from:nick" limits the search to messages by that nick and
+ * "days:n" to the last n days.
+ */
+public class SearchQuery {
+  private static final String SENDER_FILTER = "from:";
+  private static final String DAYS_FILTER = "days:";
+  private static final long DAY = 24 * 60 * 60 * 1000L;
+
+  private final String[] words;
+  private final String sender;
+  private final long since;
+
+  /**
+   * Create a new query
+   *
+   * @param words The words, as split by SegmentIndex.tokenize()
+   * @param sender The nick of the sender, or null for any
+   * @param since The earliest timestamp, or 0
+   */
+  public SearchQuery(String[] words, String sender, long since) {
+    this.words = words;
+    this.sender = sender;
+    this.since = since;
+  }
+
+  /**
+   * Parse a query as typed by the user
+   *
+   * @param text
+   * @return The query
+   */
+  public static SearchQuery parse(String text) {
+    LinkedHashSet<String> words = new LinkedHashSet<String>();
+    String sender = null;
+    long since = 0;
+
+    for (String part : text.trim().split("\\s+")) {
+      if (part.startsWith(SENDER_FILTER) && part.length() > SENDER_FILTER.length()) {
+        sender = part.substring(SENDER_FILTER.length());
+      } else if (part.startsWith(DAYS_FILTER)) {
+        try {
+          since = System.currentTimeMillis() - Integer.parseInt(part.substring(DAYS_FILTER.length())) * DAY;
+        } catch (NumberFormatException e) {
+          SegmentIndex.tokenize(part, words);
+        }
+      } else {
+        SegmentIndex.tokenize(part, words);
+      }
+    }
+
+    return new SearchQuery(words.toArray(new String[words.size()]), sender, since);
+  }
+
+  /**
+   * Get the words that must occur in a message
+   */
+  public String[] getWords() {
+    return words;
+  }
+
+  /**
+   * Get the nick messages must be from
+   *
+   * @return The nick, or null for any
+   */
+  public String getSender() {
+    return sender;
+  }
+
+  /**
+   * Get the earliest timestamp of messages
+   *
+   * @return The timestamp, or 0 for any
+   */
+  public long getSince() {
+    return since;
+  }
+
+  /**
+   * Does the query match nothing in particular? Only searches for words
+   * or a sender are run.
+   */
+  public boolean isEmpty() {
+    return words.length == 0 && sender == null;
+  }
+}
@@ -0,0 +1,326 @@
+/*
+Yaaic - Yet Another Android IRC Client
+
+Copyright 2009-2013 Sebastian Kaspari
+
+This file is part of Yaaic.
+
+Yaaic is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Yaaic is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package indrora.atomic.db;
+
+import indrora.atomic.model.Message;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted index of one MessageLog segment
+ *
+ * Maps every word of the messages and every sender to the ordinals of
+ * the records containing it, and keeps the offset of each record in the
+ * segment file. Built incrementally while the segment is written, and
+ * stored next to it once it is complete.
+ */
+class SegmentIndex {
+  private static final int MAGIC = 0x41746978; // "Atix"
+  private static final int VERSION = 1;
+
+  // Senders are kept in the same map, marked by this prefix
+  private static final char SENDER_PREFIX = '\u0001';
+
+  private static final int MIN_TERM_LENGTH = 2;
+  private static final int MAX_TERM_LENGTH = 32;
+
+  private final HashMap<String, IntList> postings = new HashMap<String, IntList>();
+  private final IntList offsets = new IntList();
+  private long maxTime = Long.MIN_VALUE;
+
+  // Reused while tokenizing
+  private final HashSet<String> terms = new HashSet<String>();
+
+  /**
+   * Add the next record
+   *
+   * @param offset The offset of the record in the segment file
+   * @param message The message in the record
+   */
+  void add(int offset, Message message) {
+    int ordinal = offsets.size();
+    offsets.add(offset);
+    maxTime = Math.max(maxTime, message.getTimestamp());
+
+    terms.clear();
+    tokenize(message.getText(), terms);
+    if (message.getSender() != null) {
+      terms.add(senderTerm(message.getSender()));
+    }
+
+    for (String term : terms) {
+      IntList list = postings.get(term);
+      if (list == null) {
+        list = new IntList();
+        postings.put(term, list);
+      }
+      list.add(ordinal);
+    }
+  }
+
+  /**
+   * Get the number of records
+   */
+  int size() {
+    return offsets.size();
+  }
+
+  /**
+   * Get the offset of a record in the segment file
+   */
+  int getOffset(int ordinal) {
+    return offsets.get(ordinal);
+  }
+
+  /**
+   * Get the timestamp of the newest record
+   */
+  long getMaxTime() {
+    return maxTime;
+  }
+
+  /**
+   * Find the records matching all words and the sender of a query
+   *
+   * @return The ordinals of the records, in ascending order
+   */
+  int[] find(SearchQuery query) {
+    String[] words = query.getWords();
+    IntList[] lists = new IntList[words.length + (query.getSender() != null ? 1 : 0)];
+
+    for (int i = 0; i < words.length; i++) {
+      lists[i] = postings.get(words[i]);
+    }
+    if (query.getSender() != null) {
+      lists[lists.length - 1] = postings.get(senderTerm(query.getSender()));
+    }
+
+    // Intersect, starting with the shortest list
+    IntList shortest = null;
+    for (IntList list : lists) {
+      if (list == null) {
+        return new int[0];
+      }
+      if (shortest == null || list.size() < shortest.size()) {
+        shortest = list;
+      }
+    }
+    if (shortest == null) {
+      return new int[0];
+    }
+
+    int[] result = new int[shortest.size()];
+    int count = 0;
+    for (int i = 0; i < shortest.size(); i++) {
+      int ordinal = shortest.get(i);
+      boolean all = true;
+      for (IntList list : lists) {
+        if (list != shortest && !list.contains(ordinal)) {
+          all = false;
+          break;
+        }
+      }
+      if (all) {
+        result[count++] = ordinal;
+      }
+    }
+
+    int[] found = new int[count];
+    System.arraycopy(result, 0, found, 0, count);
+    return found;
+  }
+
+  /**
+   * Write the index to a file
+   */
+  void write(File file) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 8192));
+    try {
+      out.writeInt(MAGIC);
+      out.writeByte(VERSION);
+      out.writeLong(maxTime);
+
+      out.writeInt(offsets.size());
+      for (int i = 0; i < offsets.size(); i++) {
+        out.writeInt(offsets.get(i));
+      }
+
+      out.writeInt(postings.size());
+      for (Map.Entry<String, IntList> entry : postings.entrySet()) {
+        IntList list = entry.getValue();
+        out.writeUTF(entry.getKey());
+        out.writeInt(list.size());
+        for (int i = 0; i < list.size(); i++) {
+          out.writeShort(list.get(i));
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Read an index written by write()
+   *
+   * @return The index, or null if the file has an unknown format
+   */
+  static SegmentIndex read(File file) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8192));
+    try {
+      if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+        return null;
+      }
+
+      SegmentIndex index = new SegmentIndex();
+      index.maxTime = in.readLong();
+
+      int records = in.readInt();
+      for (int i = 0; i < records; i++) {
+        index.offsets.add(in.readInt());
+      }
+
+      int terms = in.readInt();
+      for (int t = 0; t < terms; t++) {
+        String term = in.readUTF();
+        int size = in.readInt();
+        IntList list = new IntList(size);
+        for (int i = 0; i < size; i++) {
+          list.add(in.readUnsignedShort());
+        }
+        index.postings.put(term, list);
+      }
+      return index;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Split a text into lower case words, skipping mIRC color and style
+   * codes
+   *
+   * @param text
+   * @param terms The set to add the words to
+   */
+  static void tokenize(String text, Set<String> terms) {
+    StringBuilder word = new StringBuilder();
+    int length = text.length();
+
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+
+      if (c == '\u0003') {
+        // Color code: up to two digits, optionally a comma and two more
+        i = skipDigits(text, i + 1);
+        if (i + 1 < length && text.charAt(i + 1) == ',' && i + 2 < length
+            && Character.isDigit(text.charAt(i + 2))) {
+          i = skipDigits(text, i + 2);
+        }
+      } else if (Character.isLetterOrDigit(c)) {
+        word.append(Character.toLowerCase(c));
+        continue;
+      }
+
+      addTerm(word, terms);
+    }
+    addTerm(word, terms);
+  }
+
+  private static int skipDigits(String text, int start) {
+    int end = start;
+    while (end < text.length() && end < start + 2 && Character.isDigit(text.charAt(end))) {
+      end++;
+    }
+    return end - 1;
+  }
+
+  private static void addTerm(StringBuilder word, Set<String> terms) {
+    if (word.length() >= MIN_TERM_LENGTH) {
+      terms.add(word.substring(0, Math.min(word.length(), MAX_TERM_LENGTH)));
+    }
+    word.setLength(0);
+  }
+
+  private static String senderTerm(String sender) {
+    return SENDER_PREFIX + sender.toLowerCase(Locale.US);
+  }
+
+  /**
+   * A growable list of ints, in ascending order where used as postings
+   */
+  private static class IntList {
+    private int[] values;
+    private int size = 0;
+
+    IntList() {
+      this(4);
+    }
+
+    IntList(int capacity) {
+      values = new int[Math.max(capacity, 1)];
+    }
+
+    void add(int value) {
+      if (size == values.length) {
+        int[] grown = new int[size * 2];
+        System.arraycopy(values, 0, grown, 0, size);
+        values = grown;
+      }
+      values[size++] = value;
+    }
+
+    int get(int i) {
+      return values[i];
+    }
+
+    int size() {
+      return size;
+    }
+
+    boolean contains(int value) {
+      int low = 0;
+      int high = size - 1;
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        if (values[middle] < value) {
+          low = middle + 1;
+        } else if (values[middle] > value) {
+          high = middle - 1;
+        } else {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
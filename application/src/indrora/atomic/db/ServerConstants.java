@@ -42,6 +42,7 @@ public interface ServerConstants extends BaseColumns {
   public static final String NICKSERV_PASSWORD = "nickserv_password";
   public static final String SASL_USERNAME     = "sasl_username";
   public static final String SASL_PASSWORD     = "sasl_password";
+  public static final String FLOOD_CONTROL     = "flood_control";
 
   /**
    * All fields of the table
@@ -58,6 +59,7 @@ public interface ServerConstants extends BaseColumns {
     IDENTITY,
     NICKSERV_PASSWORD,
     SASL_USERNAME,
-    SASL_PASSWORD
+    SASL_PASSWORD,
+    FLOOD_CONTROL
   };
 }
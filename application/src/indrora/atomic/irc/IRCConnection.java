@@ -26,6 +26,7 @@ import indrora.atomic.command.CommandParser;
 import indrora.atomic.model.Broadcast;
 import indrora.atomic.model.Channel;
 import indrora.atomic.model.Conversation;
+import indrora.atomic.model.EventBus;
 import indrora.atomic.model.Message;
 import indrora.atomic.model.Query;
 import indrora.atomic.model.Server;
@@ -44,12 +45,16 @@ import java.util.Date;
 import java.util.Vector;
 import java.util.regex.Pattern;
 
+import org.jibble.pircbot.ChannelMember;
+import org.jibble.pircbot.ChannelUsers;
+import org.jibble.pircbot.NetSplit;
 import org.jibble.pircbot.NickAlreadyInUseException;
+import org.jibble.pircbot.OutboundQueue;
 import org.jibble.pircbot.PircBot;
+import org.jibble.pircbot.PrefixModes;
 import org.jibble.pircbot.User;
 
 import indrora.atomic.R;
-import android.content.Intent;
 import android.util.Log;
 
 /**
@@ -59,6 +64,11 @@ import android.util.Log;
  */
 public class IRCConnection extends PircBot {
   private static final String TAG = "Yaaic/IRCConnection";
+
+  // Netsplit QUITs and netjoin JOINs are collected this long, in ms.
+  private static final long NETSPLIT_WINDOW = 2000;
+  // The number of nicks named in a netsplit or netjoin message.
+  private static final int NETSPLIT_LISTED_NICKS = 15;
   private final IRCService service;
   private final Server server;
   private ArrayList<String> autojoinChannels;
@@ -87,6 +97,7 @@ public class IRCConnection extends PircBot {
     // 2012: R-R-Rickroll'd.
     // 2014: Let's make bread... Or not.
     this.setFinger("https://www.youtube.com/watch?v=bHK0uFb6Vzw");
+    this.setNetSplitWindow(NETSPLIT_WINDOW);
     this.updateNickMatchPattern();
   }
 
@@ -142,10 +153,11 @@ public class IRCConnection extends PircBot {
    */
   @Override
   protected void onVersion(String sourceNick, String sourceLogin,    String sourceHostname, String target) {
-    this.sendRawLine(
+    this.sendRawLineViaQueue(
       "NOTICE " + sourceNick + " :\u0001VERSION " +
       "Atomic - An IRC client for Android https://indrora.github.io/Atomic" +
-      "\u0001"
+      "\u0001",
+      OutboundQueue.PRIORITY_BULK
     );
   }
 
@@ -169,9 +181,7 @@ public class IRCConnection extends PircBot {
 
     ignoreMOTD = service.getSettings().isIgnoreMOTDEnabled();
 
-    service.sendBroadcast(
-      Broadcast.createServerIntent(Broadcast.SERVER_UPDATE, server.getId())
-    );
+    EventBus.getInstance().postServerEvent(Broadcast.SERVER_UPDATE, server.getId());
 
     service.notifyConnected(server.getTitle());
 
@@ -183,17 +193,12 @@ public class IRCConnection extends PircBot {
     infoMessage.setColor(Message.MessageColor.SERVER_EVENT);
     server.getConversation(ServerInfo.DEFAULT_NAME).addMessage(infoMessage);
 
-    Intent intent = Broadcast.createConversationIntent(
-                      Broadcast.CONVERSATION_MESSAGE,
-                      server.getId(),
-                      ServerInfo.DEFAULT_NAME
-                    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), ServerInfo.DEFAULT_NAME);
 
     if (server.getAuthentication().hasNickservCredentials()) {
       identify(server.getAuthentication().getNickservPassword());
     }
 
-    service.sendBroadcast(intent);
   }
 
   LatchingValue<Boolean> hasDoneAutorun = new LatchingValue<Boolean>(true,false);
@@ -227,29 +232,26 @@ public class IRCConnection extends PircBot {
       // do nothing
     }
 
-    // join channels
+    // join channels, all with a single write
+    ArrayList<String> joins = new ArrayList<String>();
     if (autojoinChannels != null) {
       for (String channel : autojoinChannels) {
         // Add support for channel keys
-        joinChannel(channel);
+        joins.add("JOIN " + channel);
       }
     } else {
       for (String channel : server.getAutoJoinChannels()) {
-        joinChannel(channel);
+        joins.add("JOIN " + channel);
       }
     }
+    sendRawLines(joins.toArray(new String[joins.size()]));
 
     Message infoMessage = new Message(service.getString(R.string.message_login_done));
     infoMessage.setColor(Message.MessageColor.SERVER_EVENT);
     server.getConversation(ServerInfo.DEFAULT_NAME).addMessage(infoMessage);
 
-    Intent intent = Broadcast.createConversationIntent(
-                      Broadcast.CONVERSATION_MESSAGE,
-                      server.getId(),
-                      ServerInfo.DEFAULT_NAME
-                    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), ServerInfo.DEFAULT_NAME);
 
-    service.sendBroadcast(intent);
   }
   /**
    * On channel action
@@ -275,21 +277,11 @@ public class IRCConnection extends PircBot {
       server.addConversation(conversation);
       conversation.addMessage(message);
 
-      Intent intent = Broadcast.createConversationIntent(
-                        Broadcast.CONVERSATION_NEW,
-                        server.getId(),
-                        queryNick
-                      );
-      service.sendBroadcast(intent);
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_NEW, server.getId(), queryNick);
     } else {
       conversation.addMessage(message);
 
-      Intent intent = Broadcast.createConversationIntent(
-                        Broadcast.CONVERSATION_MESSAGE,
-                        server.getId(),
-                        queryNick
-                      );
-      service.sendBroadcast(intent);
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), queryNick);
     }
 
     if (sender.equals(this.getNick())) {
@@ -335,13 +327,8 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.CHANNEL_EVENT);
     server.getConversation(target).addMessage(message);
 
-    Intent intent = Broadcast.createConversationIntent(
-                      Broadcast.CONVERSATION_MESSAGE,
-                      server.getId(),
-                      target
-                    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
 
-    service.sendBroadcast(intent);
   }
 
   /**
@@ -354,13 +341,8 @@ public class IRCConnection extends PircBot {
     message.setIcon(R.drawable.voice);
     server.getConversation(target).addMessage(message);
 
-    Intent intent = Broadcast.createConversationIntent(
-                      Broadcast.CONVERSATION_MESSAGE,
-                      server.getId(),
-                      target
-                    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
 
-    service.sendBroadcast(intent);
   }
 
   /**
@@ -373,23 +355,13 @@ public class IRCConnection extends PircBot {
       Message message = new Message(service.getString(R.string.message_invite_you, sourceNick, target));
       server.getConversation(server.getSelectedConversation()).addMessage(message);
 
-      Intent intent = Broadcast.createConversationIntent(
-                        Broadcast.CONVERSATION_MESSAGE,
-                        server.getId(),
-                        server.getSelectedConversation()
-                      );
-      service.sendBroadcast(intent);
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), server.getSelectedConversation());
     } else {
       // Someone is invited
       Message message = new Message(service.getString(R.string.message_invite_someone, sourceNick, targetNick, target));
       server.getConversation(target).addMessage(message);
 
-      Intent intent = Broadcast.createConversationIntent(
-                        Broadcast.CONVERSATION_MESSAGE,
-                        server.getId(),
-                        target
-                      );
-      service.sendBroadcast(intent);
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
     }
   }
 
@@ -404,12 +376,7 @@ public class IRCConnection extends PircBot {
       conversation.setHistorySize(service.getSettings().getHistorySize());
       server.addConversation(conversation);
 
-      Intent intent = Broadcast.createConversationIntent(
-                        Broadcast.CONVERSATION_NEW,
-                        server.getId(),
-                        target
-                      );
-      service.sendBroadcast(intent);
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_NEW, server.getId(), target);
     } else if (service.getSettings().showJoinPartAndQuit()) {
       Message message = new Message(
         service.getString(R.string.message_join, sender),
@@ -420,12 +387,7 @@ public class IRCConnection extends PircBot {
       message.setColor(Message.MessageColor.USER_EVENT);
       server.getConversation(target).addMessage(message);
 
-      Intent intent = Broadcast.createConversationIntent(
-                        Broadcast.CONVERSATION_MESSAGE,
-                        server.getId(),
-                        target
-                      );
-      service.sendBroadcast(intent);
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
     }
   }
 
@@ -439,23 +401,13 @@ public class IRCConnection extends PircBot {
       service.ackNewMentions(server.getId(), target);
       server.removeConversation(target);
 
-      Intent intent = Broadcast.createConversationIntent(
-                        Broadcast.CONVERSATION_REMOVE,
-                        server.getId(),
-                        target
-                      );
-      service.sendBroadcast(intent);
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_REMOVE, server.getId(), target);
     } else {
       Message message = new Message(service.getString(R.string.message_kick, kickerNick, recipientNick));
       message.setColor(Message.MessageColor.USER_EVENT);
       server.getConversation(target).addMessage(message);
 
-      Intent intent = Broadcast.createConversationIntent(
-                        Broadcast.CONVERSATION_MESSAGE,
-                        server.getId(),
-                        target
-                      );
-      service.sendBroadcast(intent);
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
     }
   }
 
@@ -486,12 +438,7 @@ public class IRCConnection extends PircBot {
 
     conversation.addMessage(message);
 
-    Intent intent = Broadcast.createConversationIntent(
-                      Broadcast.CONVERSATION_MESSAGE,
-                      server.getId(),
-                      target
-                    );
-    service.sendBroadcast(intent);
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -525,13 +472,8 @@ public class IRCConnection extends PircBot {
       message.setColor(Message.MessageColor.USER_EVENT);
       server.getConversation(ServerInfo.DEFAULT_NAME).addMessage(message);
 
-      Intent intent = Broadcast.createConversationIntent(
-                        Broadcast.CONVERSATION_MESSAGE,
-                        server.getId(),
-                        ServerInfo.DEFAULT_NAME
-                      );
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), ServerInfo.DEFAULT_NAME);
 
-      service.sendBroadcast(intent);
     }
 
     Vector<String> channels = getChannelsByNickname(newNick);
@@ -541,12 +483,7 @@ public class IRCConnection extends PircBot {
       message.setColor(Message.MessageColor.USER_EVENT);
       server.getConversation(target).addMessage(message);
 
-      Intent intent = Broadcast.createConversationIntent(
-                        Broadcast.CONVERSATION_MESSAGE,
-                        server.getId(),
-                        target
-                      );
-      service.sendBroadcast(intent);
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
     }
   }
 
@@ -573,12 +510,7 @@ public class IRCConnection extends PircBot {
     message.setIcon(R.drawable.info);
     conversation.addMessage(message);
 
-    Intent intent = Broadcast.createConversationIntent(
-                      Broadcast.CONVERSATION_MESSAGE,
-                      server.getId(),
-                      conversation.getName()
-                    );
-    service.sendBroadcast(intent);
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), conversation.getName());
   }
 
   /**
@@ -591,12 +523,7 @@ public class IRCConnection extends PircBot {
     message.setIcon(R.drawable.op);
     server.getConversation(target).addMessage(message);
 
-    Intent intent = Broadcast.createConversationIntent(
-                      Broadcast.CONVERSATION_MESSAGE,
-                      server.getId(),
-                      target
-                    );
-    service.sendBroadcast(intent);
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -609,12 +536,7 @@ public class IRCConnection extends PircBot {
       service.ackNewMentions(server.getId(), target);
       server.removeConversation(target);
 
-      Intent intent = Broadcast.createConversationIntent(
-                        Broadcast.CONVERSATION_REMOVE,
-                        server.getId(),
-                        target
-                      );
-      service.sendBroadcast(intent);
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_REMOVE, server.getId(), target);
     } else if (service.getSettings().showJoinPartAndQuit()) {
       Message message = new Message(
         service.getString(R.string.message_part, sender),
@@ -625,12 +547,7 @@ public class IRCConnection extends PircBot {
       message.setIcon(R.drawable.part);
       server.getConversation(target).addMessage(message);
 
-      Intent intent = Broadcast.createConversationIntent(
-                        Broadcast.CONVERSATION_MESSAGE,
-                        server.getId(),
-                        target
-                      );
-      service.sendBroadcast(intent);
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
     }
   }
 
@@ -651,24 +568,14 @@ public class IRCConnection extends PircBot {
       // Open a query if there's none yet
       conversation = new Query(queryNick);
       conversation.setHistorySize(service.getSettings().getHistorySize());
-      conversation.addMessage(message);
       server.addConversation(conversation);
+      conversation.addMessage(message);
 
-      Intent intent = Broadcast.createConversationIntent(
-                        Broadcast.CONVERSATION_NEW,
-                        server.getId(),
-                        queryNick
-                      );
-      service.sendBroadcast(intent);
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_NEW, server.getId(), queryNick);
     } else {
       conversation.addMessage(message);
 
-      Intent intent = Broadcast.createConversationIntent(
-                        Broadcast.CONVERSATION_MESSAGE,
-                        server.getId(),
-                        queryNick
-                      );
-      service.sendBroadcast(intent);
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), queryNick);
     }
 
     if (sender.equals(this.getNick())) {
@@ -715,12 +622,7 @@ public class IRCConnection extends PircBot {
         message.setIcon(R.drawable.quit);
         server.getConversation(target).addMessage(message);
 
-        Intent intent = Broadcast.createConversationIntent(
-                          Broadcast.CONVERSATION_MESSAGE,
-                          server.getId(),
-                          target
-                        );
-        service.sendBroadcast(intent);
+        EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
       }
 
       // Look if there's a query to update
@@ -736,16 +638,99 @@ public class IRCConnection extends PircBot {
         message.setIcon(R.drawable.quit);
         conversation.addMessage(message);
 
-        Intent intent = Broadcast.createConversationIntent(
-                          Broadcast.CONVERSATION_MESSAGE,
-                          server.getId(),
-                          conversation.getName()
-                        );
-        service.sendBroadcast(intent);
+        EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), conversation.getName());
       }
     }
   }
 
+  /**
+   * On Net Split
+   */
+  @Override
+  protected void onNetSplit(NetSplit split) {
+    if (!service.getSettings().showJoinPartAndQuit()) {
+      return;
+    }
+
+    for (String target : split.getChannels()) {
+      String[] nicks = split.getNicks(target);
+      addNetSplitMessage(
+        server.getConversation(target),
+        service.getString(R.string.message_netsplit, split.getServer1(), split.getServer2(),
+                          nicks.length, joinNicks(nicks)),
+        R.drawable.quit
+      );
+    }
+
+    // Queries with users that split off get the usual quit message.
+    String reason = split.getServer1() + " " + split.getServer2();
+    for (String nick : split.getNicks()) {
+      Conversation conversation = server.getConversation(nick);
+      if (conversation != null) {
+        addNetSplitMessage(
+          conversation,
+          service.getString(R.string.message_quit, nick, reason),
+          R.drawable.quit
+        );
+      }
+    }
+  }
+
+  /**
+   * On Net Join
+   */
+  @Override
+  protected void onNetJoin(NetSplit join) {
+    if (!service.getSettings().showJoinPartAndQuit()) {
+      return;
+    }
+
+    for (String target : join.getChannels()) {
+      String[] nicks = join.getNicks(target);
+      addNetSplitMessage(
+        server.getConversation(target),
+        service.getString(R.string.message_netjoin, join.getServer1(), join.getServer2(),
+                          nicks.length, joinNicks(nicks)),
+        R.drawable.join
+      );
+    }
+  }
+
+  /**
+   * Add one summary message of a netsplit or netjoin to a conversation
+   * and notify the UI once.
+   */
+  private void addNetSplitMessage(Conversation conversation, String text, int icon) {
+    if (conversation == null) {
+      return;
+    }
+
+    Message message = new Message(text, Message.TYPE_MISC);
+    message.setColor(Message.MessageColor.USER_EVENT);
+    message.setIcon(icon);
+    conversation.addMessage(message);
+
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), conversation.getName());
+  }
+
+  /**
+   * Join the first nicks of a netsplit for display, e.g. "a, b, c +409".
+   */
+  private static String joinNicks(String[] nicks) {
+    StringBuilder builder = new StringBuilder();
+    int shown = Math.min(nicks.length, NETSPLIT_LISTED_NICKS);
+    for (int i = 0; i < shown; i++) {
+      if (i > 0) {
+        builder.append(", ");
+      }
+      builder.append(nicks[i]);
+    }
+    if (nicks.length > shown) {
+      builder.append(" +").append(nicks.length - shown);
+    }
+    return builder.toString();
+  }
+
   /**
    * On Topic
    */
@@ -764,20 +749,10 @@ public class IRCConnection extends PircBot {
     // remember channel's topic
     ((Channel) server.getConversation(target)).setTopic(topic);
 
-    Intent intent = Broadcast.createConversationIntent(
-                      Broadcast.CONVERSATION_MESSAGE,
-                      server.getId(),
-                      target
-                    );
-    service.sendBroadcast(intent);
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
 
     // update the displayed conversation title if necessary
-    intent = Broadcast.createConversationIntent(
-               Broadcast.CONVERSATION_TOPIC,
-               server.getId(),
-               target
-             );
-    service.sendBroadcast(intent);
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_TOPIC, server.getId(), target);
   }
 
   /**
@@ -798,12 +773,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.CHANNEL_EVENT);
     server.getConversation(target).addMessage(message);
 
-    Intent intent = Broadcast.createConversationIntent(
-                      Broadcast.CONVERSATION_MESSAGE,
-                      server.getId(),
-                      target
-                    );
-    service.sendBroadcast(intent);
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -815,9 +785,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.CHANNEL_EVENT);
     server.getConversation(target).addMessage(message);
 
-    service.sendBroadcast(
-      Broadcast.createConversationIntent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target)
-    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -829,9 +797,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.CHANNEL_EVENT);
     server.getConversation(target).addMessage(message);
 
-    service.sendBroadcast(
-      Broadcast.createConversationIntent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target)
-    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -843,9 +809,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.CHANNEL_EVENT);
     server.getConversation(target).addMessage(message);
 
-    service.sendBroadcast(
-      Broadcast.createConversationIntent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target)
-    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -857,9 +821,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.CHANNEL_EVENT);
     server.getConversation(target).addMessage(message);
 
-    service.sendBroadcast(
-      Broadcast.createConversationIntent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target)
-    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -871,9 +833,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.CHANNEL_EVENT);
     server.getConversation(target).addMessage(message);
 
-    service.sendBroadcast(
-      Broadcast.createConversationIntent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target)
-    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -885,9 +845,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.CHANNEL_EVENT);
     server.getConversation(target).addMessage(message);
 
-    service.sendBroadcast(
-      Broadcast.createConversationIntent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target)
-    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -899,9 +857,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.CHANNEL_EVENT);
     server.getConversation(target).addMessage(message);
 
-    service.sendBroadcast(
-      Broadcast.createConversationIntent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target)
-    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -913,9 +869,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.CHANNEL_EVENT);
     server.getConversation(target).addMessage(message);
 
-    service.sendBroadcast(
-      Broadcast.createConversationIntent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target)
-    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -927,9 +881,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.CHANNEL_EVENT);
     server.getConversation(target).addMessage(message);
 
-    service.sendBroadcast(
-      Broadcast.createConversationIntent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target)
-    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -941,9 +893,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.CHANNEL_EVENT);
     server.getConversation(target).addMessage(message);
 
-    service.sendBroadcast(
-      Broadcast.createConversationIntent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target)
-    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -955,9 +905,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.CHANNEL_EVENT);
     server.getConversation(target).addMessage(message);
 
-    service.sendBroadcast(
-      Broadcast.createConversationIntent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target)
-    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -969,9 +917,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.CHANNEL_EVENT);
     server.getConversation(target).addMessage(message);
 
-    service.sendBroadcast(
-      Broadcast.createConversationIntent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target)
-    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -983,9 +929,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.CHANNEL_EVENT);
     server.getConversation(target).addMessage(message);
 
-    service.sendBroadcast(
-      Broadcast.createConversationIntent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target)
-    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -997,9 +941,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.CHANNEL_EVENT);
     server.getConversation(target).addMessage(message);
 
-    service.sendBroadcast(
-      Broadcast.createConversationIntent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target)
-    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -1011,9 +953,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.CHANNEL_EVENT);
     server.getConversation(target).addMessage(message);
 
-    service.sendBroadcast(
-      Broadcast.createConversationIntent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target)
-    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -1025,9 +965,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.CHANNEL_EVENT);
     server.getConversation(target).addMessage(message);
 
-    service.sendBroadcast(
-      Broadcast.createConversationIntent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target)
-    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -1039,9 +977,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.CHANNEL_EVENT);
     server.getConversation(target).addMessage(message);
 
-    service.sendBroadcast(
-      Broadcast.createConversationIntent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target)
-    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -1053,9 +989,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.CHANNEL_EVENT);
     server.getConversation(target).addMessage(message);
 
-    service.sendBroadcast(
-      Broadcast.createConversationIntent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target)
-    );
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), target);
   }
 
   /**
@@ -1068,12 +1002,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.SERVER_EVENT);
     server.getConversation(ServerInfo.DEFAULT_NAME).addMessage(message);
 
-    Intent intent = Broadcast.createConversationIntent(
-                      Broadcast.CONVERSATION_MESSAGE,
-                      server.getId(),
-                      ServerInfo.DEFAULT_NAME
-                    );
-    service.sendBroadcast(intent);
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), ServerInfo.DEFAULT_NAME);
   }
 
   @Override
@@ -1082,12 +1011,7 @@ public class IRCConnection extends PircBot {
     message.setIcon(R.drawable.info);
     message.setColor(MessageColor.SERVER_EVENT);
     server.getConversation(ServerInfo.DEFAULT_NAME).addMessage(message);
-    Intent intent = Broadcast.createConversationIntent(
-                      Broadcast.CONVERSATION_MESSAGE,
-                      server.getId(),
-                      ServerInfo.DEFAULT_NAME
-                    );
-    service.sendBroadcast(intent);
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), ServerInfo.DEFAULT_NAME);
   }
 
   /**
@@ -1130,12 +1054,7 @@ public class IRCConnection extends PircBot {
     message.setColor(Message.MessageColor.SERVER_EVENT);
     server.getConversation(ServerInfo.DEFAULT_NAME).addMessage(message);
 
-    Intent intent = Broadcast.createConversationIntent(
-                      Broadcast.CONVERSATION_MESSAGE,
-                      server.getId(),
-                      ServerInfo.DEFAULT_NAME
-                    );
-    service.sendBroadcast(intent);
+    EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), ServerInfo.DEFAULT_NAME);
   }
 
   /**
@@ -1159,8 +1078,7 @@ public class IRCConnection extends PircBot {
 
     service.notifyDisconnected(server.getTitle());
 
-    Intent sIntent = Broadcast.createServerIntent(Broadcast.SERVER_UPDATE, server.getId());
-    service.sendBroadcast(sIntent);
+    EventBus.getInstance().postServerEvent(Broadcast.SERVER_UPDATE, server.getId());
 
     Collection<Conversation> conversations = server.getConversations();
 
@@ -1170,12 +1088,7 @@ public class IRCConnection extends PircBot {
       message.setColor(Message.MessageColor.ERROR);
       server.getConversation(conversation.getName()).addMessage(message);
 
-      Intent cIntent = Broadcast.createConversationIntent(
-                         Broadcast.CONVERSATION_MESSAGE,
-                         server.getId(),
-                         conversation.getName()
-                       );
-      service.sendBroadcast(cIntent);
+      EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, server.getId(), conversation.getName());
     }
 
     synchronized(isQuittingLock) {
@@ -1193,20 +1106,7 @@ public class IRCConnection extends PircBot {
    * @return Array of channel names
    */
   private Vector<String> getChannelsByNickname(String nickname) {
-    Vector<String> channels = new Vector<String>();
-    String[] channelArray = getChannels();
-
-    for (String channel : channelArray) {
-      User[] userArray = getUsers(channel);
-      for (User user : userArray) {
-        if (user.getNick().equals(nickname)) {
-          channels.add(channel);
-          break;
-        }
-      }
-    }
-
-    return channels;
+    return new Vector<String>(Arrays.asList(getUserChannels(nickname)));
   }
 
   /**
@@ -1215,13 +1115,16 @@ public class IRCConnection extends PircBot {
    * @param channel Name of the channel
    */
   public String[] getUsersAsStringArray(String channel) {
-    User[] userArray = getUsers(channel);
-    int mLength = userArray.length;
-    String[] users = new String[mLength];
+    ChannelUsers members = getChannelUsers(channel);
+    if (members == null) {
+      return new String[0];
+    }
 
-    for (int i = 0; i < mLength; i++) {
-      users[i] = userArray[i].getPrefix() + userArray[i].getNick();
+    ArrayList<String> list = new ArrayList<String>(members.size());
+    for (ChannelMember member : members) {
+      list.add(member.getPrefix() + member.getNick());
     }
+    String[] users = list.toArray(new String[list.size()]);
 
     /* Sort the users by their modes, then their nicknames */
     Arrays.sort(users, new Comparator<String>() {
@@ -1253,19 +1156,26 @@ public class IRCConnection extends PircBot {
    * @return the User object or null if user was not found
    */
   public User getUser(String channel, String nickname) {
-    User[] users = getUsers(channel);
-    int mLength = users.length;
+    ChannelUsers members = getChannelUsers(channel);
+    if (members == null) {
+      return null;
+    }
 
-    for (int i = 0; i < mLength; i++) {
-      if (nickname.equals(users[i].getNick())) {
-        return users[i];
+    ChannelMember member = members.get(nickname);
+    if (member == null) {
+      // Strip the prefixes, if any.
+      PrefixModes prefixModes = members.getPrefixModes();
+      int start = 0;
+      while (start < nickname.length() - 1
+          && prefixModes.getPrefixBit(nickname.charAt(start)) != 0) {
+        start++;
       }
-      if (nickname.equals(users[i].getPrefix() + users[i].getNick())) {
-        return users[i];
+      if (start > 0) {
+        member = members.get(nickname.substring(start));
       }
     }
 
-    return null;
+    return member == null ? null : member.toUser();
   }
 
   /**
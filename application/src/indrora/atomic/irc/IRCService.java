@@ -26,8 +26,11 @@ import indrora.atomic.R;
 import indrora.atomic.activity.ConversationActivity;
 import indrora.atomic.activity.ServersActivity;
 import indrora.atomic.db.Database;
+import indrora.atomic.db.MessageLogger;
 import indrora.atomic.model.Broadcast;
 import indrora.atomic.model.Conversation;
+import indrora.atomic.model.EventBus;
+import indrora.atomic.model.FloodControl;
 import indrora.atomic.model.Message;
 import indrora.atomic.model.Server;
 import indrora.atomic.model.ServerInfo;
@@ -37,6 +40,7 @@ import indrora.atomic.model.Message.MessageColor;
 import indrora.atomic.receiver.ReconnectReceiver;
 import indrora.atomic.utils.MircColors;
 
+import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -49,6 +53,7 @@ import javax.net.ssl.X509TrustManager;
 
 import org.jibble.pircbot.IrcException;
 import org.jibble.pircbot.NickAlreadyInUseException;
+import org.jibble.pircbot.SelectorEngine;
 
 import android.app.AlarmManager;
 import android.app.Notification;
@@ -59,11 +64,14 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.NetworkInfo.State;
 import android.os.Build;
 import android.os.SystemClock;
+import android.preference.PreferenceManager;
 import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 import de.duenndns.ssl.MemorizingTrustManager;
@@ -111,6 +119,27 @@ public class IRCService extends Service {
   private HashMap<Integer, ReconnectReceiver> alarmReceivers;
   private final Object alarmIntentsLock;
 
+  // SharedPreferences only keeps weak references to its listeners, so
+  // this one is held here.
+  private final OnSharedPreferenceChangeListener scrollbackListener = new OnSharedPreferenceChangeListener() {
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+      if (!getString(R.string.key_persistent_scrollback).equals(key)) {
+        return;
+      }
+
+      // Start or stop logging the conversations that are already open
+      ArrayList<Server> servers = Atomic.getInstance().getServersAsArrayList();
+      for (Server server : servers) {
+        server.closeLogs();
+      }
+      MessageLogger.getInstance().setDirectory(getScrollbackDirectory());
+      for (Server server : servers) {
+        server.openLogs();
+      }
+    }
+  };
+
   /****
    *
    * This class will handle the network changes.
@@ -191,8 +220,7 @@ public class IRCService extends Service {
       reconnectNextNetwork.clear();
       for(int sid : connections.keySet()) {
         reconnectNextNetwork.add(sid);
-        Intent sIntent = Broadcast.createServerIntent(Broadcast.SERVER_UPDATE, sid);
-        sendBroadcast(sIntent);
+        EventBus.getInstance().postServerEvent(Broadcast.SERVER_UPDATE, sid);
       }
 
     } else {
@@ -216,12 +244,7 @@ public class IRCService extends Service {
 
         s.getConversation(ServerInfo.DEFAULT_NAME).addMessage(message);
 
-        Intent cIntent = Broadcast.createConversationIntent(
-                           Broadcast.CONVERSATION_MESSAGE,
-                           reconnect_server,
-                           ServerInfo.DEFAULT_NAME
-                         );
-        sendBroadcast(cIntent);
+        EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, reconnect_server, ServerInfo.DEFAULT_NAME);
 
         this.getConnection(reconnect_server).disconnect();
         
@@ -272,13 +295,18 @@ public class IRCService extends Service {
 
 
 
+    // Keep the history of conversations on disk
+    MessageLogger.getInstance().setDirectory(getScrollbackDirectory());
+    PreferenceManager.getDefaultSharedPreferences(this)
+        .registerOnSharedPreferenceChangeListener(scrollbackListener);
+
     // Load servers from Database
     Database db = new Database(this);
     Atomic.getInstance().setServers(db.getServers());
     db.close();
 
     // Broadcast changed server list
-    sendBroadcast(new Intent(Broadcast.SERVER_UPDATE));
+    EventBus.getInstance().postServerEvent(Broadcast.SERVER_UPDATE, -1);
 
 
     // Set up our connectivity handler
@@ -644,6 +672,8 @@ public class IRCService extends Service {
           connection.setIdent(server.getIdentity().getIdent());
           connection.setRealName(server.getIdentity().getRealName());
           connection.setUseSSL(server.useSSL());
+          connection.setSelectorEngine(settings.useSharedConnectionThread()
+              ? SelectorEngine.getShared() : null);
           X509TrustManager[] trustMgr = MemorizingTrustManager.getInstanceList(getApplicationContext());
           connection.setTrustManagers(trustMgr);
 
@@ -651,6 +681,8 @@ public class IRCService extends Service {
             connection.setEncoding(server.getCharset());
           }
 
+          connection.setRateLimiter(FloodControl.createRateLimiter(server.getFloodControl()));
+
           if (server.getAuthentication().hasSaslCredentials()) {
             connection.setSaslCredentials(
               server.getAuthentication().getSaslUsername(),
@@ -673,8 +705,7 @@ public class IRCService extends Service {
             _isTransient = !(ninf.getState() == NetworkInfo.State.CONNECTED);
           }
 
-          Intent sIntent = Broadcast.createServerIntent(Broadcast.SERVER_UPDATE, serverId);
-          sendBroadcast(sIntent);
+          EventBus.getInstance().postServerEvent(Broadcast.SERVER_UPDATE, serverId);
 
           IRCConnection connection = getConnection(serverId);
 
@@ -711,12 +742,7 @@ public class IRCService extends Service {
           message.setIcon(R.drawable.error);
           server.getConversation(ServerInfo.DEFAULT_NAME).addMessage(message);
 
-          Intent cIntent = Broadcast.createConversationIntent(
-                             Broadcast.CONVERSATION_MESSAGE,
-                             serverId,
-                             ServerInfo.DEFAULT_NAME
-                           );
-          sendBroadcast(cIntent);
+          EventBus.getInstance().postConversationEvent(Broadcast.CONVERSATION_MESSAGE, serverId, ServerInfo.DEFAULT_NAME);
         }
       }
     } .start();
@@ -819,6 +845,18 @@ public class IRCService extends Service {
       alarmReceivers = null;
     }
     unregisterReceiver(_netTransitionHandler);
+    PreferenceManager.getDefaultSharedPreferences(this)
+        .unregisterOnSharedPreferenceChangeListener(scrollbackListener);
+  }
+
+  /**
+   * Get the directory to keep the history of conversations in
+   *
+   * @return The directory, or null if the history is not kept on disk
+   */
+  private File getScrollbackDirectory() {
+    return settings.usePersistentScrollback()
+        ? new File(getFilesDir(), MessageLogger.DIRECTORY) : null;
   }
 
   /**
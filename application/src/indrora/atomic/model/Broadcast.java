@@ -20,10 +20,9 @@ along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
  */
 package indrora.atomic.model;
 
-import android.content.Intent;
-
 /**
- * Constants and helpers for Broadcasts
+ * Event types posted to the EventBus. SERVER_RECONNECT is the prefix of
+ * the real broadcast the reconnect alarm sends.
  *
  * @author Sebastian Kaspari <sebastian@yaaic.org>
  */
@@ -36,36 +35,4 @@ public abstract class Broadcast {
   public static final String CONVERSATION_REMOVE    = "indrora.atomic.conversation.remove";
   public static final String CONVERSATION_TOPIC    = "indrora.atomic.conversation.topic";
   public static final String CONVERSATION_CLEAR    = "indrora.atomic.conversation.clear";
-
-  /**
-   * Create an Intent for conversation broadcasting
-   *
-   * @param broadcastType The type of the broadcast, some constant of Broadcast.*
-   * @param serverId The id of the server
-   * @param conversationName The unique name of the conversation
-   * @return  The created Intent
-   */
-  public static Intent createConversationIntent(String broadcastType, int serverId, String conversationName) {
-    Intent intent = new Intent(broadcastType);
-
-    intent.putExtra(Extra.SERVER, serverId);
-    intent.putExtra(Extra.CONVERSATION, conversationName);
-
-    return intent;
-  }
-
-  /**
-   * Create an Intent for server broadcasting
-   *
-   * @param broadcastType The typo of the broadcast, some constant of Broadcast.*
-   * @param serverId The id of the server
-   * @return The created Intent
-   */
-  public static Intent createServerIntent(String broadcastType, int serverId) {
-    Intent intent = new Intent(broadcastType);
-
-    intent.putExtra(Extra.SERVER, serverId);
-
-    return intent;
-  }
 }
@@ -5,6 +5,8 @@ import indrora.atomic.R.raw;
 import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 import android.content.Context;
 import android.content.SharedPreferences;
@@ -25,6 +27,26 @@ public class ColorScheme implements OnSharedPreferenceChangeListener {
   private static String lastScheme = "";
   private static boolean isDarkTheme = true;
 
+  private static final int NICK_CACHE_SIZE = 256;
+  // Nick colors are mIRC colors with the hue shifted by up to this much
+  // either way
+  private static final int NICK_VARIANTS = 20;
+
+  // Nick colors by the mIRC color they start from and the hue shift,
+  // filled in as they are needed; 0 where not known yet. Replaced when
+  // the scheme is loaded.
+  private static int[] nickPalette = new int[0];
+
+  // Colors of recent nicks; cleared when the scheme is loaded. Guards
+  // nickPalette too.
+  private static final LinkedHashMap<String, Integer> nickColors = new LinkedHashMap<String, Integer>(
+    NICK_CACHE_SIZE, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+      return size() > NICK_CACHE_SIZE;
+    }
+  };
+
   public ColorScheme(Context ctx) {
     // initialize ourselves.
     if (ctx != null) {
@@ -123,8 +145,15 @@ public class ColorScheme implements OnSharedPreferenceChangeListener {
       scheme_colors.put("foreground", Color.parseColor(themeProps.getProperty("foreground."+(useDarkTheme?"dark":"light"))));
       scheme_colors.put("background", Color.parseColor(themeProps.getProperty("background."+(useDarkTheme?"dark":"light"))));
 
+      synchronized (nickColors) {
+        nickColors.clear();
+        nickPalette = new int[colors.length * (2 * NICK_VARIANTS - 1)];
+      }
     }
 
+    // Messages rendered with the old colors are out of date now
+    Settings.updateSnapshot(true);
+
   }
 
   private synchronized static int getColorCached(String name) {
@@ -147,6 +176,101 @@ public class ColorScheme implements OnSharedPreferenceChangeListener {
     return colors[idx % colors.length];
   }
 
+  /**
+   * Get the color to show a nick in: an mIRC color of the scheme, with
+   * the hue shifted a bit, that stands out from the background. The same
+   * nick always gets the same color.
+   *
+   * @param nick
+   * @return
+   */
+  public int getNickColor(String nick) {
+    if (nick.length() == 0) {
+      return getForeground();
+    }
+
+    synchronized (nickColors) {
+      Integer cached = nickColors.get(nick);
+      if (cached != null) {
+        return cached;
+      }
+
+      // colors is replaced before nickPalette when the scheme is loaded,
+      // so count the colors by the palette.
+      int colorCount = nickPalette.length / (2 * NICK_VARIANTS - 1);
+      if (colorCount == 0) {
+        return getForeground();
+      }
+
+      int color = 0;
+      int variant = nick.charAt(0);
+
+      for(int i = 0; i < nick.length(); i++) {
+        char c = nick.charAt(i);
+        if(c-33 >'Z')  variant +=(c-33)%32;
+        else variant -=(c-33)%32;
+        color += c;
+      }
+
+      variant %= NICK_VARIANTS;
+      color %= colorCount;
+
+      int slot = color * (2 * NICK_VARIANTS - 1) + variant + NICK_VARIANTS - 1;
+      int nickColor = nickPalette[slot];
+      if (nickColor == 0) {
+        nickColor = findNickColor(color, variant);
+        nickPalette[slot] = nickColor;
+      }
+
+      nickColors.put(nick, nickColor);
+      return nickColor;
+    }
+  }
+
+  /**
+   * Find the first mIRC color from the given one on that, with its hue
+   * shifted, has enough contrast to the background
+   */
+  private int findNickColor(int color, int variant) {
+    // We don't want the color to be the background color.
+    final int bg = getBackground();
+    float[] hsv = new float[3];
+
+    for (int i = 0; i < colors.length; i++) {
+      Color.colorToHSV(getMircColor(color + i), hsv);
+      hsv[0] += variant;
+
+      int tmpColor = Color.HSVToColor(hsv);
+      if (likeness(bg, tmpColor) >= 30) {
+        return tmpColor;
+      }
+    }
+    return getForeground();
+  }
+
+  /**
+   * Calculates a likeness. This will return between 0-255
+   * on the likeness of the color.
+   * @param back
+   * @param fore
+   * @return
+   */
+  private static int likeness(int back, int fore) {
+
+
+    double gamma = 2.2; // Woo constants.
+    double backL =
+      0.2126 * Math.pow( (float)Color.red(back)/255.0,    gamma )
+      + 0.7152 * Math.pow( (float)Color.green(back)/255.0,  gamma )
+      + 0.0722 * Math.pow( (float)Color.blue(back)/255.0,   gamma );
+    double foreL =
+      0.2126 * Math.pow( (float)Color.red(fore)/255.0,    gamma )
+      + 0.7152 * Math.pow( (float)Color.green(fore)/255.0,  gamma )
+      + 0.0722 * Math.pow( (float)Color.blue(fore)/255.0,   gamma );
+    int distance = (int) (255 * Math.abs(backL-foreL));
+    return distance;
+  }
+
   public int getForeground() {
     return getColorCached("foreground");
   }
@@ -20,8 +20,11 @@ along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
  */
 package indrora.atomic.model;
 
+import indrora.atomic.db.MessageLog;
+
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.List;
 
 /**
  * Base class for conversations
@@ -43,12 +46,18 @@ public abstract class Conversation implements Comparable<Conversation> {
 
   private static final int DEFAULT_HISTORY_SIZE = 30;
 
-  private final LinkedList<Message> buffer;
-  private final LinkedList<Message> history;
+  // The history; the buffer is the part after readSequence that the
+  // UI has not taken yet.
+  private final MessageRing messages;
+  private volatile long readSequence = 0;
+  private volatile MessageLog log = null;
+  // Sequence number of the message with index 0 in the log; messages
+  // are added to the history and the log together, under logLock.
+  private volatile long logOffset = 0;
+  private final Object logLock = new Object();
   private final String name;
   private int status = 1;
   private int newMentions = 0;
-  private int historySize = DEFAULT_HISTORY_SIZE;
 
   /* Type list (order: lowest to highest) */
   private static final int[] typeList = {
@@ -71,8 +80,7 @@ public abstract class Conversation implements Comparable<Conversation> {
    *            The name of the conversation (channel, user)
    */
   public Conversation(String name) {
-    this.buffer = new LinkedList<Message>();
-    this.history = new LinkedList<Message>();
+    this.messages = new MessageRing(DEFAULT_HISTORY_SIZE);
     this.name = name;
   }
 
@@ -112,23 +120,99 @@ public abstract class Conversation implements Comparable<Conversation> {
     if(this.getType() == TYPE_SERVER) {
       message.setType(Message.TYPE_SERVER);
     }
-    buffer.add(0, message);
-    history.add(message);
+    synchronized (logLock) {
+      messages.add(message);
+
+      MessageLog log = this.log;
+      if (log != null) {
+        log.append(message);
+      }
+    }
 
-    message.render(); // Optimization: Render it as early as possible.
-    
-    if (history.size() > historySize) {
-      history.remove(0);
+    // Optimization: Render it as early as possible, but not on this thread
+    MessageRenderer.getInstance().renderLater(message);
+  }
+
+  /**
+   * Set the on-disk log of this conversation. From now on new messages
+   * are appended to it; what it held before is not put in the history
+   * but paged in from the log in the background (see
+   * MessageListAdapter). The previous log is closed.
+   *
+   * @param log The log, or null to stop logging
+   */
+  public void setLog(MessageLog log) {
+    synchronized (logLock) {
+      if (this.log != null) {
+        this.log.close();
+      }
+      logOffset = messages.getNextSequence();
+      this.log = log;
     }
   }
 
   /**
-   * Get the history
+   * Get the index in the log of the message with the given sequence
+   * number
+   *
+   * @param sequence
+   * @return The index, see MessageLog
+   */
+  public long getLogIndex(long sequence) {
+    return sequence - logOffset;
+  }
+
+  /**
+   * Get the sequence number of the message with the given index in the
+   * log
+   *
+   * @param index The index, see MessageLog
+   * @return The sequence number; lower than any in the history if the
+   *         message dropped out of it
+   */
+  public long getSequence(long index) {
+    return index + logOffset;
+  }
+
+  /**
+   * Get the on-disk log of this conversation
+   *
+   * @return The log, or null if the conversation is not logged
+   */
+  public MessageLog getLog() {
+    return log;
+  }
+
+  /**
+   * Get the history, oldest message first
    */
-  public LinkedList<Message> getHistory() {
+  public List<Message> getHistory() {
+    List<Message> history = new ArrayList<Message>(messages.size());
+    messages.getSince(0, history);
     return history;
   }
 
+  /**
+   * Get all messages from the given sequence number on, oldest first.
+   * Messages that dropped out of the history already are skipped.
+   *
+   * @param sequence The first sequence number wanted
+   * @param messages The list to add the messages to
+   * @return The sequence number to ask for next time
+   */
+  public long getMessagesSince(long sequence, List<Message> messages) {
+    return this.messages.getSince(sequence, messages);
+  }
+
+  /**
+   * Get the sequence number the next message will get
+   *
+   * @return
+   */
+  public long getNextSequence() {
+    return messages.getNextSequence();
+  }
+
   /**
    * Get message of the history at the given position
    *
@@ -136,26 +220,38 @@ public abstract class Conversation implements Comparable<Conversation> {
    * @return The message at the given position
    */
   public Message getHistoryMessage(int position) {
-    return history.get(position);
+    return messages.get(messages.getFirstSequence() + position);
   }
 
   /**
-   * Get last buffered message
+   * Get the oldest buffered message and remove it from the buffer
    *
-   * @return
+   * @return The message, or null if the buffer is empty
    */
   public Message pollBufferedMessage() {
-    Message message = buffer.get(buffer.size() - 1);
-    buffer.remove(buffer.size() - 1);
-    return message;
+    long sequence = Math.max(readSequence, messages.getFirstSequence());
+    long next = messages.getNextSequence();
+
+    while (sequence < next) {
+      Message message = messages.get(sequence++);
+      if (message != null) {
+        readSequence = sequence;
+        return message;
+      }
+    }
+
+    readSequence = next;
+    return null;
   }
 
   /**
-   * Get the buffer
+   * Get all buffered messages, oldest first, and clear the buffer
    *
    * @return
    */
-  public LinkedList<Message> getBuffer() {
+  public List<Message> pollBufferedMessages() {
+    List<Message> buffer = new ArrayList<Message>();
+    clearBuffer(messages.getSince(readSequence, buffer));
     return buffer;
   }
 
@@ -163,14 +259,31 @@ public abstract class Conversation implements Comparable<Conversation> {
    * Does the channel have buffered messages?
    */
   public boolean hasBufferedMessages() {
-    return buffer.size() > 0;
+    return readSequence < messages.getNextSequence();
+  }
+
+  /**
+   * Get the sequence number of the first message still buffered
+   */
+  public long getReadSequence() {
+    return readSequence;
   }
 
   /**
    * Clear the message buffer
    */
   public void clearBuffer() {
-    buffer.clear();
+    clearBuffer(messages.getNextSequence());
+  }
+
+  /**
+   * Clear the message buffer up to the given sequence number, e.g. the
+   * one returned by getMessagesSince()
+   *
+   * @param sequence
+   */
+  public void clearBuffer(long sequence) {
+    readSequence = Math.max(readSequence, sequence);
   }
 
   /**
@@ -233,14 +346,14 @@ public abstract class Conversation implements Comparable<Conversation> {
    * @return The conversation's history size.
    */
   public int getHistorySize() {
-    return historySize;
+    return messages.getCapacity();
   }
 
   /**
    * Clears the history of a conversation.
    */
   public void clearHistory() {
-    history.clear();
+    messages.clear();
   }
   
   /**
@@ -254,9 +367,6 @@ public abstract class Conversation implements Comparable<Conversation> {
       return;
     }
 
-    historySize = size;
-    if (history.size() > size) {
-      history.subList(size, history.size()).clear();
-    }
+    messages.setCapacity(size);
   }
 }
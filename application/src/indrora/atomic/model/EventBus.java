@@ -0,0 +1,276 @@
+/*
+Yaaic - Yet Another Android IRC Client
+
+Copyright 2009-2013 Sebastian Kaspari
+
+This file is part of Yaaic.
+
+Yaaic is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Yaaic is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package indrora.atomic.model;
+
+import indrora.atomic.listener.ConversationListener;
+import indrora.atomic.listener.ServerListener;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * In-process replacement for the conversation and server broadcasts.
+ *
+ * Events are typed by the Broadcast constants and carry the server id
+ * and the conversation name; the messages themselves wait in the
+ * conversation's buffer. Posting does not take a lock and may happen
+ * on any thread. Listeners are called on the main thread.
+ *
+ * Events are coalesced: while a CONVERSATION_MESSAGE or
+ * CONVERSATION_TOPIC event for a conversation is still waiting, posting
+ * the same event again does nothing, since the listener reads the
+ * conversation when the event is delivered anyway. A burst of 200
+ * messages thus wakes up the UI a few times instead of 200 times. All
+ * server updates are coalesced the same way.
+ */
+public class EventBus {
+  private static EventBus instance;
+
+  private final ConcurrentLinkedQueue<Event> queue = new ConcurrentLinkedQueue<Event>();
+  private final ConcurrentHashMap<Event, Event> pending = new ConcurrentHashMap<Event, Event>();
+  private final AtomicBoolean scheduled = new AtomicBoolean(false);
+  private final CopyOnWriteArrayList<ConversationRegistration> conversationListeners = new CopyOnWriteArrayList<ConversationRegistration>();
+  private final CopyOnWriteArrayList<ServerListener> serverListeners = new CopyOnWriteArrayList<ServerListener>();
+  private final Handler handler = new Handler(Looper.getMainLooper());
+
+  private final Runnable deliverRunnable = new Runnable() {
+    @Override
+    public void run() {
+      deliver();
+    }
+  };
+
+  /**
+   * Private constructor, use static getInstance()
+   */
+  private EventBus() {
+  }
+
+  /**
+   * Get the global event bus
+   *
+   * @return the global event bus
+   */
+  public static synchronized EventBus getInstance() {
+    if (instance == null) {
+      instance = new EventBus();
+    }
+
+    return instance;
+  }
+
+  /**
+   * Post a conversation event
+   *
+   * @param type One of the Broadcast.CONVERSATION_* constants
+   * @param serverId The id of the server
+   * @param conversation The unique name of the conversation
+   */
+  public void postConversationEvent(String type, int serverId, String conversation) {
+    Event event = new Event(type, serverId, conversation);
+
+    if (type.equals(Broadcast.CONVERSATION_MESSAGE) || type.equals(Broadcast.CONVERSATION_TOPIC)) {
+      if (pending.putIfAbsent(event, event) != null) {
+        // The waiting event will pick up this change as well.
+        return;
+      }
+    } else {
+      // Later messages must not be merged into an event queued before
+      // the conversation was created, removed or cleared.
+      pending.remove(new Event(Broadcast.CONVERSATION_MESSAGE, serverId, conversation));
+      pending.remove(new Event(Broadcast.CONVERSATION_TOPIC, serverId, conversation));
+    }
+
+    enqueue(event);
+  }
+
+  /**
+   * Post a server event
+   *
+   * @param type One of the Broadcast.SERVER_* constants
+   * @param serverId The id of the server, or -1 for all servers
+   */
+  public void postServerEvent(String type, int serverId) {
+    // Server listeners are not interested in the server id, so all
+    // waiting server events are the same.
+    Event event = new Event(type, -1, null);
+
+    if (pending.putIfAbsent(event, event) == null) {
+      enqueue(event);
+    }
+  }
+
+  /**
+   * Register a listener for the conversations of a server
+   *
+   * @param serverId Only receive events of this server
+   * @param listener
+   */
+  public void register(int serverId, ConversationListener listener) {
+    conversationListeners.add(new ConversationRegistration(serverId, listener));
+  }
+
+  /**
+   * Unregister a conversation listener
+   *
+   * @param listener
+   */
+  public void unregister(ConversationListener listener) {
+    for (ConversationRegistration registration : conversationListeners) {
+      if (registration.listener == listener) {
+        conversationListeners.remove(registration);
+      }
+    }
+  }
+
+  /**
+   * Register a listener for server updates
+   *
+   * @param listener
+   */
+  public void register(ServerListener listener) {
+    serverListeners.add(listener);
+  }
+
+  /**
+   * Unregister a server listener
+   *
+   * @param listener
+   */
+  public void unregister(ServerListener listener) {
+    serverListeners.remove(listener);
+  }
+
+  /**
+   * Queue an event and make sure the main thread will deliver it
+   */
+  private void enqueue(Event event) {
+    queue.offer(event);
+
+    if (scheduled.compareAndSet(false, true)) {
+      handler.post(deliverRunnable);
+    }
+  }
+
+  /**
+   * Deliver all queued events, on the main thread
+   */
+  private void deliver() {
+    Event event;
+
+    while ((event = queue.poll()) != null) {
+      // From now on a new event is needed for further changes.
+      pending.remove(event, event);
+      dispatch(event);
+    }
+
+    scheduled.set(false);
+
+    // An event may have been queued after the loop ended but before the
+    // flag was cleared; nobody scheduled a delivery for it then.
+    if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+      handler.post(deliverRunnable);
+    }
+  }
+
+  /**
+   * Call the listeners of an event
+   */
+  private void dispatch(Event event) {
+    String type = event.type;
+
+    if (type.equals(Broadcast.SERVER_UPDATE)) {
+      for (ServerListener listener : serverListeners) {
+        listener.onStatusUpdate();
+      }
+      return;
+    }
+
+    for (ConversationRegistration registration : conversationListeners) {
+      if (registration.serverId != event.serverId) {
+        continue;
+      }
+
+      ConversationListener listener = registration.listener;
+
+      if (type.equals(Broadcast.CONVERSATION_MESSAGE)) {
+        listener.onConversationMessage(event.conversation);
+      } else if (type.equals(Broadcast.CONVERSATION_NEW)) {
+        listener.onNewConversation(event.conversation);
+      } else if (type.equals(Broadcast.CONVERSATION_REMOVE)) {
+        listener.onRemoveConversation(event.conversation);
+      } else if (type.equals(Broadcast.CONVERSATION_TOPIC)) {
+        listener.onTopicChanged(event.conversation);
+      } else if (type.equals(Broadcast.CONVERSATION_CLEAR)) {
+        listener.onClearConversation(event.conversation);
+      }
+    }
+  }
+
+  /**
+   * A posted event; equal events are coalesced
+   */
+  private static class Event {
+    final String type;
+    final int serverId;
+    final String conversation;
+
+    Event(String type, int serverId, String conversation) {
+      this.type = type;
+      this.serverId = serverId;
+      this.conversation = conversation;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Event)) {
+        return false;
+      }
+      Event other = (Event) o;
+      return serverId == other.serverId && type.equals(other.type)
+          && (conversation == null ? other.conversation == null : conversation.equals(other.conversation));
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = type.hashCode() * 31 + serverId;
+      return conversation == null ? hash : hash * 31 + conversation.hashCode();
+    }
+  }
+
+  /**
+   * A conversation listener and the server it listens to
+   */
+  private static class ConversationRegistration {
+    final int serverId;
+    final ConversationListener listener;
+
+    ConversationRegistration(int serverId, ConversationListener listener) {
+      this.serverId = serverId;
+      this.listener = listener;
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*
+Yaaic - Yet Another Android IRC Client
+
+Copyright 2009-2013 Sebastian Kaspari
+
+This file is part of Yaaic.
+
+Yaaic is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Yaaic is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package indrora.atomic.model;
+
+import org.jibble.pircbot.RateLimiter;
+import org.jibble.pircbot.TokenBucketRateLimiter;
+
+/**
+ * Helper class for the flood control profiles a server can use.
+ * The values are stored in the database and match the order of
+ * R.array.flood_control_labels.
+ */
+public class FloodControl {
+  /**
+   * Burst of 5 lines, then 1 line per second; long lines cost more.
+   */
+  public static final int DEFAULT = 0;
+
+  /**
+   * The ircu penalty: 2 seconds per line plus 1 per 120 bytes, with 10
+   * seconds of allowance.
+   */
+  public static final int STRICT  = 1;
+
+  /**
+   * Burst of 20 lines, then 4 lines per second. For bouncers and servers
+   * without flood protection.
+   */
+  public static final int RELAXED = 2;
+
+  /**
+   * Create the RateLimiter for a flood control profile
+   *
+   * @param profile See constants FloodControl.*
+   * @return A new RateLimiter
+   */
+  public static RateLimiter createRateLimiter(int profile) {
+    switch (profile) {
+      case STRICT:
+        // 2 seconds per 240 bytes is 1 per 120
+        return new TokenBucketRateLimiter(5, 2000, 240);
+      case RELAXED:
+        return new TokenBucketRateLimiter(20, 250, 0);
+      default:
+        return new TokenBucketRateLimiter(5, 1000, 512);
+    }
+  }
+}
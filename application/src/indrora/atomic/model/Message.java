@@ -34,17 +34,12 @@ import java.util.Date;
 
 import android.annotation.TargetApi;
 import android.content.Context;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.Typeface;
-import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.text.Spannable;
 import android.text.SpannableString;
 import android.text.TextUtils;
 import android.text.method.DateTimeKeyListener;
 import android.text.style.ForegroundColorSpan;
-import android.text.style.ImageSpan;
 import android.text.util.Linkify;
 import android.util.Log;
 import android.widget.TextView;
@@ -166,6 +161,15 @@ public class Message {
     return text;
   }
 
+  /**
+   * Get the nickname of the sender of this message
+   *
+   * @return The sender, or null if the message has none
+   */
+  public String getSender() {
+    return sender;
+  }
+
   /**
    * Get the type of this message
    *
@@ -186,6 +190,15 @@ public class Message {
     this.color = color;
   }
 
+  /**
+   * Get the color of this message
+   *
+   * @return
+   */
+  public MessageColor getColor() {
+    return color;
+  }
+
   private int translateColor(MessageColor c) {
     switch(c) {
     case CHANNEL_EVENT:
@@ -217,85 +230,53 @@ public class Message {
     this.timestamp = timestamp;
   }
 
+  /**
+   * Get the timestamp of the message
+   *
+   * @return Milliseconds since the epoch
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
   /**
    * Associate a color with a sender name
    *
    * @return a color hexa
    */
   private int getSenderColor() {
-    /* It might be worth to use some hash table here */
     if (sender == null) {
       return _scheme.getForeground();
     }
 
-    int color = 0;
-    int variant = sender.charAt(0);
-
-    for(int i = 0; i < sender.length(); i++) {
-      char c = sender.charAt(i);
-      if(c-33 >'Z')  variant +=(c-33)%32;
-      else variant -=(c-33)%32;
-      color += c;
-    }
-
-    variant %= 20;
-    // We don't want the color to be the background color.
-
-    //Log.d("Message", "Variant="+variant);
-
-    final int bg = _scheme.getBackground();
-    int tmpColor;// = _scheme.getMircColor(color);
-    do {
-
-      float[] hsv = new float[3];
-      Color.colorToHSV(_scheme.getMircColor(color++), hsv);
-      hsv[0] += variant;
-
-      tmpColor = Color.HSVToColor(hsv);
-    } while(likeness(bg, tmpColor) < 30);
-
-    return tmpColor; //colors[color];
+    return _scheme.getNickColor(sender);
   }
 
-  /**
-   * Calculates a likeness. This will return between 0-255
-   * on the likeness of the color.
-   * @param back
-   * @param fore
-   * @return
-   */
-  private static int likeness(int back, int fore) {
-
-
-    double gamma = 2.2; // Woo constants.
-    double backL =
-      0.2126 * Math.pow( (float)Color.red(back)/255.0,    gamma )
-      + 0.7152 * Math.pow( (float)Color.green(back)/255.0,  gamma )
-      + 0.0722 * Math.pow( (float)Color.blue(back)/255.0,   gamma );
-    double foreL =
-      0.2126 * Math.pow( (float)Color.red(fore)/255.0,    gamma )
-      + 0.7152 * Math.pow( (float)Color.green(fore)/255.0,  gamma )
-      + 0.0722 * Math.pow( (float)Color.blue(fore)/255.0,   gamma );
-    int distance = (int) (255 * Math.abs(backL-foreL));
-    return distance;
-  }
+  // Set by the render thread and read by the UI thread
+  private volatile SpannableString _cache = null;
+  // Version of the settings snapshot _cache was rendered with
+  private volatile int renderedVersion = -1;
+
+  // Whether the message is waiting in MessageRenderer for a list
+  boolean renderRequested = false;
 
-  private SpannableString _cache = null;
-  private long lastRenderedMillis= -1;
-  
   /**
    * Render message as spannable string
    *
+   * Usually done in the background by MessageRenderer; a message is
+   * rendered by one thread at a time.
+   *
    * @return
    */
-  public SpannableString render() {
-    Settings settings = App.getSettings();
+  public synchronized SpannableString render() {
+    Settings.Snapshot settings = App.getSettings().getSnapshot();
 
-    if( !settings.shouldRerender(lastRenderedMillis) && _cache != null ){
+    if( settings.version == renderedVersion && _cache != null ){
       return _cache;
     }
     
     _scheme = App.getColorScheme();
+    RenderResources resources = RenderResources.get(settings);
 
     SpannableString nickSS;
     SpannableString timeSS;
@@ -310,14 +291,14 @@ public class Message {
       int senderColor = _scheme.getForeground();
       
       
-      if(settings.showColorsNick()) {
+      if(settings.showColorsNick) {
           // getSenderColor does a variant color from the color scheme options.
           senderColor = getSenderColor();
         }
       
 
       // We should now set the spannable's color.
-      nickSS.setSpan(new ForegroundColorSpan(senderColor), 0, nickSS.length(), SpannableString.SPAN_EXCLUSIVE_EXCLUSIVE);
+      nickSS.setSpan(resources.getNickSpan(senderColor), 0, nickSS.length(), SpannableString.SPAN_EXCLUSIVE_EXCLUSIVE);
       // and wrap it in our preferred <'s
       if(type == TYPE_MESSAGE) {
     	nickSS = new SpannableString(TextUtils.concat("<", nickSS, ">"));
@@ -330,8 +311,8 @@ public class Message {
     }
     
     // Timestamps are handled in much the same way as the Sender, however they're much simpler.
-    if(settings.showTimestamp()) {
-      timeSS = new SpannableString(renderTimeStamp(settings.use24hFormat(), settings.includeSeconds()));
+    if(settings.showTimestamp) {
+      timeSS = new SpannableString(resources.formatTimestamp(timestamp));
     }
     else {
       timeSS = new SpannableString("");
@@ -347,26 +328,9 @@ public class Message {
       // this makes things a little nicer.
       prefixSS = new SpannableString("*");
       // If we really want to show icons...
-      if(settings.showIcons()) {
-        // the Paint object here lets us get the width of a monospaced space.
-        Paint p = new Paint();
-        p.setTypeface(Typeface.MONOSPACE);
-        float spaceWidth = p.measureText("  ");
-        // The drawable here is our icon. Internally, the icon is seriously just a reference into the
-        // resources block
-        
-        Drawable drawable = App.getSResources().getDrawable(icon);
-        
-        float density = App.getSResources().getDisplayMetrics().density;
-        // scale = wanted / actual
-        float scale = spaceWidth / (float)(drawable.getMinimumWidth());
-        // This call is < x,y, width,height>
-        // SpaceWidth is going to be in raw pixels, so we need to multiply it by density.
-        // Height is going to be the drawable intrinsic height * scale * density
-        drawable.setBounds(0, 0, (int)(spaceWidth * density), (int)(drawable.getIntrinsicHeight() * scale * density));
-        // And now we do the magic.
-        prefixSS.setSpan(new ImageSpan(drawable, ImageSpan.ALIGN_BASELINE), 0, 1, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-        
+      if(settings.showIcons) {
+        // The icon is sized to the width of two monospaced spaces, once.
+        prefixSS.setSpan(resources.getIconSpan(icon), 0, 1, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
       }
     }
 
@@ -380,23 +344,18 @@ public class Message {
     //   => strip mIRC color tags from the text block
     //   => highlight color?
     //      => blarg the spannable.
-    messageSS = new SpannableString(text);
-
-    if (settings.showMircColors()) {
-      if (hasColor() && settings.showColors()) {
-        messageSS.setSpan(new ForegroundColorSpan(translateColor(color)), 0,
-            messageSS.length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-      }
-      messageSS = MircColors.toSpannable(messageSS);
+    if (settings.showMircColors) {
+      int foreground = (hasColor() && settings.showColors) ? translateColor(color) : 0;
+      messageSS = MircColors.toSpannable(text, foreground);
     } else {
       messageSS = new SpannableString(MircColors.removeStyleAndColors(text));
-      if (hasColor() && settings.showColors()) {
+      if (hasColor() && settings.showColors) {
         messageSS.setSpan(new ForegroundColorSpan(translateColor(color)), 0,
             messageSS.length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
       }
     }
     // Smash smileys into this, but only if we're not a server message..
-    if (settings.showGraphicalSmilies() && this.type != TYPE_SERVER) {
+    if (settings.showGraphicalSmilies && this.type != TYPE_SERVER) {
       messageSS = Smilies.toSpannable(messageSS, App.getAppContext());
     }
 
@@ -407,11 +366,66 @@ public class Message {
     // our cache is invalidated when _lastRenderedWith changes.
     
     _cache =  new SpannableString(TextUtils.concat( timeSS, prefixSS, nickSS, " ", messageSS ));
-    lastRenderedMillis = System.currentTimeMillis();
+    renderedVersion = settings.version;
     return _cache;
     
   }
 
+  /**
+   * Get the last rendering of this message without rendering it
+   *
+   * @return The rendering, possibly out of date (see isRenderCurrent()),
+   *         or null if there is none
+   */
+  public SpannableString getCachedRender() {
+    return _cache;
+  }
+
+  /**
+   * Is the last rendering of this message there and up to date?
+   *
+   * @return
+   */
+  public boolean isRenderCurrent() {
+    return _cache != null && renderedVersion == App.getSettings().getSnapshot().version;
+  }
+
+  /**
+   * Get the message as plain text, laid out like render() but without
+   * colors, smileys or icons. Cheap enough to show while the message is
+   * rendered in the background.
+   *
+   * @return
+   */
+  public String renderPlain() {
+    Settings.Snapshot settings = App.getSettings().getSnapshot();
+    StringBuilder plain = new StringBuilder(text.length() + 32);
+
+    if (settings.showTimestamp) {
+      plain.append(RenderResources.get(settings).formatTimestamp(timestamp));
+    }
+    plain.append(hasIcon() ? '*' : ' ');
+    if (hasSender()) {
+      if (type == TYPE_MESSAGE) {
+        plain.append('<').append(sender).append('>');
+      } else {
+        plain.append(sender);
+      }
+    }
+    plain.append(' ');
+    plain.append(MircColors.removeStyleAndColors(text));
+
+    return plain.toString();
+  }
+
+  /**
+   * Drop the cached rendering of this message to save memory. The next
+   * call of render() builds it again.
+   */
+  public void releaseRender() {
+    _cache = null;
+  }
+
   /**
    * Does this message have a sender?
    *
@@ -438,26 +452,4 @@ public class Message {
   private boolean hasIcon() {
     return icon != NO_ICON;
   }
-
-  /**
-   * Generate a timestamp
-   *
-   * @param use24hFormat
-   * @return
-   */
-  public String renderTimeStamp(boolean use24hFormat, boolean includeSeconds) {
-
-    Date date = new Date(timestamp);
-    String format = "[";
-
-    format += (use24hFormat?"HH":"hh");
-    format += ":mm";
-
-    if (includeSeconds) {
-      format += ":ss";
-    }
-    format += "]";
-
-    return (String) android.text.format.DateFormat.format(format, date);
-  }
 }
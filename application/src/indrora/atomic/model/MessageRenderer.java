@@ -0,0 +1,159 @@
+/*
+Yaaic - Yet Another Android IRC Client
+
+Copyright 2009-2013 Sebastian Kaspari
+
+This file is part of Yaaic.
+
+Yaaic is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Yaaic is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package indrora.atomic.model;
+
+import indrora.atomic.utils.CircularArray;
+import android.util.Log;
+
+/**
+ * Renders messages on a background thread
+ *
+ * Messages are queued for rendering as they are added to a conversation,
+ * so the connection thread does not have to wait for their spans. Lists
+ * that need a message on screen that is not rendered yet (or no longer
+ * up to date) ask for it with render(); such requests go before all
+ * queued messages, so the conversation being looked at comes first.
+ *
+ * Only the newest BACKLOG_SIZE queued messages are kept; older ones are
+ * rendered when they are shown.
+ */
+public class MessageRenderer {
+  private static final String TAG = "MessageRenderer";
+
+  private static final int BACKLOG_SIZE = 256;
+
+  /**
+   * Listener for messages rendered on request
+   */
+  public interface OnMessageRenderedListener {
+    /**
+     * Called on the render thread once the message is rendered
+     *
+     * @param message
+     */
+    public void onMessageRendered(Message message);
+  }
+
+  private static MessageRenderer instance;
+
+  private final Object lock = new Object();
+  // Messages asked for by lists, and the listeners to tell
+  private final CircularArray<Message> requested = new CircularArray<Message>(32);
+  private final CircularArray<OnMessageRenderedListener> listeners = new CircularArray<OnMessageRenderedListener>(32);
+  // Messages queued as they were added
+  private final CircularArray<Message> backlog = new CircularArray<Message>(BACKLOG_SIZE);
+
+  /**
+   * Get the global MessageRenderer
+   */
+  public static synchronized MessageRenderer getInstance() {
+    if (instance == null) {
+      instance = new MessageRenderer();
+    }
+    return instance;
+  }
+
+  private MessageRenderer() {
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        loop();
+      }
+    }, "MessageRenderer");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.NORM_PRIORITY - 1);
+    thread.start();
+  }
+
+  /**
+   * Render a message soon, before all messages queued with renderLater()
+   *
+   * Asking again for a message that is still waiting does nothing.
+   *
+   * @param message
+   * @param listener Told once the message is rendered
+   */
+  public void render(Message message, OnMessageRenderedListener listener) {
+    synchronized (lock) {
+      if (message.renderRequested) {
+        return;
+      }
+      message.renderRequested = true;
+      requested.addLast(message);
+      listeners.addLast(listener);
+      lock.notify();
+    }
+  }
+
+  /**
+   * Render a message when there is nothing more urgent to do
+   *
+   * @param message
+   */
+  public void renderLater(Message message) {
+    synchronized (lock) {
+      if (backlog.size() == BACKLOG_SIZE) {
+        backlog.removeFirst(1);
+      }
+      backlog.addLast(message);
+      lock.notify();
+    }
+  }
+
+  private void loop() {
+    while (true) {
+      Message message;
+      OnMessageRenderedListener listener = null;
+
+      synchronized (lock) {
+        while (requested.isEmpty() && backlog.isEmpty()) {
+          try {
+            lock.wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+
+        if (!requested.isEmpty()) {
+          message = requested.get(0);
+          listener = listeners.get(0);
+          requested.removeFirst(1);
+          listeners.removeFirst(1);
+          message.renderRequested = false;
+        } else {
+          message = backlog.get(0);
+          backlog.removeFirst(1);
+        }
+      }
+
+      try {
+        message.render();
+      } catch (RuntimeException e) {
+        Log.e(TAG, "Could not render message", e);
+        continue;
+      }
+
+      if (listener != null) {
+        listener.onMessageRendered(message);
+      }
+    }
+  }
+}
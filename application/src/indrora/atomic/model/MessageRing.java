@@ -0,0 +1,205 @@
+/*
+Yaaic - Yet Another Android IRC Client
+
+Copyright 2009-2013 Sebastian Kaspari
+
+This file is part of Yaaic.
+
+Yaaic is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Yaaic is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package indrora.atomic.model;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed-capacity ring of messages with sequence numbers
+ *
+ * Every message added gets the next sequence number, starting at 0. Once
+ * the ring is full, adding a message overwrites the oldest one. Readers
+ * ask for messages by sequence number and never take a lock: a message
+ * that was overwritten or cleared while it was read is reported as gone
+ * rather than returned wrong.
+ *
+ * Writers (the connection thread, and the UI thread for messages typed
+ * by the user) are serialized among themselves.
+ */
+public class MessageRing {
+  private final Object writeLock = new Object();
+
+  private volatile AtomicReferenceArray<Message> slots;
+  // Sequence number of the next message to add
+  private volatile long next = 0;
+  // Sequence number of the message being written; its slot is no longer
+  // valid for the message capacity places before it
+  private volatile long writing = 0;
+  // Messages before this sequence number were cleared
+  private volatile long cleared = 0;
+
+  /**
+   * Create a new ring
+   *
+   * @param capacity The number of messages to keep
+   */
+  public MessageRing(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    slots = new AtomicReferenceArray<Message>(capacity);
+  }
+
+  /**
+   * Add a message, overwriting the oldest one if the ring is full
+   *
+   * @param message
+   * @return The sequence number of the message
+   */
+  public long add(Message message) {
+    synchronized (writeLock) {
+      AtomicReferenceArray<Message> slots = this.slots;
+      long sequence = next;
+
+      writing = sequence + 1;
+      slots.set(index(sequence, slots), message);
+      next = sequence + 1;
+
+      return sequence;
+    }
+  }
+
+  /**
+   * Get the message with the given sequence number
+   *
+   * @param sequence
+   * @return The message, or null if it was not added yet or is gone
+   */
+  public Message get(long sequence) {
+    if (sequence < 0 || sequence >= next) {
+      return null;
+    }
+
+    while (true) {
+      AtomicReferenceArray<Message> slots = this.slots;
+      Message message = slots.get(index(sequence, slots));
+
+      // Check afterwards that the slot still belonged to the sequence
+      // number when it was read.
+      if (sequence < cleared || sequence < writing - slots.length()) {
+        return null;
+      }
+      if (slots == this.slots) {
+        return message;
+      }
+      // Resized in the meantime; read again from the new slots.
+    }
+  }
+
+  /**
+   * Copy all messages from the given sequence number on into a list,
+   * oldest first. Messages that are gone are skipped.
+   *
+   * @param sequence The first sequence number wanted
+   * @param messages The list to add the messages to
+   * @return The sequence number to ask for next time
+   */
+  public long getSince(long sequence, List<Message> messages) {
+    long end = next;
+    for (long i = Math.max(sequence, getFirstSequence()); i < end; i++) {
+      Message message = get(i);
+      if (message != null) {
+        messages.add(message);
+      }
+    }
+    return Math.max(sequence, end);
+  }
+
+  /**
+   * Get the sequence number the next message will get
+   *
+   * @return One more than the sequence number of the newest message
+   */
+  public long getNextSequence() {
+    return next;
+  }
+
+  /**
+   * Get the sequence number of the oldest message still in the ring
+   *
+   * @return The sequence number; equal to getNextSequence() if empty
+   */
+  public long getFirstSequence() {
+    long next = this.next;
+    return Math.max(cleared, Math.max(0, next - slots.length()));
+  }
+
+  /**
+   * Get the number of messages in the ring
+   */
+  public int size() {
+    return (int) (next - getFirstSequence());
+  }
+
+  /**
+   * Get the number of messages the ring keeps
+   */
+  public int getCapacity() {
+    return slots.length();
+  }
+
+  /**
+   * Change the number of messages the ring keeps. When shrinking, the
+   * oldest messages are dropped.
+   *
+   * @param capacity
+   */
+  public void setCapacity(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+
+    synchronized (writeLock) {
+      AtomicReferenceArray<Message> slots = this.slots;
+      if (capacity == slots.length()) {
+        return;
+      }
+
+      AtomicReferenceArray<Message> resized = new AtomicReferenceArray<Message>(capacity);
+      long first = Math.max(getFirstSequence(), next - capacity);
+      for (long i = first; i < next; i++) {
+        resized.set(index(i, resized), slots.get(index(i, slots)));
+      }
+
+      cleared = Math.max(cleared, first);
+      this.slots = resized;
+    }
+  }
+
+  /**
+   * Drop all messages. Sequence numbers keep counting on.
+   */
+  public void clear() {
+    synchronized (writeLock) {
+      cleared = next;
+
+      AtomicReferenceArray<Message> slots = this.slots;
+      for (int i = 0; i < slots.length(); i++) {
+        slots.set(i, null);
+      }
+    }
+  }
+
+  private static int index(long sequence, AtomicReferenceArray<Message> slots) {
+    return (int) (sequence % slots.length());
+  }
+}
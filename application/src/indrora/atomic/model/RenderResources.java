@@ -0,0 +1,147 @@
+/*
+Yaaic - Yet Another Android IRC Client
+
+Copyright 2009-2013 Sebastian Kaspari
+
+This file is part of Yaaic.
+
+Yaaic is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Yaaic is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package indrora.atomic.model;
+
+import indrora.atomic.App;
+import indrora.atomic.utils.TimestampFormatter;
+
+import android.content.res.Resources;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.ImageSpan;
+import android.util.SparseArray;
+
+/**
+ * What rendering messages needs from resources, prepared once per
+ * settings snapshot
+ *
+ * Holds the icon spans, sized to a monospaced space, the timestamp
+ * formatter and the spans for nick colors. A new RenderResources is made
+ * for every new Settings.Snapshot, so everything here follows the
+ * settings without being checked.
+ *
+ * The spans are stateless and shared between messages. A span can only
+ * be in a text once, so a shared span must only be used for one range
+ * of a message: the icon and the sender.
+ */
+public class RenderResources {
+  // Nick colors come from a palette of a few hundred colors (see
+  // ColorScheme.getNickColor()), so this is only reached when the color
+  // scheme changed
+  private static final int NICK_SPAN_CACHE_SIZE = 1024;
+
+  private static RenderResources current;
+
+  private final Settings.Snapshot settings;
+  private final Resources resources;
+  private final TimestampFormatter timestampFormatter;
+
+  // Guarded by this
+  private final SparseArray<ImageSpan> iconSpans = new SparseArray<ImageSpan>();
+  private final SparseArray<ForegroundColorSpan> nickSpans = new SparseArray<ForegroundColorSpan>();
+  private float iconWidth = -1;
+
+  /**
+   * Get the render resources for a settings snapshot
+   *
+   * @param settings The current snapshot
+   * @return
+   */
+  public static synchronized RenderResources get(Settings.Snapshot settings) {
+    if (current == null || current.settings != settings) {
+      current = new RenderResources(settings, App.getSResources());
+    }
+    return current;
+  }
+
+  private RenderResources(Settings.Snapshot settings, Resources resources) {
+    this.settings = settings;
+    this.resources = resources;
+    timestampFormatter = new TimestampFormatter(settings.use24hFormat, settings.includeSeconds);
+  }
+
+  /**
+   * Format the timestamp of a message
+   *
+   * @param time Milliseconds since the epoch
+   * @return
+   */
+  public String formatTimestamp(long time) {
+    return timestampFormatter.format(time);
+  }
+
+  /**
+   * Get the span showing an icon the width of two monospaced characters
+   *
+   * @param icon The resource id of the icon
+   * @return
+   */
+  public synchronized ImageSpan getIconSpan(int icon) {
+    ImageSpan span = iconSpans.get(icon);
+    if (span != null) {
+      return span;
+    }
+
+    if (iconWidth < 0) {
+      // the Paint object here lets us get the width of a monospaced space.
+      Paint p = new Paint();
+      p.setTypeface(Typeface.MONOSPACE);
+      iconWidth = p.measureText("  ");
+    }
+    float spaceWidth = iconWidth;
+
+    // The drawable here is our icon. Internally, the icon is seriously just a reference into the
+    // resources block
+    Drawable drawable = resources.getDrawable(icon);
+
+    float density = resources.getDisplayMetrics().density;
+    // scale = wanted / actual
+    float scale = spaceWidth / (float)(drawable.getMinimumWidth());
+    // This call is < x,y, width,height>
+    // SpaceWidth is going to be in raw pixels, so we need to multiply it by density.
+    // Height is going to be the drawable intrinsic height * scale * density
+    drawable.setBounds(0, 0, (int)(spaceWidth * density), (int)(drawable.getIntrinsicHeight() * scale * density));
+
+    span = new ImageSpan(drawable, ImageSpan.ALIGN_BASELINE);
+    iconSpans.put(icon, span);
+    return span;
+  }
+
+  /**
+   * Get the span coloring a nick
+   *
+   * @param color
+   * @return
+   */
+  public synchronized ForegroundColorSpan getNickSpan(int color) {
+    ForegroundColorSpan span = nickSpans.get(color);
+    if (span == null) {
+      if (nickSpans.size() >= NICK_SPAN_CACHE_SIZE) {
+        nickSpans.clear();
+      }
+      span = new ForegroundColorSpan(color);
+      nickSpans.put(color, span);
+    }
+    return span;
+  }
+}
@@ -26,6 +26,7 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 
 import indrora.atomic.R;
+import indrora.atomic.db.MessageLogger;
 
 /**
  * A server as we know it
@@ -41,6 +42,7 @@ public class Server implements Comparable<Server> {
   private String charset;
   private boolean useSSL = false;
   private boolean autoconnect = false;
+  private int floodControl = FloodControl.DEFAULT;
 
   private Identity identity;
   private Authentication authentication;
@@ -241,6 +243,24 @@ public class Server implements Comparable<Server> {
     return useSSL;
   }
 
+  /**
+   * Set the flood control profile used when sending to this server
+   *
+   * @param floodControl See constants FloodControl.*
+   */
+  public void setFloodControl(int floodControl) {
+    this.floodControl = floodControl;
+  }
+
+  /**
+   * Get the flood control profile used when sending to this server
+   *
+   * @return See constants FloodControl.*
+   */
+  public int getFloodControl() {
+    return floodControl;
+  }
+
   /**
    * Set connection status of server
    *
@@ -339,7 +359,41 @@ public class Server implements Comparable<Server> {
    * @param conversation The conversation to add
    */
   public void addConversation(Conversation conversation) {
-    conversations.put(conversation.getName().toLowerCase(), conversation);
+    Conversation replaced = conversations.put(conversation.getName().toLowerCase(), conversation);
+
+    if (replaced == conversation) {
+      return;
+    } else if (replaced != null) {
+      replaced.setLog(null);
+    }
+
+    openLog(conversation);
+  }
+
+  private void openLog(Conversation conversation) {
+    // Server messages are not worth keeping
+    if (conversation.getType() != Conversation.TYPE_SERVER) {
+      conversation.setLog(MessageLogger.getInstance().open(id, conversation.getName()));
+    }
+  }
+
+  /**
+   * Close the on-disk logs of all conversations
+   */
+  public void closeLogs() {
+    for (Conversation conversation : conversations.values()) {
+      conversation.setLog(null);
+    }
+  }
+
+  /**
+   * Open the on-disk logs of all conversations, e.g. after the directory
+   * of the MessageLogger changed
+   */
+  public void openLogs() {
+    for (Conversation conversation : conversations.values()) {
+      openLog(conversation);
+    }
   }
 
   /**
@@ -348,13 +402,20 @@ public class Server implements Comparable<Server> {
    * @param name
    */
   public void removeConversation(String name) {
-    conversations.remove(name.toLowerCase());
+    Conversation conversation = conversations.remove(name.toLowerCase());
+
+    if (conversation != null) {
+      conversation.setLog(null);
+    }
   }
 
   /**
    * Remove all conversations
    */
   public void clearConversations() {
+    for (Conversation conversation : conversations.values()) {
+      conversation.setLog(null);
+    }
     conversations.clear();
 
     // reset defaults
@@ -45,8 +45,70 @@ public class Settings {
   private final Resources         resources;
   private int                     currentRelease;
 
-  private long lastSettingsUpdate = 0;
-  
+  /**
+   * The settings needed to render messages, read once
+   *
+   * A new Snapshot, with the next version number, is made whenever one of
+   * these settings changes or the color scheme is reloaded; renderings
+   * made with an older version are out of date. Changes to other
+   * preferences keep the snapshot, so renderings stay valid. Rendering
+   * code reads the fields of the current snapshot instead of going to the
+   * preferences for every message.
+   */
+  public static final class Snapshot {
+    public final int     version;
+    public final boolean showTimestamp;
+    public final boolean use24hFormat;
+    public final boolean includeSeconds;
+    public final boolean showIcons;
+    public final boolean showColors;
+    public final boolean showColorsNick;
+    public final boolean showMircColors;
+    public final boolean showGraphicalSmilies;
+    public final int     fontSize;
+    public final String  colorScheme;
+    public final boolean darkColors;
+
+    private Snapshot(Settings settings, int version) {
+      this.version = version;
+      showTimestamp = settings.showTimestamp();
+      use24hFormat = settings.use24hFormat();
+      includeSeconds = settings.includeSeconds();
+      showIcons = settings.showIcons();
+      showColors = settings.showColors();
+      showColorsNick = settings.showColorsNick();
+      showMircColors = settings.showMircColors();
+      showGraphicalSmilies = settings.showGraphicalSmilies();
+      fontSize = settings.getFontSize();
+      colorScheme = settings.getColorScheme();
+      darkColors = settings.getUseDarkColors();
+    }
+
+    /**
+     * Would messages render the same with the other snapshot?
+     */
+    private boolean rendersLike(Snapshot other) {
+      return showTimestamp == other.showTimestamp
+          && use24hFormat == other.use24hFormat
+          && includeSeconds == other.includeSeconds
+          && showIcons == other.showIcons
+          && showColors == other.showColors
+          && showColorsNick == other.showColorsNick
+          && showMircColors == other.showMircColors
+          && showGraphicalSmilies == other.showGraphicalSmilies
+          && fontSize == other.fontSize
+          && colorScheme.equals(other.colorScheme)
+          && darkColors == other.darkColors;
+    }
+  }
+
+  private static volatile Snapshot snapshot = null;
+  private static Settings snapshotSettings = null;
+
+  // SharedPreferences only keeps weak references to its listeners, so
+  // this one is held here.
+  private static OnSharedPreferenceChangeListener snapshotUpdater = null;
+
   /**
    * Create a new Settings instance
    * 
@@ -61,21 +123,52 @@ public class Settings {
     } catch (Exception ex) {
       this.currentRelease = 99;
     }
-    
-    this.preferences.registerOnSharedPreferenceChangeListener(new OnSharedPreferenceChangeListener() {
-      
+
+    initSnapshot(this);
+  }
+
+  private static synchronized void initSnapshot(final Settings settings) {
+    if (snapshotUpdater != null) {
+      return;
+    }
+
+    snapshotSettings = settings;
+    snapshot = new Snapshot(settings, 0);
+    snapshotUpdater = new OnSharedPreferenceChangeListener() {
       @Override
       public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
           String key) {
-        lastSettingsUpdate = System.currentTimeMillis();
-        
+        updateSnapshot(false);
       }
-    });
-    
+    };
+    settings.preferences.registerOnSharedPreferenceChangeListener(snapshotUpdater);
   }
 
-  public boolean shouldRerender(Long messageRenderTime) {
-    return lastSettingsUpdate > messageRenderTime;
+  /**
+   * Make a new snapshot if the settings for rendering changed
+   *
+   * @param force Make a new one even if they did not, e.g. because the
+   *              colors of the scheme were reloaded
+   */
+  static synchronized void updateSnapshot(boolean force) {
+    if (snapshotSettings == null) {
+      return;
+    }
+
+    Snapshot updated = new Snapshot(snapshotSettings, snapshot.version + 1);
+    if (force || !updated.rendersLike(snapshot)) {
+      snapshot = updated;
+    }
+  }
+
+  /**
+   * Get the current settings for rendering messages
+   *
+   * @return The snapshot; the same object until a setting for rendering
+   *         changes
+   */
+  public Snapshot getSnapshot() {
+    return snapshot;
   }
   
   /**
@@ -370,6 +463,30 @@ public class Settings {
         .getString(R.string.default_reconnect_loss)));
   }
 
+  /**
+   * Should all server connections share one selector thread?
+   * 
+   * @return True if the shared selector engine should be used
+   */
+  public boolean useSharedConnectionThread() {
+    return preferences.getBoolean(resources
+        .getString(R.string.key_shared_connection_thread), Boolean
+        .parseBoolean(resources
+            .getString(R.string.default_shared_connection_thread)));
+  }
+
+  /**
+   * Should conversations be logged to disk and restored from there?
+   * 
+   * @return True if the history should be kept on disk
+   */
+  public boolean usePersistentScrollback() {
+    return preferences.getBoolean(resources
+        .getString(R.string.key_persistent_scrollback), Boolean
+        .parseBoolean(resources
+            .getString(R.string.default_persistent_scrollback)));
+  }
+
   /**
    * Get the conversation history size.
    * 
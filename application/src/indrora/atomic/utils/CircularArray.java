@@ -0,0 +1,160 @@
+/*
+Yaaic - Yet Another Android IRC Client
+
+Copyright 2009-2013 Sebastian Kaspari
+
+This file is part of Yaaic.
+
+Yaaic is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Yaaic is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package indrora.atomic.utils;
+
+import java.util.List;
+
+/**
+ * A list on a circular array, for adapters that add items at the end,
+ * drop them from the front and now and then put older ones in front
+ *
+ * Getting an item takes constant time, as does adding or removing one at
+ * either end; nothing is shifted. The array grows as needed and is never
+ * shrunk. Not thread-safe.
+ */
+public class CircularArray<E> {
+  private Object[] items;
+  // Index in items of the first element
+  private int head = 0;
+  private int size = 0;
+
+  /**
+   * Create a new, empty CircularArray
+   *
+   * @param capacity The number of items to make room for
+   */
+  public CircularArray(int capacity) {
+    items = new Object[Math.max(capacity, 8)];
+  }
+
+  /**
+   * Get the number of items
+   *
+   * @return
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get whether there are no items
+   *
+   * @return
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Get the item at the given position
+   *
+   * @param position 0 for the first item
+   * @return
+   */
+  @SuppressWarnings("unchecked")
+  public E get(int position) {
+    if (position < 0 || position >= size) {
+      throw new IndexOutOfBoundsException("position " + position + ", size " + size);
+    }
+    return (E) items[index(position)];
+  }
+
+  /**
+   * Add an item at the end
+   *
+   * @param item
+   */
+  public void addLast(E item) {
+    ensureCapacity(size + 1);
+    items[index(size)] = item;
+    size++;
+  }
+
+  /**
+   * Add items at the end, in order
+   *
+   * @param list
+   */
+  public void addLast(List<? extends E> list) {
+    ensureCapacity(size + list.size());
+    for (E item : list) {
+      items[index(size)] = item;
+      size++;
+    }
+  }
+
+  /**
+   * Put items in front of the first one, keeping their order
+   *
+   * @param list
+   */
+  public void addFirst(List<? extends E> list) {
+    int count = list.size();
+    ensureCapacity(size + count);
+    head = (head - count + items.length) % items.length;
+    size += count;
+    for (int i = 0; i < count; i++) {
+      items[index(i)] = list.get(i);
+    }
+  }
+
+  /**
+   * Remove items from the front
+   *
+   * @param count The number of items to remove, at most size()
+   */
+  public void removeFirst(int count) {
+    if (count < 0 || count > size) {
+      throw new IndexOutOfBoundsException("count " + count + ", size " + size);
+    }
+    for (int i = 0; i < count; i++) {
+      items[index(i)] = null;
+    }
+    head = index(count);
+    size -= count;
+  }
+
+  /**
+   * Remove all items
+   */
+  public void clear() {
+    removeFirst(size);
+    head = 0;
+  }
+
+  private int index(int position) {
+    int index = head + position;
+    return index < items.length ? index : index - items.length;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= items.length) {
+      return;
+    }
+
+    Object[] grown = new Object[Math.max(capacity, 2 * items.length)];
+    int tail = Math.min(size, items.length - head);
+    System.arraycopy(items, head, grown, 0, tail);
+    System.arraycopy(items, 0, grown, tail, size - tail);
+    items = grown;
+    head = 0;
+  }
+}
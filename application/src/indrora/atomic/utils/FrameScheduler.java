@@ -0,0 +1,156 @@
+/*
+Yaaic - Yet Another Android IRC Client
+
+Copyright 2009-2013 Sebastian Kaspari
+
+This file is part of Yaaic.
+
+Yaaic is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Yaaic is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package indrora.atomic.utils;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+/**
+ * Runs a piece of UI work at most once per display frame.
+ *
+ * Any number of schedule() calls between two frames result in a single
+ * call of the Task. On Jelly Bean and later the Task runs from a
+ * Choreographer frame callback, i.e. right before the frame is drawn;
+ * on older devices a Handler keeps the calls at least one frame period
+ * apart. The Task gets a deadline and is expected to stop working when
+ * it passes and return true, so the rest is done in the next frame.
+ *
+ * All methods must be called on the main thread.
+ */
+public class FrameScheduler {
+  /**
+   * The frame period assumed where there is no Choreographer, in ms.
+   */
+  public static final long FRAME_PERIOD = 16;
+
+  /**
+   * The work done on the main thread per frame, as a task.
+   */
+  public interface Task {
+    /**
+     * Do the work that is due.
+     *
+     * @param deadline SystemClock.uptimeMillis() by which to stop
+     * @return true if there is work left for the next frame
+     */
+    public boolean onFrame(long deadline);
+  }
+
+  private final Task task;
+  private final long budget;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final Object frameCallback;
+  private boolean scheduled = false;
+  private long lastFrame = 0;
+
+  private final Runnable frameRunnable = new Runnable() {
+    @Override
+    public void run() {
+      doFrame();
+    }
+  };
+
+  /**
+   * Create a new FrameScheduler
+   *
+   * @param task The work to run once per frame
+   * @param budget The main thread time the task may use per frame, in ms
+   */
+  public FrameScheduler(Task task, long budget) {
+    this.task = task;
+    this.budget = budget;
+
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+      frameCallback = createFrameCallback();
+    } else {
+      frameCallback = null;
+    }
+  }
+
+  /**
+   * Make sure the task runs in the next frame
+   */
+  public void schedule() {
+    if (scheduled) {
+      return;
+    }
+    scheduled = true;
+
+    if (frameCallback != null) {
+      postFrameCallback();
+    } else {
+      long delay = lastFrame + FRAME_PERIOD - SystemClock.uptimeMillis();
+      handler.postDelayed(frameRunnable, Math.max(0, delay));
+    }
+  }
+
+  /**
+   * Drop a scheduled run of the task, e.g. when the activity pauses
+   */
+  public void cancel() {
+    if (!scheduled) {
+      return;
+    }
+    scheduled = false;
+
+    if (frameCallback != null) {
+      removeFrameCallback();
+    } else {
+      handler.removeCallbacks(frameRunnable);
+    }
+  }
+
+  private void doFrame() {
+    scheduled = false;
+
+    long start = SystemClock.uptimeMillis();
+    lastFrame = start;
+    boolean more = task.onFrame(start + budget);
+
+    if (more) {
+      schedule();
+    }
+  }
+
+  @TargetApi(16)
+  private Object createFrameCallback() {
+    return new Choreographer.FrameCallback() {
+      @Override
+      public void doFrame(long frameTimeNanos) {
+        FrameScheduler.this.doFrame();
+      }
+    };
+  }
+
+  @TargetApi(16)
+  private void postFrameCallback() {
+    Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) frameCallback);
+  }
+
+  @TargetApi(16)
+  private void removeFrameCallback() {
+    Choreographer.getInstance().removeFrameCallback((Choreographer.FrameCallback) frameCallback);
+  }
+}
@@ -22,38 +22,26 @@ package indrora.atomic.utils;
 
 import indrora.atomic.App;
 import indrora.atomic.model.ColorScheme;
-
-import java.util.ArrayList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import android.graphics.Typeface;
 import android.text.Spannable;
 import android.text.SpannableString;
-import android.text.SpannableStringBuilder;
 import android.text.style.BackgroundColorSpan;
-import android.text.style.CharacterStyle;
 import android.text.style.ForegroundColorSpan;
+import android.text.style.StrikethroughSpan;
 import android.text.style.StyleSpan;
+import android.text.style.TypefaceSpan;
 import android.text.style.UnderlineSpan;
 
 /**
  * Class for parsing and handling mIRC colors in text messages.
  *
+ * The codes are parsed by MircFormatter in one pass; this class turns the
+ * formatted runs it finds into spans.
+ *
  * @author Liato
  */
 public abstract class MircColors {
 
-  private static final Pattern boldPattern = Pattern.compile("\\x02([^\\x02\\x0F]*)(\\x02|(\\x0F))?");
-  private static final Pattern underlinePattern = Pattern.compile("\\x1F([^\\x1F\\x0F]*)(\\x1F|(\\x0F))?");
-  private static final Pattern italicPattern = Pattern.compile("\\x1D([^\\x1D\\x0F]*)(\\x1D|(\\x0F))?");
-  private static final Pattern inversePattern = Pattern.compile("\\x16([^\\x16\\x0F]*)(\\x16|(\\x0F))?");
-  private static final Pattern colorPattern = Pattern.compile("\\x03(\\d{1,2})(?:,(\\d{1,2}))?([^\\x03\\x0F]*)(\\x03|\\x0F)?");
-  private static final Pattern cleanupPattern = Pattern.compile("(?:\\x02|\\x1F|\\x1D|\\x0F|\\x16|\\x03(?:(?:\\d{1,2})(?:,\\d{1,2})?)?)");
-
-  private static ColorScheme _cScheme;
-
-
   /**
    * Converts a string with mIRC style and color codes to a SpannableString with
    * all the style and color codes applied.
@@ -61,98 +49,89 @@ public abstract class MircColors {
    * @param text  A string with mIRC color codes.
    * @return      A SpannableString with all the styles applied.
    */
-  public static SpannableString toSpannable(SpannableString text) {
-    _cScheme = App.getColorScheme();
-
-    SpannableStringBuilder ssb = new SpannableStringBuilder(text);
-    replaceControlCodes(boldPattern.matcher(ssb), ssb, new StyleSpan(Typeface.BOLD));
-    replaceControlCodes(underlinePattern.matcher(ssb), ssb, new UnderlineSpan());
-    replaceControlCodes(italicPattern.matcher(ssb), ssb, new StyleSpan(Typeface.ITALIC));
-
-    /*
-     * Inverse assumes that the background is black and the foreground is white.
-     * We apply the background color first and then apply the foreground color
-     * to all the parts where BackgroundColorSpans are found.
-     */
-    replaceControlCodes(inversePattern.matcher(ssb), ssb, new BackgroundColorSpan(_cScheme.getBackground()));
-    BackgroundColorSpan[] inverseSpans = ssb.getSpans(0, ssb.length(), BackgroundColorSpan.class);
-    for (int i = 0; i < inverseSpans.length; i++) {
-      ssb.setSpan(new ForegroundColorSpan( _cScheme.getForeground() /*colors[1] | 0xFF000000*/), ssb.getSpanStart(inverseSpans[i]),ssb.getSpanEnd(inverseSpans[i]), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-    }
-
-    Matcher m = colorPattern.matcher(ssb);
-
-    while (m.find()) {
-      int start = m.start();
-      int end = m.end();
-
-      Integer color = Integer.parseInt(m.group(1));
-      int codelength = m.group(1).length()+1;
-
-      if (color <= 15 && color >= 0) {
-        ssb.setSpan(new ForegroundColorSpan(_cScheme.getMircColor(color)), start, end, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-      }
-
-      if (m.group(2) != null) {
-        color = Integer.parseInt(m.group(2));
-        if (color <= 15 && color >= 0) {
-          ssb.setSpan(new BackgroundColorSpan(_cScheme.getMircColor(color)), start, end, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-        }
-        codelength = codelength + m.group(2).length() + 1;
-      }
-
-      ssb.delete(start, start+codelength);
-      // Reset the matcher with the modified text so that the ending color code character can be matched again.
-      m.reset(ssb);
-    }
-    // Remove left over codes
-    return new SpannableString(removeStyleAndColors(ssb));
+  public static SpannableString toSpannable(String text) {
+    return toSpannable(text, 0);
   }
 
   /**
    * Converts a string with mIRC style and color codes to a SpannableString with
    * all the style and color codes applied.
    *
-   * @param text  A string with mIRC color codes.
-   * @return      A SpannableString with all the styles applied.
+   * @param text        A string with mIRC color codes.
+   * @param foreground  The color of text without a color code, or 0 for the
+   *                    default text color.
+   * @return            A SpannableString with all the styles applied.
    */
-  public static SpannableString toSpannable(String text) {
-    return toSpannable(new SpannableString(text));
-  }
+  public static SpannableString toSpannable(String text, int foreground) {
+    ColorScheme scheme = App.getColorScheme();
+    MircFormatter formatter = MircFormatter.parse(text);
+    SpannableString ss = new SpannableString(formatter.getText());
+
+    // Set first, so that the colors of the runs go over it
+    if (foreground != 0 && ss.length() > 0) {
+      ss.setSpan(new ForegroundColorSpan(foreground), 0, ss.length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+    }
 
-  
-  /**
-   * Replace the control codes
-   *
-   * @param m
-   * @param ssb
-   * @param style
-   */
-  private static void replaceControlCodes(Matcher m, SpannableStringBuilder ssb, CharacterStyle style) {
-    ArrayList<Integer> toremove = new ArrayList<Integer>();
-
-    while (m.find()) {
-      toremove.add(0, m.start());
-      // Remove the ending control character unless it's \x0F
-      if (m.group(2) != null && m.group(2) != m.group(3)) {
-        toremove.add(0, m.end()-1);
+    int runs = formatter.getRunCount();
+    for (int run = 0; run < runs; run++) {
+      int start = formatter.getStart(run);
+      int end = formatter.getEnd(run);
+      int style = formatter.getStyle(run);
+      int fg = toColor(formatter.getForeground(run), scheme);
+      int bg = toColor(formatter.getBackground(run), scheme);
+
+      if ((style & MircFormatter.REVERSE) != 0) {
+        int reversed = (bg != 0) ? bg : scheme.getBackground();
+        bg = (fg != 0) ? fg : (foreground != 0) ? foreground : scheme.getForeground();
+        fg = reversed;
       }
-      ssb.setSpan(style, m.start(), m.end(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-    }
 
-    for (Integer i : toremove) {
-      ssb.delete(i, i+1);
+      if ((style & (MircFormatter.BOLD | MircFormatter.ITALIC)) == (MircFormatter.BOLD | MircFormatter.ITALIC)) {
+        setSpan(ss, new StyleSpan(Typeface.BOLD_ITALIC), start, end);
+      } else if ((style & MircFormatter.BOLD) != 0) {
+        setSpan(ss, new StyleSpan(Typeface.BOLD), start, end);
+      } else if ((style & MircFormatter.ITALIC) != 0) {
+        setSpan(ss, new StyleSpan(Typeface.ITALIC), start, end);
+      }
+      if ((style & MircFormatter.UNDERLINE) != 0) {
+        setSpan(ss, new UnderlineSpan(), start, end);
+      }
+      if ((style & MircFormatter.STRIKETHROUGH) != 0) {
+        setSpan(ss, new StrikethroughSpan(), start, end);
+      }
+      if ((style & MircFormatter.MONOSPACE) != 0) {
+        setSpan(ss, new TypefaceSpan("monospace"), start, end);
+      }
+      if (fg != 0) {
+        setSpan(ss, new ForegroundColorSpan(fg), start, end);
+      }
+      if (bg != 0) {
+        setSpan(ss, new BackgroundColorSpan(bg), start, end);
+      }
     }
+
+    return ss;
+  }
+
+  private static void setSpan(SpannableString ss, Object span, int start, int end) {
+    ss.setSpan(span, start, end, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
   }
 
   /**
-   * Removes mIRC color and style codes and returns the message without them.
+   * Get the color to draw an mIRC color with
    *
-   * @param text  A message with mirc colors and styles.
-   * @return      The same message with all the colors and styles removed.
+   * @return The color, or 0 for none
    */
-  public static String removeStyleAndColors(String text) {
-    return cleanupPattern.matcher(text).replaceAll("");
+  private static int toColor(int color, ColorScheme scheme) {
+    if (color == MircFormatter.NO_COLOR) {
+      return 0;
+    } else if ((color & MircFormatter.RGB) != 0) {
+      return 0xFF000000 | color;
+    } else if (color <= 15) {
+      return scheme.getMircColor(color);
+    }
+    // The extended colors 16 to 98 are not in the color schemes
+    return 0;
   }
 
   /**
@@ -161,15 +140,7 @@ public abstract class MircColors {
    * @param text  A message with mirc colors and styles.
    * @return      The same message with all the colors and styles removed.
    */
-  public static SpannableStringBuilder removeStyleAndColors(SpannableStringBuilder text) {
-    ArrayList<int[]> toremove = new ArrayList<int[]>();
-    Matcher m = cleanupPattern.matcher(text);
-    while (m.find()) {
-      toremove.add(0, new int[] {m.start(), m.end()});
-    }
-    for (int[] i : toremove) {
-      text.delete(i[0], i[1]);
-    }
-    return text;
+  public static String removeStyleAndColors(String text) {
+    return MircFormatter.strip(text);
   }
 }
@@ -0,0 +1,348 @@
+/*
+Yaaic - Yet Another Android IRC Client
+
+Copyright 2009-2013 Sebastian Kaspari
+
+This file is part of Yaaic.
+
+Yaaic is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Yaaic is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package indrora.atomic.utils;
+
+/**
+ * Single-pass parser for mIRC formatting codes
+ *
+ * Scans a message once, dropping the control codes and recording the
+ * formatting of the text between them as runs: a start, an end, a set
+ * of style flags and a foreground and background color. Runs of plain
+ * text are left out, and neighbouring runs are never formatted the same.
+ *
+ * Understood are bold (0x02), italic (0x1D), underline (0x1F),
+ * strikethrough (0x1E), monospace (0x11) and reverse (0x16), which each
+ * toggle their style; color (0x03) with up to two digits for the
+ * foreground and optionally a comma and up to two digits for the
+ * background; hex color (0x04) with RRGGBB and optionally ,RRGGBB; and
+ * reset (0x0F). A color code without a color resets both colors, and
+ * color 99 is the default color.
+ *
+ * Does not depend on Android, so that MircColors can turn the runs into
+ * spans and the benchmarks can measure it on a plain JVM.
+ */
+public final class MircFormatter {
+  public static final int BOLD          = 1;
+  public static final int ITALIC        = 2;
+  public static final int UNDERLINE     = 4;
+  public static final int STRIKETHROUGH = 8;
+  public static final int MONOSPACE     = 16;
+  public static final int REVERSE       = 32;
+
+  /**
+   * Color of text without a color code
+   */
+  public static final int NO_COLOR = -1;
+
+  /**
+   * Flag of a color given as RRGGBB; other colors are mIRC color numbers
+   */
+  public static final int RGB = 0x01000000;
+
+  private static final char CODE_BOLD          = 0x02;
+  private static final char CODE_COLOR         = 0x03;
+  private static final char CODE_HEX_COLOR     = 0x04;
+  private static final char CODE_RESET         = 0x0F;
+  private static final char CODE_MONOSPACE     = 0x11;
+  private static final char CODE_REVERSE       = 0x16;
+  private static final char CODE_ITALIC        = 0x1D;
+  private static final char CODE_STRIKETHROUGH = 0x1E;
+  private static final char CODE_UNDERLINE     = 0x1F;
+
+  // A run takes this many ints: start, end, style, foreground, background
+  private static final int RUN = 5;
+
+  private static final int[] NO_RUNS = new int[0];
+
+  private String text;
+  private int[] runs = NO_RUNS;
+  private int runCount = 0;
+
+  private MircFormatter() {
+  }
+
+  /**
+   * Parse the formatting codes in a message
+   *
+   * @param message
+   * @return The text without codes and the runs of formatted text
+   */
+  public static MircFormatter parse(String message) {
+    MircFormatter result = new MircFormatter();
+    int length = message.length();
+    int i = indexOfCode(message, 0);
+    if (i == length) {
+      result.text = message;
+      return result;
+    }
+
+    StringBuilder text = new StringBuilder(length);
+    text.append(message, 0, i);
+
+    int style = 0;
+    int foreground = NO_COLOR;
+    int background = NO_COLOR;
+    // Start in text of the text formatted as above
+    int start = i;
+
+    while (i < length) {
+      char c = message.charAt(i);
+
+      if (!isCode(c)) {
+        int next = indexOfCode(message, i);
+        text.append(message, i, next);
+        i = next;
+        continue;
+      }
+
+      // The format changes: close the run of the text so far
+      int end = text.length();
+      result.addRun(start, end, style, foreground, background);
+      start = end;
+      i++;
+
+      switch (c) {
+      case CODE_BOLD:
+        style ^= BOLD;
+        break;
+      case CODE_ITALIC:
+        style ^= ITALIC;
+        break;
+      case CODE_UNDERLINE:
+        style ^= UNDERLINE;
+        break;
+      case CODE_STRIKETHROUGH:
+        style ^= STRIKETHROUGH;
+        break;
+      case CODE_MONOSPACE:
+        style ^= MONOSPACE;
+        break;
+      case CODE_REVERSE:
+        style ^= REVERSE;
+        break;
+      case CODE_RESET:
+        style = 0;
+        foreground = NO_COLOR;
+        background = NO_COLOR;
+        break;
+      case CODE_COLOR:
+        int digits = countDigits(message, i, 2);
+        if (digits == 0) {
+          foreground = NO_COLOR;
+          background = NO_COLOR;
+          break;
+        }
+        foreground = toColor(message, i, digits);
+        i += digits;
+
+        if (i < length && message.charAt(i) == ',') {
+          digits = countDigits(message, i + 1, 2);
+          if (digits > 0) {
+            background = toColor(message, i + 1, digits);
+            i += 1 + digits;
+          }
+        }
+        break;
+      case CODE_HEX_COLOR:
+        if (!isHexColor(message, i)) {
+          foreground = NO_COLOR;
+          background = NO_COLOR;
+          break;
+        }
+        foreground = RGB | Integer.parseInt(message.substring(i, i + 6), 16);
+        i += 6;
+
+        if (i < length && message.charAt(i) == ',' && isHexColor(message, i + 1)) {
+          background = RGB | Integer.parseInt(message.substring(i + 1, i + 7), 16);
+          i += 7;
+        }
+        break;
+      }
+    }
+
+    result.addRun(start, text.length(), style, foreground, background);
+    result.text = text.toString();
+    return result;
+  }
+
+  private void addRun(int start, int end, int style, int foreground, int background) {
+    if (end == start || (style == 0 && foreground == NO_COLOR && background == NO_COLOR)) {
+      // Nothing to format
+      return;
+    }
+
+    int last = (runCount - 1) * RUN;
+    if (runCount > 0 && runs[last + 1] == start && runs[last + 2] == style
+        && runs[last + 3] == foreground && runs[last + 4] == background) {
+      // Formatted the same as the run before; the codes in between
+      // changed nothing
+      runs[last + 1] = end;
+      return;
+    }
+
+    if ((runCount + 1) * RUN > runs.length) {
+      int[] grown = new int[Math.max(2 * runs.length, 4 * RUN)];
+      System.arraycopy(runs, 0, grown, 0, runCount * RUN);
+      runs = grown;
+    }
+    int run = runCount * RUN;
+    runs[run] = start;
+    runs[run + 1] = end;
+    runs[run + 2] = style;
+    runs[run + 3] = foreground;
+    runs[run + 4] = background;
+    runCount++;
+  }
+
+  /**
+   * Remove all formatting codes from a message
+   *
+   * @param message
+   * @return The message without codes; the same String if it had none
+   */
+  public static String strip(String message) {
+    return parse(message).getText();
+  }
+
+  /**
+   * Get the text without formatting codes
+   */
+  public String getText() {
+    return text;
+  }
+
+  /**
+   * Get the number of runs of formatted text
+   */
+  public int getRunCount() {
+    return runCount;
+  }
+
+  /**
+   * Get the start in getText() of a run
+   *
+   * @param run 0 for the first run
+   */
+  public int getStart(int run) {
+    return runs[run * RUN];
+  }
+
+  /**
+   * Get the end in getText(), exclusive, of a run
+   *
+   * @param run
+   */
+  public int getEnd(int run) {
+    return runs[run * RUN + 1];
+  }
+
+  /**
+   * Get the styles of a run
+   *
+   * @param run
+   * @return BOLD, ITALIC, UNDERLINE, STRIKETHROUGH, MONOSPACE and REVERSE
+   *         or'ed together
+   */
+  public int getStyle(int run) {
+    return runs[run * RUN + 2];
+  }
+
+  /**
+   * Get the foreground color of a run
+   *
+   * @param run
+   * @return An mIRC color number, RGB | RRGGBB, or NO_COLOR
+   */
+  public int getForeground(int run) {
+    return runs[run * RUN + 3];
+  }
+
+  /**
+   * Get the background color of a run
+   *
+   * @param run
+   * @return An mIRC color number, RGB | RRGGBB, or NO_COLOR
+   */
+  public int getBackground(int run) {
+    return runs[run * RUN + 4];
+  }
+
+  private static boolean isCode(char c) {
+    switch (c) {
+    case CODE_BOLD:
+    case CODE_COLOR:
+    case CODE_HEX_COLOR:
+    case CODE_RESET:
+    case CODE_MONOSPACE:
+    case CODE_REVERSE:
+    case CODE_ITALIC:
+    case CODE_STRIKETHROUGH:
+    case CODE_UNDERLINE:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  private static int indexOfCode(String message, int from) {
+    int length = message.length();
+    for (int i = from; i < length; i++) {
+      char c = message.charAt(i);
+      if (c < 0x20 && isCode(c)) {
+        return i;
+      }
+    }
+    return length;
+  }
+
+  private static int countDigits(String message, int from, int max) {
+    int count = 0;
+    while (count < max && from + count < message.length()) {
+      char c = message.charAt(from + count);
+      if (c < '0' || c > '9') {
+        break;
+      }
+      count++;
+    }
+    return count;
+  }
+
+  private static int toColor(String message, int from, int digits) {
+    int color = message.charAt(from) - '0';
+    if (digits == 2) {
+      color = 10 * color + message.charAt(from + 1) - '0';
+    }
+    return color == 99 ? NO_COLOR : color;
+  }
+
+  private static boolean isHexColor(String message, int from) {
+    if (from + 6 > message.length()) {
+      return false;
+    }
+    for (int i = from; i < from + 6; i++) {
+      char c = message.charAt(i);
+      if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'))) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,212 @@
+/*
+Yaaic - Yet Another Android IRC Client
+
+Copyright 2009-2013 Sebastian Kaspari
+
+This file is part of Yaaic.
+
+Yaaic is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Yaaic is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package indrora.atomic.utils;
+
+import java.util.Map;
+
+/**
+ * Finds text smileys in a message with a trie of all smileys, built once
+ *
+ * The message is scanned once; at each position the trie gives the
+ * longest smiley starting there, so the cost is linear in the length of
+ * the message, whatever the number of smileys. Matches do not overlap.
+ *
+ * A smiley is only taken where it stands on its own: a smiley starting
+ * or ending with a letter or digit must not be next to another letter or
+ * digit on that side (so "XPath" and "10:30" are left alone), and words
+ * that look like URLs ("http://...", "www...") are skipped entirely.
+ *
+ * Does not depend on Android; immutable and safe to share between
+ * threads.
+ */
+public final class SmileyMatcher {
+  private static final int[] NO_MATCHES = new int[0];
+
+  private static final class Node {
+    // Sorted by key
+    char[] keys = new char[0];
+    Node[] children = new Node[0];
+    // Value of the smiley ending here, or -1
+    int value = -1;
+
+    Node child(char key) {
+      // Nodes have a handful of children at most
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] == key) {
+          return children[i];
+        }
+      }
+      return null;
+    }
+
+    Node addChild(char key) {
+      Node child = child(key);
+      if (child == null) {
+        child = new Node();
+        char[] newKeys = new char[keys.length + 1];
+        Node[] newChildren = new Node[keys.length + 1];
+        System.arraycopy(keys, 0, newKeys, 0, keys.length);
+        System.arraycopy(children, 0, newChildren, 0, keys.length);
+        newKeys[keys.length] = key;
+        newChildren[keys.length] = child;
+        keys = newKeys;
+        children = newChildren;
+      }
+      return child;
+    }
+  }
+
+  private final Node root = new Node();
+  // Children of the root by character, for the characters below 128;
+  // nearly every character of a message fails here
+  private final Node[] first = new Node[128];
+
+  /**
+   * Build a matcher
+   *
+   * @param smileys The smileys and the values to report them with
+   */
+  public SmileyMatcher(Map<String, Integer> smileys) {
+    for (Map.Entry<String, Integer> entry : smileys.entrySet()) {
+      String smiley = entry.getKey();
+      if (smiley.length() == 0) {
+        continue;
+      }
+
+      Node node = root;
+      for (int i = 0; i < smiley.length(); i++) {
+        node = node.addChild(smiley.charAt(i));
+      }
+      node.value = entry.getValue();
+    }
+
+    for (int i = 0; i < root.keys.length; i++) {
+      if (root.keys[i] < first.length) {
+        first[root.keys[i]] = root.children[i];
+      }
+    }
+  }
+
+  /**
+   * Find all smileys in a text
+   *
+   * @param text
+   * @return The matches as triples of start, end (exclusive) and value,
+   *         in order; an empty array if there are none
+   */
+  public int[] findAll(CharSequence text) {
+    int[] matches = NO_MATCHES;
+    int count = 0;
+
+    int length = text.length();
+    int i = 0;
+    while (i < length) {
+      char c = text.charAt(i);
+
+      if (i == 0 || Character.isWhitespace(text.charAt(i - 1))) {
+        // Start of a word
+        int end = i;
+        while (end < length && !Character.isWhitespace(text.charAt(end))) {
+          end++;
+        }
+        if (isUrl(text, i, end)) {
+          i = end;
+          continue;
+        }
+      }
+
+      Node node = (c < first.length) ? first[c] : root.child(c);
+      int matchEnd = -1;
+      int matchValue = -1;
+      int j = i + 1;
+      while (node != null) {
+        if (node.value >= 0 && isBoundary(text, i, j)) {
+          matchEnd = j;
+          matchValue = node.value;
+        }
+        node = (j < length) ? node.child(text.charAt(j)) : null;
+        j++;
+      }
+
+      if (matchEnd < 0) {
+        i++;
+        continue;
+      }
+
+      if (3 * (count + 1) > matches.length) {
+        int[] grown = new int[Math.max(2 * matches.length, 3 * 4)];
+        System.arraycopy(matches, 0, grown, 0, 3 * count);
+        matches = grown;
+      }
+      matches[3 * count] = i;
+      matches[3 * count + 1] = matchEnd;
+      matches[3 * count + 2] = matchValue;
+      count++;
+      i = matchEnd;
+    }
+
+    if (3 * count < matches.length) {
+      int[] trimmed = new int[3 * count];
+      System.arraycopy(matches, 0, trimmed, 0, 3 * count);
+      matches = trimmed;
+    }
+    return matches;
+  }
+
+  /**
+   * Does the smiley from start to end stand on its own?
+   */
+  private static boolean isBoundary(CharSequence text, int start, int end) {
+    if (start > 0 && Character.isLetterOrDigit(text.charAt(start))
+        && Character.isLetterOrDigit(text.charAt(start - 1))) {
+      return false;
+    }
+    if (end < text.length() && Character.isLetterOrDigit(text.charAt(end - 1))
+        && Character.isLetterOrDigit(text.charAt(end))) {
+      return false;
+    }
+    return true;
+  }
+
+  private static boolean isUrl(CharSequence text, int start, int end) {
+    if (end - start >= 4 && regionMatches(text, start, "www.")) {
+      return true;
+    }
+    for (int i = start; i + 3 <= end; i++) {
+      if (text.charAt(i) == ':' && regionMatches(text, i, "://")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean regionMatches(CharSequence text, int start, String prefix) {
+    if (start + prefix.length() > text.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (Character.toLowerCase(text.charAt(start + i)) != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -21,12 +21,13 @@ along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
 package indrora.atomic.utils;
 
 import java.util.HashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import indrora.atomic.R;
 import indrora.atomic.model.Settings;
 import android.content.Context;
+import android.content.res.Resources;
 import android.graphics.drawable.Drawable;
 import android.text.Spannable;
 import android.text.SpannableString;
@@ -36,11 +37,30 @@ import android.util.Log;
 /**
  * Class for handling graphical smilies in text messages.
  *
+ * Smilies are found with a SmileyMatcher built once. The scaled drawables
+ * for the DRAWABLE_CACHE_SIZE most recently used combinations of smiley,
+ * font size and screen density are kept, and shared by all ImageSpans
+ * showing them.
+ *
  * @author Liato
  */
 public abstract class Smilies {
+  private static final int DRAWABLE_CACHE_SIZE = 64;
+
   private static final HashMap<String, Integer> mappings = new HashMap<String, Integer>();
+  private static final SmileyMatcher matcher;
   private static indrora.atomic.model.Settings _settings;
+
+  // Scaled drawables by resource id, font size and density; guarded by
+  // itself
+  private static final LinkedHashMap<String, Drawable> drawables = new LinkedHashMap<String, Drawable>(
+    DRAWABLE_CACHE_SIZE, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Drawable> eldest) {
+      return size() > DRAWABLE_CACHE_SIZE;
+    }
+  };
+
   static {
     // Putting these here saves time in smiley-heavy conversations.
     // It also preserves some amount of memory, as these live on the heap, not the stack.
@@ -88,7 +108,7 @@ public abstract class Smilies {
     mappings.put("o3o", R.drawable.emoji_catface_kiss);
     mappings.put(":'3", R.drawable.emoji_catface_cry);
 
-
+    matcher = new SmileyMatcher(mappings);
   }
 
   /**
@@ -98,37 +118,51 @@ public abstract class Smilies {
    * @return      A SpannableString with graphical smilies.
    */
   public static SpannableString toSpannable(SpannableString text, Context context) {
-    if(_settings == null) _settings = new Settings(context.getApplicationContext());
-    StringBuilder regex = new StringBuilder("(");
-    String[] smilies = mappings.keySet().toArray(new String[mappings.size()]);
-
-    for (int i = 0; i < smilies.length; i++) {
-      regex.append(Pattern.quote(smilies[i]));
-      regex.append("|");
+    int[] matches = matcher.findAll(text);
+    if (matches.length == 0) {
+      return text;
     }
 
-    regex.deleteCharAt(regex.length()-1);
-    regex.append(")");
-    Pattern smiliematcher = Pattern.compile(regex.toString());
-    Matcher m = smiliematcher.matcher(text);
-
-    while (m.find()) {
-      //Log.d("Smilies", "SID: "+mappings.get(m.group(1)).intValue());
-      //Log.d("Smilies", "OID: "+R.drawable.emoji_smile);
-      Drawable smilie = context.getResources().getDrawable(mappings.get(m.group(1)).intValue());
-
-      // We should scale the image
-      int height = _settings.getFontSize();
-      float density = context.getResources().getDisplayMetrics().density;
-      float scale = height / (float)(smilie.getMinimumHeight());
-      smilie.setBounds(0, 0, (int)(smilie.getMinimumWidth() * scale * density), (int)(height * density));
+    if(_settings == null) _settings = new Settings(context.getApplicationContext());
+    Resources resources = context.getResources();
+    int height = _settings.getSnapshot().fontSize;
+    float density = resources.getDisplayMetrics().density;
+
+    for (int i = 0; i < matches.length; i += 3) {
+      Drawable smilie = getDrawable(resources, matches[i + 2], height, density);
       ImageSpan span = new ImageSpan(smilie, ImageSpan.ALIGN_BASELINE);
-      text.setSpan(span, m.start(), m.end(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+      text.setSpan(span, matches[i], matches[i + 1], Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
     }
 
     return text;
   }
 
+  /**
+   * Get a smilie scaled to the font size
+   *
+   * @param resources
+   * @param id The resource id of the smilie
+   * @param height The font size
+   * @param density The screen density
+   * @return The drawable, shared with other spans
+   */
+  private static Drawable getDrawable(Resources resources, int id, int height, float density) {
+    String key = id + ":" + height + ":" + density;
+
+    synchronized (drawables) {
+      Drawable smilie = drawables.get(key);
+      if (smilie == null) {
+        smilie = resources.getDrawable(id);
+
+        // We should scale the image
+        float scale = height / (float)(smilie.getMinimumHeight());
+        smilie.setBounds(0, 0, (int)(smilie.getMinimumWidth() * scale * density), (int)(height * density));
+        drawables.put(key, smilie);
+      }
+      return smilie;
+    }
+  }
+
   /**
    * Converts all smilies in a string to graphical smilies.
    *
@@ -0,0 +1,83 @@
+/*
+Yaaic - Yet Another Android IRC Client
+
+Copyright 2009-2013 Sebastian Kaspari
+
+This file is part of Yaaic.
+
+Yaaic is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Yaaic is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Yaaic.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package indrora.atomic.utils;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Formats message timestamps like "[13:37]" or "[01:37:05]"
+ *
+ * Messages come in order, so most share their minute with the one
+ * before; the formatted minute is kept and only the seconds are added
+ * to it. Safe to share between threads.
+ */
+public class TimestampFormatter {
+  private static final long MINUTE = 60 * 1000;
+
+  private final boolean includeSeconds;
+  private final SimpleDateFormat minuteFormat;
+
+  // The minute formatted last, as "[HH:mm" and as "[HH:mm]"
+  private long minute = Long.MIN_VALUE;
+  private String open;
+  private String closed;
+
+  /**
+   * Create a new TimestampFormatter
+   *
+   * @param use24hFormat
+   * @param includeSeconds
+   */
+  public TimestampFormatter(boolean use24hFormat, boolean includeSeconds) {
+    this.includeSeconds = includeSeconds;
+    minuteFormat = new SimpleDateFormat(use24hFormat ? "[HH:mm" : "[hh:mm");
+  }
+
+  /**
+   * Format a timestamp
+   *
+   * @param time Milliseconds since the epoch
+   * @return
+   */
+  public synchronized String format(long time) {
+    // Time zones are whole minutes off UTC, so a minute since the epoch
+    // is a minute of local time too
+    long minute = (time >= 0) ? time / MINUTE : (time - MINUTE + 1) / MINUTE;
+    if (minute != this.minute) {
+      open = minuteFormat.format(new Date(minute * MINUTE));
+      closed = open + "]";
+      this.minute = minute;
+    }
+
+    if (!includeSeconds) {
+      return closed;
+    }
+
+    int seconds = (int) ((time - minute * MINUTE) / 1000);
+    StringBuilder timestamp = new StringBuilder(open.length() + 4);
+    timestamp.append(open).append(':');
+    if (seconds < 10) {
+      timestamp.append('0');
+    }
+    return timestamp.append(seconds).append(']').toString();
+  }
+}
@@ -26,6 +26,9 @@ import indrora.atomic.adapter.MessageListAdapter;
 import indrora.atomic.listener.MessageClickListener;
 import indrora.atomic.model.ColorScheme;
 import android.content.Context;
+import android.view.View;
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
 import android.widget.ListView;
 
 /**
@@ -34,9 +37,37 @@ import android.widget.ListView;
  * @author Sebastian Kaspari <sebastian@yaaic.org>
  */
 public class MessageListView extends ListView {
+  // Older messages are loaded once the first visible message is closer
+  // than this to the top of the list
+  private static final int PREFETCH_MARGIN = 20;
 
   ColorScheme _scheme;
 
+  private final MessageListAdapter.OnOlderMessagesListener olderMessagesListener =
+    new MessageListAdapter.OnOlderMessagesListener() {
+      @Override
+      public void onOlderMessagesLoaded(int count) {
+        // Keep the messages that were visible in place
+        View first = getChildAt(0);
+        int top = (first == null) ? 0 : first.getTop();
+        setSelectionFromTop(getFirstVisiblePosition() + count, top);
+      }
+    };
+
+  private final OnScrollListener scrollListener = new OnScrollListener() {
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+    }
+
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+      MessageListAdapter adapter = getAdapter();
+      if (adapter != null && firstVisibleItem < PREFETCH_MARGIN) {
+        adapter.loadOlderMessages(olderMessagesListener);
+      }
+    }
+  };
+
   /**
    * Create a new MessageListView
    *
@@ -64,6 +95,29 @@ public class MessageListView extends ListView {
     setPadding(padding, padding, padding, padding);
 
     setTranscriptMode(TRANSCRIPT_MODE_NORMAL);
+    setOnScrollListener(scrollListener);
+  }
+
+  /**
+   * Scroll to a message from the conversation's log, loading older
+   * messages as far as needed
+   *
+   * @param index The index of the message in the log
+   */
+  public void showMessage(long index) {
+    MessageListAdapter adapter = getAdapter();
+    if (adapter == null) {
+      return;
+    }
+
+    adapter.revealMessage(index, new MessageListAdapter.OnMessageRevealedListener() {
+      @Override
+      public void onMessageRevealed(int position) {
+        if (position >= 0) {
+          setSelectionFromTop(position, getHeight() / 3);
+        }
+      }
+    });
   }
 
   /**
@@ -0,0 +1,102 @@
+package org.jibble.pircbot;
+
+/**
+ * The rules a server uses to compare nicks without regard to case, as
+ * announced in the ISUPPORT CASEMAPPING token.
+ *  <p>
+ * Under "rfc1459", the default, the characters []\~ are the lower case
+ * forms of {}|^, because of IRC's Scandinavian origin.  "strict-rfc1459"
+ * leaves out ~ and ^, and "ascii" only folds the letters A to Z.
+ */
+public final class CaseMapping {
+
+  /**
+   * Folds A-Z and []\~.
+   */
+  public static final CaseMapping RFC1459 = new CaseMapping("rfc1459", '^');
+
+  /**
+   * Folds A-Z and []\.
+   */
+  public static final CaseMapping STRICT_RFC1459 = new CaseMapping("strict-rfc1459", ']');
+
+  /**
+   * Folds A-Z only.
+   */
+  public static final CaseMapping ASCII = new CaseMapping("ascii", 'Z');
+
+
+  private CaseMapping(String name, char last) {
+    _name = name;
+    _last = last;
+  }
+
+
+  /**
+   * Returns the case mapping with the given ISUPPORT name.
+   *
+   * @param name The name, e.g. "rfc1459".
+   *
+   * @return The case mapping, or null if the name is unknown.
+   */
+  public static CaseMapping forName(String name) {
+    if (RFC1459._name.equalsIgnoreCase(name)) {
+      return RFC1459;
+    } else if (STRICT_RFC1459._name.equalsIgnoreCase(name)) {
+      return STRICT_RFC1459;
+    } else if (ASCII._name.equalsIgnoreCase(name)) {
+      return ASCII;
+    }
+    return null;
+  }
+
+
+  /**
+   * Returns the lower case form of a nick or channel name.  If it is
+   * already in lower case the same String is returned.
+   *
+   * @param name The nick or channel name.
+   *
+   * @return The lower case form.
+   */
+  public String toLowerCase(String name) {
+    int length = name.length();
+    int i = 0;
+    while (i < length && !isUpper(name.charAt(i))) {
+      i++;
+    }
+    if (i == length) {
+      return name;
+    }
+
+    char[] chars = name.toCharArray();
+    for (; i < length; i++) {
+      char c = chars[i];
+      if (isUpper(c)) {
+        chars[i] = (char) (c + 32);
+      }
+    }
+    return new String(chars);
+  }
+
+
+  /**
+   * Returns the ISUPPORT name of this case mapping.
+   *
+   * @return The name, e.g. "rfc1459".
+   */
+  public String toString() {
+    return _name;
+  }
+
+
+  private boolean isUpper(char c) {
+    // Everything from 'A' to _last maps to the character 32 above it.
+    return c >= 'A' && c <= _last;
+  }
+
+
+  private final String _name;
+  private final char _last;
+
+}
@@ -0,0 +1,129 @@
+package org.jibble.pircbot;
+
+/**
+ * The membership of one user in one channel: the nick and the channel
+ * membership modes (op, voice and whatever else the server's PREFIX
+ * announces) as a bitset.
+ *  <p>
+ * Unlike User, a ChannelMember is updated in place when the user changes
+ * nick or gains or loses a mode, so a MODE line costs a hash lookup and
+ * no allocation.  Only the PircBot's input thread changes it; other
+ * threads always see a consistent nick and consistent modes.
+ */
+public final class ChannelMember {
+
+
+  ChannelMember(String nick, int modes, PrefixModes prefixModes) {
+    _nick = nick;
+    _modes = modes;
+    _prefixModes = prefixModes;
+  }
+
+
+  /**
+   * Returns the nick of the member.
+   *
+   * @return The nick.
+   */
+  public String getNick() {
+    return _nick;
+  }
+
+
+  /**
+   * Returns the membership modes as a bitset; see PrefixModes.
+   *
+   * @return The mode bits.
+   */
+  public int getModes() {
+    return _modes;
+  }
+
+
+  /**
+   * Returns whether the member has a membership mode.
+   *
+   * @param mode The mode letter, e.g. 'h'.
+   *
+   * @return True if the member has the mode.
+   */
+  public boolean hasMode(char mode) {
+    return (_modes & _prefixModes.getModeBit(mode)) != 0;
+  }
+
+
+  /**
+   * Returns whether the member is a channel operator.
+   *
+   * @return True if the member has mode o.
+   */
+  public boolean isOp() {
+    return hasMode('o');
+  }
+
+
+  /**
+   * Returns whether the member has voice.
+   *
+   * @return True if the member has mode v.
+   */
+  public boolean hasVoice() {
+    return hasMode('v');
+  }
+
+
+  /**
+   * Returns the prefixes of all modes of the member, highest ranked
+   * first, e.g. "@+".
+   *
+   * @return The prefixes, or an empty String.
+   */
+  public String getPrefix() {
+    return _prefixModes.toPrefix(_modes);
+  }
+
+
+  /**
+   * Returns the nick with its prefixes, e.g. "@+Dave".
+   *
+   * @return The prefixes and nick.
+   */
+  public String toString() {
+    return getPrefix() + _nick;
+  }
+
+
+  /**
+   * Returns a User for this member.  The User is kept until the nick or
+   * the modes change, so repeated calls do not allocate.
+   *
+   * @return The User.
+   */
+  public User toUser() {
+    String nick = _nick;
+    String prefix = getPrefix();
+    User user = _user;
+    if (user == null || user.getNick() != nick || !user.getPrefix().equals(prefix)) {
+      user = new User(prefix, nick);
+      _user = user;
+    }
+    return user;
+  }
+
+
+  void setNick(String nick) {
+    _nick = nick;
+  }
+
+
+  void setModes(int modes) {
+    _modes = modes;
+  }
+
+
+  private volatile String _nick;
+  private volatile int _modes;
+  private volatile User _user = null;
+  private final PrefixModes _prefixModes;
+
+}
@@ -0,0 +1,165 @@
+package org.jibble.pircbot;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The users in one channel, indexed by their case mapped nick.
+ *  <p>
+ * Looking up, adding, removing and renaming a member as well as changing
+ * its modes takes constant time, however large the channel is.  Reading
+ * does not take a lock: iterating sees every member that stayed in the
+ * channel during the iteration exactly once, and does not fail when the
+ * channel changes at the same time, so there is no need to copy the
+ * whole channel first.
+ *  <p>
+ * Only the PircBot's input thread changes a ChannelUsers; instances are
+ * obtained with PircBot.getChannelUsers().
+ */
+public final class ChannelUsers implements Iterable<ChannelMember> {
+
+
+  ChannelUsers(CaseMapping caseMapping, PrefixModes prefixModes) {
+    _caseMapping = caseMapping;
+    _prefixModes = prefixModes;
+  }
+
+
+  /**
+   * Returns the member with the given nick.
+   *
+   * @param nick The nick, in any case.
+   *
+   * @return The member, or null if no such user is in the channel.
+   */
+  public ChannelMember get(String nick) {
+    return _members.get(_caseMapping.toLowerCase(nick));
+  }
+
+
+  /**
+   * Returns whether a user is in the channel.
+   *
+   * @param nick The nick, in any case.
+   *
+   * @return True if the user is in the channel.
+   */
+  public boolean contains(String nick) {
+    return _members.containsKey(_caseMapping.toLowerCase(nick));
+  }
+
+
+  /**
+   * Returns the number of users in the channel.
+   *
+   * @return The number of members.
+   */
+  public int size() {
+    return _members.size();
+  }
+
+
+  /**
+   * Returns the membership modes of the server the channel is on.
+   *
+   * @return The prefix modes.
+   */
+  public PrefixModes getPrefixModes() {
+    return _prefixModes;
+  }
+
+
+  /**
+   * Returns an iterator over all members, in no particular order.  The
+   * iterator does not support remove().
+   *
+   * @return The iterator.
+   */
+  public Iterator<ChannelMember> iterator() {
+    return Collections.unmodifiableCollection(_members.values()).iterator();
+  }
+
+
+  /**
+   * Returns the members as User objects.
+   *
+   * @return A new array of Users.
+   */
+  public User[] toUsers() {
+    User[] users = new User[_members.size()];
+    int i = 0;
+    for (ChannelMember member : _members.values()) {
+      if (i == users.length) {
+        // Somebody joined while copying.
+        User[] grown = new User[2 * i + 1];
+        System.arraycopy(users, 0, grown, 0, i);
+        users = grown;
+      }
+      users[i++] = member.toUser();
+    }
+    if (i < users.length) {
+      // Somebody left while copying.
+      User[] shrunk = new User[i];
+      System.arraycopy(users, 0, shrunk, 0, i);
+      users = shrunk;
+    }
+    return users;
+  }
+
+
+  /**
+   * Adds a member or, if the nick is already in the channel, replaces
+   * its modes.
+   */
+  ChannelMember add(String nick, int modes) {
+    String key = _caseMapping.toLowerCase(nick);
+    ChannelMember member = _members.get(key);
+    if (member == null) {
+      member = new ChannelMember(nick, modes, _prefixModes);
+      _members.put(key, member);
+    } else {
+      member.setNick(nick);
+      member.setModes(modes);
+    }
+    return member;
+  }
+
+
+  ChannelMember remove(String nick) {
+    return _members.remove(_caseMapping.toLowerCase(nick));
+  }
+
+
+  ChannelMember rename(String oldNick, String newNick) {
+    ChannelMember member = remove(oldNick);
+    if (member != null) {
+      member.setNick(newNick);
+      _members.put(_caseMapping.toLowerCase(newNick), member);
+    }
+    return member;
+  }
+
+
+  /**
+   * Gives a member a mode or takes it away.  A nick that is not known
+   * yet is added, as the server evidently thinks it is in the channel.
+   */
+  void setMode(String nick, char mode, boolean set) {
+    int bit = _prefixModes.getModeBit(mode);
+    ChannelMember member = get(nick);
+    if (member == null) {
+      add(nick, set ? bit : 0);
+    } else if (set) {
+      member.setModes(member.getModes() | bit);
+    } else {
+      member.setModes(member.getModes() & ~bit);
+    }
+  }
+
+
+  private final CaseMapping _caseMapping;
+  private final PrefixModes _prefixModes;
+  private final ConcurrentHashMap<String, ChannelMember> _members = new ConcurrentHashMap<String, ChannelMember>();
+
+}
@@ -0,0 +1,72 @@
+package org.jibble.pircbot;
+
+import java.net.InetAddress;
+
+/**
+ * The transport of one connection to an IRC server, as seen by PircBot.
+ *  <p>
+ * With the default threads per connection this is the InputThread; with
+ * a SelectorEngine it is a channel served by the shared selector thread.
+ */
+interface Connection {
+
+  /**
+   * Sends a raw line to the IRC server as soon as possible, bypassing the
+   * outgoing message queue.
+   *
+   * @param line The raw line to send to the IRC server.
+   */
+  void sendRawLine(String line);
+
+
+  /**
+   * Sends several raw lines with a single flush, bypassing the outgoing
+   * message queue.
+   *
+   * @param lines The raw lines to send to the IRC server.
+   */
+  void sendRawLines(String[] lines);
+
+
+  /**
+   * Adds a line to the pending batch; it is sent by the next flush.
+   *
+   * @param line The raw line to send to the IRC server.
+   */
+  void appendRawLine(String line);
+
+
+  /**
+   * Sends the pending batch of lines.
+   */
+  void flush();
+
+
+  /**
+   * Returns true if this connection is connected to an IRC server.
+   *
+   * @return True if still connected.
+   */
+  boolean isConnected();
+
+
+  /**
+   * Returns the local address of the connection.
+   *
+   * @return The local address.
+   */
+  InetAddress getLocalAddress();
+
+
+  /**
+   * Closes the connection; onDisconnect will be called.
+   */
+  void close();
+
+
+  /**
+   * Closes the connection without onDisconnect being called subsequently.
+   */
+  void dispose();
+
+}
@@ -27,21 +27,21 @@ import java.net.*;
  *          <a href="http://www.jibble.org/">http://www.jibble.org/</a>
  * @version    1.4.6 (Build time: Wed Apr 11 19:20:59 2007)
  */
-public class InputThread extends Thread {
+public class InputThread extends Thread implements Connection {
 
   /**
    * The InputThread reads lines from the IRC server and allows the
    * PircBot to handle them.
    *
    * @param bot An instance of the underlying PircBot.
-   * @param breader The BufferedReader that reads lines from the server.
-   * @param bwriter The BufferedWriter that sends lines to the server.
+   * @param reader The LineReader that reads lines from the server.
+   * @param writer The LineWriter that sends lines to the server.
    */
-  InputThread(PircBot bot, Socket socket, BufferedReader breader, BufferedWriter bwriter) {
+  InputThread(PircBot bot, Socket socket, LineReader reader, LineWriter writer) {
     _bot = bot;
     _socket = socket;
-    _breader = breader;
-    _bwriter = bwriter;
+    _reader = reader;
+    _writer = writer;
     this.setName(this.getClass() + "-Thread");
   }
 
@@ -52,8 +52,37 @@ public class InputThread extends Thread {
    *
    * @param line The raw line to send to the IRC server.
    */
-  void sendRawLine(String line) {
-    OutputThread.sendRawLine(_bot, _bwriter, line);
+  public void sendRawLine(String line) {
+    OutputThread.sendRawLine(_bot, _writer, line);
+  }
+
+
+  /**
+   * Sends several raw lines to the IRC server with a single flush,
+   * bypassing the outgoing message queue.
+   *
+   * @param lines The raw lines to send to the IRC server.
+   */
+  public void sendRawLines(String[] lines) {
+    OutputThread.sendRawLines(_bot, _writer, lines);
+  }
+
+
+  /**
+   * Adds a line to the pending batch; it is sent by the next flush.
+   *
+   * @param line The raw line to send to the IRC server.
+   */
+  public void appendRawLine(String line) {
+    OutputThread.appendRawLine(_bot, _writer, line);
+  }
+
+
+  /**
+   * Sends the pending batch of lines.
+   */
+  public void flush() {
+    OutputThread.flush(_writer);
   }
 
 
@@ -64,7 +93,7 @@ public class InputThread extends Thread {
    *
    * @return True if still connected.
    */
-  boolean isConnected() {
+  public boolean isConnected() {
     return _isConnected;
   }
 
@@ -86,9 +115,9 @@ public class InputThread extends Thread {
       while (running) {
         try {
           String line = null;
-          while ((line = _breader.readLine()) != null) {
+          while ((line = _reader.readLine()) != null) {
             try {
-              _bot.handleLine(line);
+              _bot.dispatchLine(line);
             } catch (Throwable t) {
               // Stick the whole stack trace into a String so we can output it nicely.
               StringWriter sw = new StringWriter();
@@ -127,6 +156,29 @@ public class InputThread extends Thread {
   }
 
 
+  /**
+   * Returns the local address of the socket.
+   *
+   * @return The local address.
+   */
+  public InetAddress getLocalAddress() {
+    return _socket.getLocalAddress();
+  }
+
+
+  /**
+   * Closes the socket; onDisconnect will be called once this
+   * Thread notices.
+   */
+  public void close() {
+    try {
+      _socket.close();
+    } catch (Exception e) {
+      // Do nothing.
+    }
+  }
+
+
   /**
    * Closes the socket without onDisconnect being called subsequently.
    */
@@ -141,8 +193,8 @@ public class InputThread extends Thread {
 
   private PircBot _bot = null;
   private Socket _socket = null;
-  private BufferedReader _breader = null;
-  private BufferedWriter _bwriter = null;
+  private LineReader _reader = null;
+  private LineWriter _writer = null;
   private boolean _isConnected = true;
   private boolean _disposed = false;
 
@@ -0,0 +1,449 @@
+package org.jibble.pircbot;
+
+/**
+ * A single-pass view over one raw line received from the IRC server.
+ *  <p>
+ * The line is split into its IRCv3 tags, prefix (nick, login and
+ * hostname), command and parameters in one scan.  Only offsets into the
+ * original String are recorded; substrings are created lazily when one
+ * of the getters is called, so a line whose command is not interesting
+ * costs next to nothing.
+ *  <p>
+ * Instances are reusable: calling parse() again simply overwrites the
+ * offsets of the previous line.  They are not thread safe, every thread
+ * that parses lines should use its own instance.
+ */
+public class IrcLine {
+
+  /**
+   * The maximum number of parameters a message may carry (RFC 1459).
+   */
+  public static final int MAX_PARAMS = 15;
+
+  private String _line = "";
+  private int _length = 0;
+
+  private int _tagsStart = -1;
+  private int _tagsEnd = -1;
+
+  private int _prefixStart = -1;
+  private int _prefixEnd = -1;
+  private int _loginStart = -1;
+  private int _hostStart = -1;
+
+  private int _commandStart = 0;
+  private int _commandEnd = 0;
+
+  private int _bodyStart = 0;
+
+  private final int[] _paramStart = new int[MAX_PARAMS];
+  private final int[] _paramEnd = new int[MAX_PARAMS];
+  private int _paramCount = 0;
+  private boolean _hasTrailing = false;
+  private boolean _trailingColon = false;
+
+
+  /**
+   * Parses a raw line from the IRC server, replacing whatever line this
+   * instance was holding before.
+   *
+   * @param line The raw line, without the trailing CR LF.
+   *
+   * @return This instance, for convenience.
+   */
+  public IrcLine parse(String line) {
+    _line = line;
+    _length = line.length();
+    _tagsStart = _tagsEnd = -1;
+    _prefixStart = _prefixEnd = -1;
+    _loginStart = _hostStart = -1;
+    _paramCount = 0;
+    _hasTrailing = false;
+    _trailingColon = false;
+
+    int pos = skipSpaces(0);
+
+    // IRCv3 message tags: "@key=value;key2 "
+    if (pos < _length && line.charAt(pos) == '@') {
+      _tagsStart = pos + 1;
+      pos = nextSpace(pos);
+      _tagsEnd = pos;
+      pos = skipSpaces(pos);
+    }
+
+    // Prefix: ":nick!login@host " or ":server.name "
+    if (pos < _length && line.charAt(pos) == ':') {
+      _prefixStart = pos + 1;
+      pos = nextSpace(pos);
+      _prefixEnd = pos;
+
+      int exclamation = -1;
+      int at = -1;
+      for (int i = _prefixStart; i < _prefixEnd; i++) {
+        char c = line.charAt(i);
+        if (c == '!' && exclamation < 0) {
+          exclamation = i;
+        } else if (c == '@' && at < 0) {
+          at = i;
+        }
+      }
+      if (exclamation > _prefixStart) {
+        _loginStart = exclamation + 1;
+      }
+      if (at > _prefixStart && at > exclamation) {
+        _hostStart = at + 1;
+      }
+      pos = skipSpaces(pos);
+    }
+
+    _commandStart = pos;
+    pos = nextSpace(pos);
+    _commandEnd = pos;
+    pos = skipSpaces(pos);
+    _bodyStart = pos;
+
+    while (pos < _length && _paramCount < MAX_PARAMS) {
+      if (line.charAt(pos) == ':' || _paramCount == MAX_PARAMS - 1) {
+        // The trailing parameter runs to the end of the line.
+        if (line.charAt(pos) == ':') {
+          _trailingColon = true;
+          pos++;
+        }
+        _paramStart[_paramCount] = pos;
+        _paramEnd[_paramCount] = _length;
+        _paramCount++;
+        _hasTrailing = true;
+        break;
+      }
+      _paramStart[_paramCount] = pos;
+      pos = nextSpace(pos);
+      _paramEnd[_paramCount] = pos;
+      _paramCount++;
+      pos = skipSpaces(pos);
+    }
+
+    return this;
+  }
+
+
+  private int nextSpace(int pos) {
+    while (pos < _length && _line.charAt(pos) != ' ') {
+      pos++;
+    }
+    return pos;
+  }
+
+
+  private int skipSpaces(int pos) {
+    while (pos < _length && _line.charAt(pos) == ' ') {
+      pos++;
+    }
+    return pos;
+  }
+
+
+  /**
+   * Returns the raw line this instance currently describes.
+   *
+   * @return The raw line, including tags and prefix.
+   */
+  public String getRaw() {
+    return _line;
+  }
+
+
+  /**
+   * Returns the line with its IRCv3 tags removed.
+   *
+   * @return The line starting at the prefix or command.
+   */
+  public String getUntagged() {
+    if (_tagsStart < 0) {
+      return _line;
+    }
+    return _line.substring(_prefixStart >= 0 ? _prefixStart - 1 : _commandStart);
+  }
+
+
+  /**
+   * Returns whether the line carries a prefix.
+   *
+   * @return True if the line started with ":prefix".
+   */
+  public boolean hasPrefix() {
+    return _prefixStart >= 0;
+  }
+
+
+  /**
+   * Returns whether the prefix is a full user mask (nick!login@host).
+   * If it is not, the prefix is usually the name of a server.
+   *
+   * @return True if the prefix contains both a login and a hostname.
+   */
+  public boolean hasUserMask() {
+    return _loginStart >= 0 && _hostStart > _loginStart;
+  }
+
+
+  /**
+   * Returns the whole prefix without the leading colon.
+   *
+   * @return The prefix, or an empty String if there is none.
+   */
+  public String getPrefix() {
+    if (_prefixStart < 0) {
+      return "";
+    }
+    return _line.substring(_prefixStart, _prefixEnd);
+  }
+
+
+  /**
+   * Returns the nick part of the prefix.  For a server prefix this is the
+   * server name.  Bouncers sometimes send "nick!login" without a host; the
+   * nick is still extracted correctly in that case.
+   *
+   * @return The nick, or an empty String if there is no prefix.
+   */
+  public String getNick() {
+    if (_prefixStart < 0) {
+      return "";
+    }
+    int end = _prefixEnd;
+    if (_loginStart >= 0) {
+      end = _loginStart - 1;
+    } else if (_hostStart >= 0) {
+      end = _hostStart - 1;
+    }
+    return _line.substring(_prefixStart, end);
+  }
+
+
+  /**
+   * Returns the login (ident) part of a user mask prefix.
+   *
+   * @return The login, or an empty String if the prefix is not a user mask.
+   */
+  public String getLogin() {
+    if (!hasUserMask()) {
+      return "";
+    }
+    return _line.substring(_loginStart, _hostStart - 1);
+  }
+
+
+  /**
+   * Returns the hostname part of a user mask prefix.
+   *
+   * @return The hostname, or an empty String if the prefix is not a user mask.
+   */
+  public String getHostname() {
+    if (!hasUserMask()) {
+      return "";
+    }
+    return _line.substring(_hostStart, _prefixEnd);
+  }
+
+
+  /**
+   * Returns the command as sent by the server, e.g. "PRIVMSG" or "353".
+   *
+   * @return The command.
+   */
+  public String getCommand() {
+    return _line.substring(_commandStart, _commandEnd);
+  }
+
+
+  /**
+   * Compares the command with the given upper case name without
+   * creating a substring.  The comparison ignores case.
+   *
+   * @param command The upper case command name, e.g. "PRIVMSG".
+   *
+   * @return True if the command matches.
+   */
+  public boolean isCommand(String command) {
+    int len = _commandEnd - _commandStart;
+    return len == command.length()
+           && _line.regionMatches(true, _commandStart, command, 0, len);
+  }
+
+
+  /**
+   * Returns the numeric reply code of the line.
+   *
+   * @return The three digit reply code, or -1 if the command is not numeric.
+   */
+  public int getNumeric() {
+    if (_commandEnd - _commandStart != 3) {
+      return -1;
+    }
+    int code = 0;
+    for (int i = _commandStart; i < _commandEnd; i++) {
+      char c = _line.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      code = code * 10 + (c - '0');
+    }
+    return code;
+  }
+
+
+  /**
+   * Returns the number of parameters, including the trailing one.
+   *
+   * @return The number of parameters.
+   */
+  public int getParamCount() {
+    return _paramCount;
+  }
+
+
+  /**
+   * Returns the parameter at the given index.  A leading colon of the
+   * trailing parameter is not included.
+   *
+   * @param index The index of the parameter, starting at zero.
+   *
+   * @return The parameter, or an empty String if there is no such parameter.
+   */
+  public String getParam(int index) {
+    if (index < 0 || index >= _paramCount) {
+      return "";
+    }
+    return _line.substring(_paramStart[index], _paramEnd[index]);
+  }
+
+
+  /**
+   * Returns the first character of the parameter at the given index.
+   *
+   * @param index The index of the parameter, starting at zero.
+   *
+   * @return The character, or 0 if the parameter does not exist or is empty.
+   */
+  public char getParamChar(int index) {
+    if (index < 0 || index >= _paramCount || _paramStart[index] >= _paramEnd[index]) {
+      return 0;
+    }
+    return _line.charAt(_paramStart[index]);
+  }
+
+
+  /**
+   * Returns the last parameter, which usually holds the message text.
+   *
+   * @return The last parameter, or an empty String if there are none.
+   */
+  public String getLastParam() {
+    return getParam(_paramCount - 1);
+  }
+
+
+  /**
+   * Returns whether the last parameter was introduced with a colon.
+   *
+   * @return True if the line has a trailing parameter.
+   */
+  public boolean hasTrailing() {
+    return _hasTrailing;
+  }
+
+
+  /**
+   * Returns everything after the command, exactly as sent by the server.
+   * This is the "response" that numeric replies have always been handed.
+   *
+   * @return The raw parameter part of the line.
+   */
+  public String getRawParams() {
+    return _line.substring(_bodyStart);
+  }
+
+
+  /**
+   * Returns the parameters starting at the given index joined by single
+   * spaces, with the colon of the trailing parameter removed.
+   *
+   * @param index The index of the first parameter to include.
+   *
+   * @return The joined parameters, or an empty String.
+   */
+  public String getParamsFrom(int index) {
+    if (index < 0 || index >= _paramCount) {
+      return "";
+    }
+    int last = _paramCount - 1;
+    if (index == last) {
+      return getParam(index);
+    }
+    if (!_trailingColon) {
+      return _line.substring(_paramStart[index], _paramEnd[last]);
+    }
+    // Cut out the colon that introduces the trailing parameter.
+    StringBuilder sb = new StringBuilder(_length - _paramStart[index]);
+    sb.append(_line, _paramStart[index], _paramEnd[last - 1]);
+    sb.append(' ');
+    sb.append(_line, _paramStart[last], _paramEnd[last]);
+    return sb.toString();
+  }
+
+
+  /**
+   * Returns whether the line carries IRCv3 message tags.
+   *
+   * @return True if the line started with "@".
+   */
+  public boolean hasTags() {
+    return _tagsStart >= 0;
+  }
+
+
+  /**
+   * Looks up the value of an IRCv3 message tag.  The tag section is
+   * scanned in place, no map is built.
+   *
+   * @param key The name of the tag, e.g. "time".
+   *
+   * @return The raw (unescaped) value, an empty String for a tag without
+   *         value, or null if the tag is not present.
+   */
+  public String getTag(String key) {
+    if (_tagsStart < 0) {
+      return null;
+    }
+    int keyLength = key.length();
+    int pos = _tagsStart;
+    while (pos < _tagsEnd) {
+      int end = _line.indexOf(';', pos);
+      if (end < 0 || end > _tagsEnd) {
+        end = _tagsEnd;
+      }
+      int keyEnd = pos + keyLength;
+      if (keyEnd <= end && _line.regionMatches(pos, key, 0, keyLength)) {
+        if (keyEnd == end) {
+          return "";
+        }
+        if (_line.charAt(keyEnd) == '=') {
+          return _line.substring(keyEnd + 1, end);
+        }
+      }
+      pos = end + 1;
+    }
+    return null;
+  }
+
+
+  /**
+   * Returns the raw line.
+   *
+   * @return The raw line.
+   */
+  public String toString() {
+    return _line;
+  }
+
+}
@@ -0,0 +1,246 @@
+package org.jibble.pircbot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reads lines sent by the IRC server directly from the socket.
+ *  <p>
+ * Lines are framed on one reusable byte buffer, split at LF with an
+ * optional CR before it.  A line longer than MAX_LINE_LENGTH is cut off
+ * and the rest of it is skipped.  Each line is then decoded on its own:
+ * as UTF-8 if it is valid UTF-8, otherwise with the fallback charset.
+ * This way a channel where some people still send Latin-1 or another
+ * legacy charset shows both kinds of messages correctly.  Pure ASCII
+ * lines, the vast majority of protocol traffic, skip the decoder.
+ *  <p>
+ * Apart from the String that is returned, reading a line does not
+ * allocate.  readLine() is synchronized, so several threads may read
+ * from one LineReader, although each line goes to only one of them.
+ */
+public class LineReader {
+
+  /**
+   * The longest line accepted, in bytes: 8191 bytes of IRCv3 message
+   * tags plus the 512 bytes of a classic IRC message.
+   */
+  public static final int MAX_LINE_LENGTH = 8191 + 512;
+
+  private static final int READ_SIZE = 16 * 1024;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+
+  /**
+   * Constructs a LineReader.
+   *
+   * @param in The stream of the socket.  If null, the LineReader has to
+   *           be fed with bytes instead.
+   * @param fallback The charset used for lines that are not valid UTF-8.
+   *                 If null, ISO-8859-1 is used.
+   */
+  public LineReader(InputStream in, Charset fallback) {
+    _in = in;
+    _utf8 = UTF8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    if (fallback == null) {
+      fallback = Charset.forName("ISO-8859-1");
+    }
+    _fallback = fallback.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  }
+
+
+  /**
+   * Constructs a LineReader that is fed with bytes by the caller instead
+   * of reading from a stream; see feed() and pollLine().
+   *
+   * @param fallback The charset used for lines that are not valid UTF-8.
+   *                 If null, ISO-8859-1 is used.
+   */
+  public LineReader(Charset fallback) {
+    this(null, fallback);
+  }
+
+
+  /**
+   * Reads the next line, without the trailing CR LF.
+   *
+   * @return The line, or null if the server closed the connection.
+   *
+   * @throws IOException if reading from the socket failed.  A read
+   *         timeout does not lose any data already received.
+   */
+  public synchronized String readLine() throws IOException {
+    while (true) {
+      String line = nextLine();
+      if (line != null) {
+        return line;
+      }
+
+      if (!fill()) {
+        if (_end > _start && !_skipping) {
+          // The connection closed after an unterminated line.
+          int start = _start;
+          int length = _end - _start;
+          _start = _scan = _end;
+          return decode(start, length);
+        }
+        return null;
+      }
+    }
+  }
+
+
+  /**
+   * Copies as many bytes as fit from the given buffer.  Call pollLine()
+   * until it returns null before feeding more.
+   *
+   * @param src The bytes received from the server.
+   */
+  public synchronized void feed(ByteBuffer src) {
+    compact();
+    int count = Math.min(src.remaining(), _buffer.length - _end);
+    src.get(_buffer, _end, count);
+    _end += count;
+  }
+
+
+  /**
+   * Returns the next complete line among the bytes fed so far.
+   *
+   * @return The line, or null if no complete line is buffered.
+   */
+  public synchronized String pollLine() {
+    return nextLine();
+  }
+
+
+  /**
+   * Takes the next line out of the buffer, or returns null if more
+   * bytes are needed.
+   */
+  private String nextLine() {
+    // Look for the end of a line in what we already have.
+    for (int i = _scan; i < _end; i++) {
+      if (_buffer[i] == '\n') {
+        int start = _start;
+        int length = i - start;
+        _start = _scan = i + 1;
+        if (_skipping) {
+          // The end of a line that was already returned cut off.
+          _skipping = false;
+          continue;
+        }
+        if (length > 0 && _buffer[start + length - 1] == '\r') {
+          length--;
+        }
+        return decode(start, Math.min(length, MAX_LINE_LENGTH));
+      }
+    }
+    _scan = _end;
+
+    if (_end - _start >= MAX_LINE_LENGTH) {
+      // Overlong line: return what fits and drop the rest of it.
+      boolean skipping = _skipping;
+      int start = _start;
+      _start = _scan = _end;
+      _skipping = true;
+      if (!skipping) {
+        return decode(start, MAX_LINE_LENGTH);
+      }
+    }
+    return null;
+  }
+
+
+  /**
+   * Reads more bytes from the stream, compacting the buffer first.
+   *
+   * @return False at the end of the stream.
+   */
+  private boolean fill() throws IOException {
+    compact();
+    int read = _in.read(_buffer, _end, _buffer.length - _end);
+    if (read < 0) {
+      return false;
+    }
+    _end += read;
+    return true;
+  }
+
+
+  /**
+   * Moves the unread bytes to the start of the buffer.
+   */
+  private void compact() {
+    if (_start > 0) {
+      System.arraycopy(_buffer, _start, _buffer, 0, _end - _start);
+      _end -= _start;
+      _scan -= _start;
+      _start = 0;
+    }
+  }
+
+
+  /**
+   * Decodes one line of bytes.
+   */
+  private String decode(int start, int length) {
+    char[] chars = _chars;
+    boolean ascii = true;
+    for (int i = 0; i < length; i++) {
+      byte b = _buffer[start + i];
+      if (b < 0) {
+        ascii = false;
+        break;
+      }
+      chars[i] = (char) b;
+    }
+    if (ascii) {
+      return new String(chars, 0, length);
+    }
+
+    ByteBuffer in = _bytesView;
+    CharBuffer out = _charsView;
+    in.limit(start + length).position(start);
+    out.clear();
+    _utf8.reset();
+    CoderResult result = _utf8.decode(in, out, true);
+    if (!result.isError()) {
+      _utf8.flush(out);
+      return new String(chars, 0, out.position());
+    }
+
+    in.position(start);
+    out.clear();
+    _fallback.reset();
+    _fallback.decode(in, out, true);
+    _fallback.flush(out);
+    return new String(chars, 0, out.position());
+  }
+
+
+  private final InputStream _in;
+  private final CharsetDecoder _utf8;
+  private final CharsetDecoder _fallback;
+
+  // Twice the line limit, so a full line still fits after a partial one.
+  private final byte[] _buffer = new byte[Math.max(READ_SIZE, 2 * MAX_LINE_LENGTH)];
+  private final char[] _chars = new char[MAX_LINE_LENGTH];
+  private final ByteBuffer _bytesView = ByteBuffer.wrap(_buffer);
+  private final CharBuffer _charsView = CharBuffer.wrap(_chars);
+  private int _start = 0;
+  private int _scan = 0;
+  private int _end = 0;
+  private boolean _skipping = false;
+
+}
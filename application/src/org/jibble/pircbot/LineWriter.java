@@ -0,0 +1,101 @@
+package org.jibble.pircbot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Encodes lines for the IRC server into one reusable byte buffer and
+ * writes them to the socket in batches.
+ *  <p>
+ * append() only encodes a line, flush() hands everything appended so far
+ * to the socket in a single write, which on an SSL socket means a single
+ * TLS record for the whole batch.  The buffer is only flushed early if
+ * it runs full.  All methods are synchronized, so lines appended by
+ * different threads are never interleaved.
+ */
+class LineWriter {
+
+  /**
+   * The size of the byte buffer lines are collected in.
+   */
+  static final int BUFFER_SIZE = 8 * 1024;
+
+  private static final byte[] CRLF = { '\r', '\n' };
+
+
+  /**
+   * Constructs a LineWriter.
+   *
+   * @param out The stream of the socket.
+   * @param charset The charset lines are encoded with.  Characters it can
+   *                not encode are replaced, like OutputStreamWriter does.
+   */
+  LineWriter(OutputStream out, Charset charset) {
+    _out = out;
+    _encoder = charset.newEncoder()
+               .onMalformedInput(CodingErrorAction.REPLACE)
+               .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  }
+
+
+  /**
+   * Encodes a line and CR LF into the buffer without writing it.
+   *
+   * @param line The line, without CR LF.
+   */
+  synchronized void append(String line) throws IOException {
+    CharBuffer chars = CharBuffer.wrap(line);
+    _encoder.reset();
+    while (_encoder.encode(chars, _buffer, true).isOverflow()) {
+      writeBuffer();
+    }
+    while (_encoder.flush(_buffer).isOverflow()) {
+      writeBuffer();
+    }
+    if (_buffer.remaining() < CRLF.length) {
+      writeBuffer();
+    }
+    _buffer.put(CRLF);
+    _pendingLines++;
+  }
+
+
+  /**
+   * Writes all appended lines to the socket.
+   */
+  synchronized void flush() throws IOException {
+    if (_buffer.position() > 0) {
+      writeBuffer();
+      _out.flush();
+    }
+    _pendingLines = 0;
+  }
+
+
+  /**
+   * Returns the number of lines appended since the last flush.
+   *
+   * @return The number of pending lines.
+   */
+  synchronized int getPendingLines() {
+    return _pendingLines;
+  }
+
+
+  private void writeBuffer() throws IOException {
+    _out.write(_buffer.array(), 0, _buffer.position());
+    _buffer.clear();
+  }
+
+
+  private final OutputStream _out;
+  private final CharsetEncoder _encoder;
+  private final ByteBuffer _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+  private int _pendingLines = 0;
+
+}
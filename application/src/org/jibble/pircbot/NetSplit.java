@@ -0,0 +1,135 @@
+package org.jibble.pircbot;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A batch of users who left in a netsplit, or came back when the servers
+ * joined again, collected over a short window.  It is passed to
+ * PircBot.onNetSplit and PircBot.onNetJoin instead of one onQuit or
+ * onJoin call per user and channel.
+ *
+ * @see PircBot#setNetSplitWindow(long)
+ */
+public class NetSplit {
+
+
+  NetSplit(String servers, boolean join) {
+    int space = servers.indexOf(' ');
+    _server1 = servers.substring(0, space);
+    _server2 = servers.substring(space + 1);
+    _join = join;
+  }
+
+
+  /**
+   * Returns the server that stayed on our side of the split.
+   *
+   * @return The name of the server, e.g. "hub.example.net".
+   */
+  public String getServer1() {
+    return _server1;
+  }
+
+
+  /**
+   * Returns the server that split off.
+   *
+   * @return The name of the server, e.g. "leaf.example.net".
+   */
+  public String getServer2() {
+    return _server2;
+  }
+
+
+  /**
+   * Returns whether the users came back rather than left.
+   *
+   * @return True for a netjoin, false for a netsplit.
+   */
+  public boolean isJoin() {
+    return _join;
+  }
+
+
+  /**
+   * Returns the channels that lost or regained users, in the order they
+   * were first affected.
+   *
+   * @return The channel names.
+   */
+  public String[] getChannels() {
+    return _channels.keySet().toArray(new String[_channels.size()]);
+  }
+
+
+  /**
+   * Returns the users that left or joined a channel, in order.
+   *
+   * @param channel The name of the channel, as given by getChannels().
+   *
+   * @return The nicks, empty if the channel was not affected.
+   */
+  public String[] getNicks(String channel) {
+    List<String> nicks = _channels.get(channel);
+    if (nicks == null) {
+      return new String[0];
+    }
+    return nicks.toArray(new String[nicks.size()]);
+  }
+
+
+  /**
+   * Returns all users in the batch, each once.  Users that were in no
+   * channel we know of are included.
+   *
+   * @return The nicks.
+   */
+  public String[] getNicks() {
+    return _nicks.toArray(new String[_nicks.size()]);
+  }
+
+
+  /**
+   * Returns the number of users in the batch.
+   *
+   * @return The number of users.
+   */
+  public int getUserCount() {
+    return _nicks.size();
+  }
+
+
+  /**
+   * Returns a summary like "Netsplit hub.example.net leaf.example.net:
+   * 412 users".
+   */
+  public String toString() {
+    return (_join ? "Netjoin " : "Netsplit ") + _server1 + " " + _server2 + ": " + _nicks.size() + " users";
+  }
+
+
+  void addNick(String nick) {
+    _nicks.add(nick);
+  }
+
+
+  void add(String channel, String nick) {
+    List<String> nicks = _channels.get(channel);
+    if (nicks == null) {
+      nicks = new ArrayList<String>();
+      _channels.put(channel, nicks);
+    }
+    nicks.add(nick);
+  }
+
+
+  private final String _server1;
+  private final String _server2;
+  private final boolean _join;
+  private final List<String> _nicks = new ArrayList<String>();
+  private final Map<String, List<String>> _channels = new LinkedHashMap<String, List<String>>();
+
+}
@@ -0,0 +1,324 @@
+package org.jibble.pircbot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recognizes netsplits and netjoins and collects the QUITs and JOINs
+ * they cause into NetSplit batches.
+ *  <p>
+ * A QUIT whose reason is two server names ("hub.example.net
+ * leaf.example.net") starts or extends the pending split of those two
+ * servers.  Users that quit in a split are remembered for a while, and
+ * when they JOIN again they go into a netjoin batch.  A batch is handed
+ * to the PircBot a fixed window after its first user, or before the
+ * first other line from one of its users, whichever comes first.  The
+ * user index of the PircBot is updated right away as usual; only the
+ * callbacks are batched.
+ *  <p>
+ * Batches are only handed over from deliver(): handleLine calls it
+ * before every line, and a shared timer thread once the window of a
+ * batch has passed.  The PircBot makes sure the two never run at the
+ * same time, so the callbacks see its state as the reading thread does.
+ */
+class NetSplitTracker {
+
+  /**
+   * How long users that quit in a split are expected back, in ms.
+   */
+  static final long NETJOIN_TIMEOUT = 15 * 60 * 1000;
+
+  private static ScheduledExecutorService _timer = null;
+
+
+  NetSplitTracker(PircBot bot) {
+    _bot = bot;
+  }
+
+
+  /**
+   * Returns whether a quit message is what servers send in a split: two
+   * different server names separated by one space.
+   *
+   * @param reason The quit message.
+   *
+   * @return True if the reason looks like a netsplit.
+   */
+  static boolean isNetSplit(String reason) {
+    int space = reason.indexOf(' ');
+    if (space < 0 || reason.indexOf(' ', space + 1) >= 0) {
+      return false;
+    }
+    String server1 = reason.substring(0, space);
+    String server2 = reason.substring(space + 1);
+    return isServerName(server1) && isServerName(server2) && !server1.equals(server2);
+  }
+
+
+  private static boolean isServerName(String name) {
+    // A host name with at least one dot inside; masked names like
+    // "*.freenode.net" are allowed.
+    int dot = name.indexOf('.');
+    if (dot <= 0 || name.endsWith(".") || name.indexOf("..") >= 0) {
+      return false;
+    }
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (!(Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '*' || c == '_')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  /**
+   * Sets how long batches are collected, 0 to not batch at all.
+   */
+  synchronized void setWindow(long window) {
+    _window = window;
+  }
+
+
+  synchronized long getWindow() {
+    return _window;
+  }
+
+
+  /**
+   * Takes a QUIT into a netsplit batch if it is part of one.
+   *
+   * @param nick The nick of the user who quit.
+   * @param reason The quit message.
+   * @param channels The channels we shared with the user.
+   *
+   * @return True if the QUIT was taken; onQuit must not be called then.
+   */
+  synchronized boolean quit(String nick, String reason, String[] channels) {
+    if (_window <= 0 || !isNetSplit(reason)) {
+      return false;
+    }
+
+    long now = System.currentTimeMillis();
+    String key = _bot.getCaseMapping().toLowerCase(nick);
+    SplitUser user = new SplitUser(reason, now);
+    Pending pending = getPending(_splits, reason, false);
+    if (pending.users.put(key, user) == null) {
+      pending.split.addNick(nick);
+    }
+    for (String channel : channels) {
+      pending.split.add(channel, nick);
+    }
+
+    if (_splitUsers.isEmpty() || now - _lastExpiry > NETJOIN_TIMEOUT) {
+      expire(now);
+    }
+    _splitUsers.put(key, user);
+    return true;
+  }
+
+
+  /**
+   * Takes a JOIN into a netjoin batch if the user quit in a split.
+   *
+   * @param channel The channel that was joined.
+   * @param nick The nick of the user who joined.
+   *
+   * @return True if the JOIN was taken; onJoin must not be called then.
+   */
+  synchronized boolean join(String channel, String nick) {
+    if (_window <= 0 || _splitUsers.isEmpty()) {
+      return false;
+    }
+
+    String key = _bot.getCaseMapping().toLowerCase(nick);
+    SplitUser user = _splitUsers.get(key);
+    if (user == null) {
+      return false;
+    }
+    if (System.currentTimeMillis() - user.time > NETJOIN_TIMEOUT) {
+      _splitUsers.remove(key);
+      return false;
+    }
+
+    Pending pending = getPending(_joins, user.servers, true);
+    if (pending.users.put(key, user) == null) {
+      pending.split.addNick(nick);
+    }
+    pending.split.add(channel, nick);
+    return true;
+  }
+
+
+  /**
+   * Hands the batches that are due to the PircBot, oldest first.  Must
+   * not run at the same time as handleLine; it is called before the line
+   * at hand is handled, or by PircBot.deliverNetSplits().
+   *
+   * @param nick The nick the line at hand comes from, or null.  A
+   *             netjoin batch with this user is due now, so that it is
+   *             reported before anything else the user does.
+   */
+  void deliver(String nick) {
+    List<Pending> due = null;
+
+    synchronized (this) {
+      if (_splits.isEmpty() && _joins.isEmpty()) {
+        return;
+      }
+
+      long now = System.currentTimeMillis();
+      String key = nick != null ? _bot.getCaseMapping().toLowerCase(nick) : null;
+      due = takeDue(_splits, now, null, due);
+      due = takeDue(_joins, now, key, due);
+      if (due == null) {
+        return;
+      }
+    }
+
+    if (due.size() > 1) {
+      Collections.sort(due, new Comparator<Pending>() {
+        public int compare(Pending pending1, Pending pending2) {
+          return pending1.due < pending2.due ? -1 : (pending1.due == pending2.due ? 0 : 1);
+        }
+      });
+    }
+    for (Pending pending : due) {
+      if (pending.split.isJoin()) {
+        _bot.onNetJoin(pending.split);
+      } else {
+        _bot.onNetSplit(pending.split);
+      }
+    }
+  }
+
+
+  /**
+   * Forgets all pending batches and split users, e.g. on reconnect.
+   */
+  synchronized void clear() {
+    _splits.clear();
+    _joins.clear();
+    _splitUsers.clear();
+  }
+
+
+  private Pending getPending(Map<String, Pending> pendings, String servers, boolean join) {
+    Pending pending = pendings.get(servers);
+    if (pending == null) {
+      pending = new Pending(servers, new NetSplit(servers, join),
+                            System.currentTimeMillis() + _window);
+      pendings.put(servers, pending);
+      final Pending scheduled = pending;
+      getTimer().schedule(new Runnable() {
+        public void run() {
+          synchronized (NetSplitTracker.this) {
+            // Due even if the wall clock says otherwise
+            scheduled.timedOut = true;
+          }
+          _bot.deliverNetSplits();
+        }
+      }, _window, TimeUnit.MILLISECONDS);
+    }
+    return pending;
+  }
+
+
+  /**
+   * Takes the batches that are due out of pendings, adding them to due.
+   */
+  private List<Pending> takeDue(Map<String, Pending> pendings, long now, String key, List<Pending> due) {
+    Iterator<Pending> iterator = pendings.values().iterator();
+    while (iterator.hasNext()) {
+      Pending pending = iterator.next();
+      if (!pending.timedOut && pending.due > now
+          && (key == null || !pending.users.containsKey(key))) {
+        continue;
+      }
+      iterator.remove();
+      if (pending.split.isJoin()) {
+        // They are back; a later JOIN is an ordinary one, unless they
+        // split off again in the meantime.
+        for (Map.Entry<String, SplitUser> entry : pending.users.entrySet()) {
+          if (_splitUsers.get(entry.getKey()) == entry.getValue()) {
+            _splitUsers.remove(entry.getKey());
+          }
+        }
+      }
+      if (due == null) {
+        due = new ArrayList<Pending>();
+      }
+      due.add(pending);
+    }
+    return due;
+  }
+
+
+  private void expire(long now) {
+    Iterator<SplitUser> iterator = _splitUsers.values().iterator();
+    while (iterator.hasNext()) {
+      if (now - iterator.next().time > NETJOIN_TIMEOUT) {
+        iterator.remove();
+      }
+    }
+    _lastExpiry = now;
+  }
+
+
+  private static synchronized ScheduledExecutorService getTimer() {
+    if (_timer == null) {
+      _timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "PircBot-NetSplit");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return _timer;
+  }
+
+
+  private static class Pending {
+    Pending(String servers, NetSplit split, long due) {
+      this.servers = servers;
+      this.split = split;
+      this.due = due;
+    }
+
+    final String servers;
+    final NetSplit split;
+    final long due;
+    boolean timedOut = false;
+    final Map<String, SplitUser> users = new HashMap<String, SplitUser>();
+  }
+
+
+  private static class SplitUser {
+    SplitUser(String servers, long time) {
+      this.servers = servers;
+      this.time = time;
+    }
+
+    final String servers;
+    final long time;
+  }
+
+
+  private final PircBot _bot;
+  private long _window = 0;
+  private long _lastExpiry = 0;
+  private final Map<String, Pending> _splits = new HashMap<String, Pending>();
+  private final Map<String, Pending> _joins = new HashMap<String, Pending>();
+  private final Map<String, SplitUser> _splitUsers = new HashMap<String, SplitUser>();
+
+}
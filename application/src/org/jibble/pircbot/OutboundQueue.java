@@ -0,0 +1,301 @@
+package org.jibble.pircbot;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The queue of lines waiting to be sent by the OutputThread.
+ *  <p>
+ * Lines are kept in three priority lanes.  The OutputThread always
+ * takes from the control lane first, then from the interactive lane and
+ * only then from the bulk lane, so a message typed by the user is never
+ * stuck behind an /amsg or the connect commands.  Within a lane lines
+ * keep their order.
+ *  <p>
+ * Enqueueing does not take a lock: every lane is a non-blocking linked
+ * queue and a Semaphore counts the lines for the single consumer to
+ * block on.  The interactive and bulk lanes are bounded; a line that
+ * does not fit is rejected instead of letting the queue grow without
+ * limit.  The control lane is never bounded.
+ */
+public class OutboundQueue {
+
+  /**
+   * Protocol housekeeping that must go out first (PART, NICK, PONG).
+   */
+  public static final int PRIORITY_CONTROL = 0;
+
+  /**
+   * Lines caused directly by the user, e.g. a typed message.
+   */
+  public static final int PRIORITY_INTERACTIVE = 1;
+
+  /**
+   * Automated or mass traffic, e.g. /amsg, connect commands, CTCP replies.
+   */
+  public static final int PRIORITY_BULK = 2;
+
+  /**
+   * The default capacity of the interactive and bulk lanes.
+   */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  private static final int LANES = 3;
+
+
+  /**
+   * Constructs an OutboundQueue with the default capacity per lane.
+   */
+  public OutboundQueue() {
+    this(DEFAULT_CAPACITY);
+  }
+
+
+  /**
+   * Constructs an OutboundQueue.
+   *
+   * @param capacity The maximum number of lines in the interactive and
+   *                 in the bulk lane.
+   */
+  public OutboundQueue(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be positive");
+    }
+    _capacity = capacity;
+    for (int i = 0; i < LANES; i++) {
+      _lanes[i] = new ConcurrentLinkedQueue<String>();
+      _sizes[i] = new AtomicInteger();
+    }
+  }
+
+
+  /**
+   * Adds a line to the end of the interactive lane.
+   *
+   * @param line The line to be added.
+   *
+   * @return False if the lane was full and the line was dropped.
+   */
+  public boolean add(String line) {
+    return add(line, PRIORITY_INTERACTIVE);
+  }
+
+
+  /**
+   * Adds a line to the end of the given lane.
+   *
+   * @param line The line to be added.
+   * @param priority One of the PRIORITY_ constants.
+   *
+   * @return False if the lane was full and the line was dropped.
+   */
+  public boolean add(String line, int priority) {
+    if (priority < PRIORITY_CONTROL || priority > PRIORITY_BULK) {
+      throw new IllegalArgumentException("Unknown priority: " + priority);
+    }
+
+    AtomicInteger size = _sizes[priority];
+    if (size.incrementAndGet() > _capacity && priority != PRIORITY_CONTROL) {
+      size.decrementAndGet();
+      _dropped.incrementAndGet();
+      return false;
+    }
+
+    _lanes[priority].offer(line);
+    _enqueued.incrementAndGet();
+
+    int total = _size.incrementAndGet();
+    int peak = _highWaterMark.get();
+    while (total > peak && !_highWaterMark.compareAndSet(peak, total)) {
+      peak = _highWaterMark.get();
+    }
+
+    _available.release();
+
+    Runnable listener = _listener;
+    if (listener != null) {
+      listener.run();
+    }
+    return true;
+  }
+
+
+  /**
+   * Adds a line so it is sent before every interactive and bulk line.
+   *
+   * @param line The line to be added.
+   */
+  public void addFront(String line) {
+    add(line, PRIORITY_CONTROL);
+  }
+
+
+  /**
+   * Returns the next line to be sent, taking the lanes in priority
+   * order.  The line is removed from the queue.  If the queue is empty
+   * this method blocks until a line is added.
+   *
+   * @return The next line, or null if the waiting thread was interrupted.
+   */
+  public String next() {
+    while (true) {
+      try {
+        _available.acquire();
+      } catch (InterruptedException e) {
+        return null;
+      }
+      String line = poll();
+      if (line != null) {
+        return line;
+      }
+      // The line belonging to this permit was removed by clear().
+    }
+  }
+
+
+  /**
+   * Returns the next line to be sent like next(), but gives up after
+   * the given time.
+   *
+   * @param timeout The number of milliseconds to wait, 0 to not wait.
+   *
+   * @return The next line, or null if none arrived in time or the
+   *         waiting thread was interrupted.
+   */
+  public String poll(long timeout) {
+    long deadline = System.currentTimeMillis() + timeout;
+    while (true) {
+      try {
+        if (!_available.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+          return null;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+      String line = poll();
+      if (line != null) {
+        return line;
+      }
+      timeout = Math.max(0, deadline - System.currentTimeMillis());
+    }
+  }
+
+
+  /**
+   * Removes the next line without blocking.
+   *
+   * @return The next line, or null if the queue is empty.
+   */
+  private String poll() {
+    for (int i = 0; i < LANES; i++) {
+      String line = _lanes[i].poll();
+      if (line != null) {
+        _sizes[i].decrementAndGet();
+        _size.decrementAndGet();
+        return line;
+      }
+    }
+    return null;
+  }
+
+
+  /**
+   * Sets a listener that is run after every added line, e.g. to wake up
+   * a consumer that does not block in next().
+   *
+   * @param listener The listener, or null to remove it.
+   */
+  void setListener(Runnable listener) {
+    _listener = listener;
+  }
+
+
+  /**
+   * Returns true if the queue is not empty.
+   *
+   * @return True only if the queue is not empty.
+   */
+  public boolean hasNext() {
+    return size() != 0;
+  }
+
+
+  /**
+   * Clears the contents of all lanes.
+   */
+  public void clear() {
+    while (poll() != null) {
+      _available.tryAcquire();
+    }
+  }
+
+
+  /**
+   * Returns the number of lines in all lanes.
+   *
+   * @return The current size of the queue.
+   */
+  public int size() {
+    return _size.get();
+  }
+
+
+  /**
+   * Returns the number of lines in one lane.
+   *
+   * @param priority One of the PRIORITY_ constants.
+   *
+   * @return The current size of the lane.
+   */
+  public int size(int priority) {
+    return _sizes[priority].get();
+  }
+
+
+  /**
+   * Returns the largest number of lines that were waiting at once.
+   *
+   * @return The high water mark of the queue size.
+   */
+  public int getHighWaterMark() {
+    return _highWaterMark.get();
+  }
+
+
+  /**
+   * Returns the number of lines accepted since the queue was created.
+   *
+   * @return The number of lines added.
+   */
+  public long getEnqueuedCount() {
+    return _enqueued.get();
+  }
+
+
+  /**
+   * Returns the number of lines rejected because their lane was full.
+   *
+   * @return The number of dropped lines.
+   */
+  public long getDroppedCount() {
+    return _dropped.get();
+  }
+
+
+  private final int _capacity;
+  @SuppressWarnings("unchecked")
+  private final ConcurrentLinkedQueue<String>[] _lanes =
+      (ConcurrentLinkedQueue<String>[]) new ConcurrentLinkedQueue<?>[LANES];
+  private final AtomicInteger[] _sizes = new AtomicInteger[LANES];
+  private final AtomicInteger _size = new AtomicInteger();
+  private final AtomicInteger _highWaterMark = new AtomicInteger();
+  private final AtomicLong _enqueued = new AtomicLong();
+  private final AtomicLong _dropped = new AtomicLong();
+  private final Semaphore _available = new Semaphore(0);
+  private volatile Runnable _listener = null;
+
+}
@@ -22,8 +22,8 @@ import android.util.Log;
  * A Thread which is responsible for sending messages to the IRC server.
  * Messages are obtained from the outgoing message queue and sent
  * immediately if possible.  If there is a flood of messages, then to
- * avoid getting kicked from a channel, we put a small delay between
- * each one.
+ * avoid getting killed for excess flood, the RateLimiter of the bot
+ * decides how long to wait before each one.
  *
  * @author  Paul James Mutton,
  *          <a href="http://www.jibble.org/">http://www.jibble.org/</a>
@@ -39,9 +39,9 @@ public class OutputThread extends Thread {
    * multiple messages queued, then there is a delay imposed.
    *
    * @param bot The underlying PircBot instance.
-   * @param outQueue The Queue from which we will obtain our messages.
+   * @param outQueue The OutboundQueue from which we will obtain our messages.
    */
-  OutputThread(PircBot bot, Queue outQueue) {
+  OutputThread(PircBot bot, OutboundQueue outQueue) {
     _bot = bot;
     _outQueue = outQueue;
     this.setName(this.getClass() + "-Thread");
@@ -49,48 +49,113 @@ public class OutputThread extends Thread {
 
 
   /**
-   * A static method to write a line to a BufferedOutputStream and then pass
-   * the line to the log method of the supplied PircBot instance.
+   * A static method to write a line to the server right away.
    *
    * @param bot The underlying PircBot instance.
-   * @param out The BufferedOutputStream to write to.
+   * @param writer The LineWriter to write to.
    * @param line The line to be written. "\r\n" is appended to the end.
-   * @param encoding The charset to use when encoing this string into a
-   *                 byte array.
    */
-  static void sendRawLine(PircBot bot, BufferedWriter bwriter, String line) {
+  static void sendRawLine(PircBot bot, LineWriter writer, String line) {
+    synchronized(writer) {
+      appendRawLine(bot, writer, line);
+      flush(writer);
+    }
+  }
+
+
+  /**
+   * A static method to write several lines to the server with a single
+   * flush, e.g. when joining many channels after connecting.
+   *
+   * @param bot The underlying PircBot instance.
+   * @param writer The LineWriter to write to.
+   * @param lines The lines to be written.
+   */
+  static void sendRawLines(PircBot bot, LineWriter writer, String[] lines) {
+    synchronized(writer) {
+      for (int i = 0; i < lines.length; i++) {
+        appendRawLine(bot, writer, lines[i]);
+      }
+      flush(writer);
+    }
+  }
+
+
+  /**
+   * A static method to add a line to the pending batch of the writer
+   * without sending it yet.
+   *
+   * @param bot The underlying PircBot instance.
+   * @param writer The LineWriter to write to.
+   * @param line The line to be written. "\r\n" is appended to the end.
+   */
+  static void appendRawLine(PircBot bot, LineWriter writer, String line) {
     if (line.length() > bot.getMaxLineLength() - 2) {
       line = line.substring(0, bot.getMaxLineLength() - 2);
     }
-    synchronized(bwriter) {
-      try {
-        bwriter.flush();
-        bwriter.write(line + "\r\n");
-        bwriter.flush();
-      } catch (Exception e) {
-        // Silent response - just lose the line.
-      }
+    try {
+      writer.append(line);
+    } catch (Exception e) {
+      // Silent response - just lose the line.
+    }
+  }
+
+
+  /**
+   * A static method to send the pending batch of the writer.
+   *
+   * @param writer The LineWriter to flush.
+   */
+  static void flush(LineWriter writer) {
+    try {
+      writer.flush();
+    } catch (Exception e) {
+      // Silent response - just lose the lines.
     }
   }
 
 
   /**
    * This method starts the Thread consuming from the outgoing message
-   * Queue and sending lines to the server.
+   * Queue and sending lines to the server.  Lines that are ready at the
+   * same time, or arrive within the batch latency of the bot, are sent
+   * with a single flush, up to the maximum batch size.  The batch is
+   * flushed early whenever the RateLimiter asks us to wait.
    */
   public void run() {
     try {
       boolean running = true;
       while (running) {
-        // Small delay to prevent spamming of the channel
-        Thread.sleep(_bot.getMessageDelay());
-
-        String line = (String) _outQueue.next();
-        if (line != null) {
-          _bot.sendRawLine(line);
-        } else {
+        String line = _outQueue.next();
+        if (line == null) {
           running = false;
         }
+
+        int batched = 0;
+        while (line != null) {
+          // Wait as long as the server's flood protection requires.
+          long wait = _bot.getRateLimiter().reserve(line.length() + 2, System.currentTimeMillis());
+          if (wait > 0) {
+            if (batched > 0) {
+              _bot.flushRawLines();
+              batched = 0;
+            }
+            Thread.sleep(wait);
+          }
+
+          _bot.appendRawLine(line);
+          batched++;
+          if (batched >= _bot.getMaxBatchSize()) {
+            _bot.flushRawLines();
+            batched = 0;
+          }
+
+          line = _outQueue.poll(_bot.getMaxBatchLatency());
+        }
+
+        if (batched > 0) {
+          _bot.flushRawLines();
+        }
       }
     } catch (InterruptedException e) {
       // Just let the method return naturally...
@@ -98,6 +163,6 @@ public class OutputThread extends Thread {
   }
 
   private PircBot _bot = null;
-  private Queue _outQueue = null;
+  private OutboundQueue _outQueue = null;
 
 }
@@ -17,34 +17,28 @@ package org.jibble.pircbot;
 import indrora.atomic.ssl.NaiveTrustManager;
 import indrora.atomic.tools.Base64;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.Charset;
 import java.security.SecureRandom;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLException;
@@ -52,7 +46,6 @@ import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.X509TrustManager;
 
-import android.os.PatternMatcher;
 import android.util.Log;
 
 
@@ -98,11 +91,6 @@ public abstract class PircBot implements ReplyConstants {
    */
   public static final String VERSION = "1.4.6";
 
-  private static final int OP_ADD = 1;
-  private static final int OP_REMOVE = 2;
-  private static final int VOICE_ADD = 3;
-  private static final int VOICE_REMOVE = 4;
-
   /**
    * Constructs a PircBot with the default settings.  Your own constructors
    * in classes which extend the PircBot abstract class should be responsible
@@ -170,77 +158,112 @@ public abstract class PircBot implements ReplyConstants {
 
     // Clear everything we may have know about channels.
     this.removeAllChannels();
+    _netSplits.clear();
+    _prefixModes = PrefixModes.DEFAULT;
+    _caseMapping = CaseMapping.RFC1459;
 
-    // Connect to the server.
+    Charset charset = null;
+    Charset fallback = null;
 
-    // XXX: PircBot Patch for SSL
-    if (_useSSL) {
-      try {
-        this.onConnectionMessage("Opening SSL connection...");
-        SSLContext context = SSLContext.getInstance("TLS");
-        context.init(null, _trustManagers , new SecureRandom());
-        SSLSocketFactory factory = context.getSocketFactory();
-        SSLSocket ssocket = (SSLSocket) factory.createSocket(hostname, port);
-        ssocket.startHandshake();
-        _socket = ssocket;
-      } catch(Exception e) {
-        throw new SSLException("SSL certificate denied: "+e.getMessage(), e);
+    if (getEncoding() != null) {
+      // Assume the specified encoding is valid for this JVM.
+      charset = Charset.forName(getEncoding());
+      if (!charset.name().equals("UTF-8")) {
+        // Incoming lines are tried as UTF-8 first anyway.
+        fallback = charset;
       }
     } else {
-      _socket =  new Socket(hostname, port);
+      // Otherwise, just use the JVM's default encoding.
+      charset = Charset.defaultCharset();
     }
 
+    // A new connection starts with a clean flood protection penalty.
+    _rateLimiter.reset();
 
-    // This makes the socket timeout on read operations after 5 minutes.
-    // Maybe in some future version I will let the user change this at runtime.
-    _socket.setSoTimeout(5 * 60 * 1000);
-
-
-    _inetAddress = _socket.getLocalAddress();
-
-    InputStreamReader inputStreamReader = null;
-    OutputStreamWriter outputStreamWriter = null;
-
-    if (getEncoding() != null) {
-      // Assume the specified encoding is valid for this JVM.
-      inputStreamReader = new InputStreamReader(_socket.getInputStream(), getEncoding());
-      outputStreamWriter = new OutputStreamWriter(_socket.getOutputStream(), getEncoding());
+    // Connect to the server.
+    LineReader reader = null;
+    SelectorEngine.Channel channel = null;
+
+    if (_engine != null) {
+      // The shared selector thread replaces our InputThread and OutputThread.
+      if (_outputThread != null) {
+        _outputThread.interrupt();
+        _outputThread = null;
+      }
+      SSLContext context = null;
+      try {
+        if (_useSSL) {
+          this.onConnectionMessage("Opening SSL connection...");
+          context = SSLContext.getInstance("TLS");
+          context.init(null, _trustManagers , new SecureRandom());
+        }
+        channel = _engine.open(this, hostname, port, context, charset, fallback);
+      } catch (SSLException e) {
+        throw new SSLException("SSL certificate denied: "+e.getMessage(), e);
+      } catch (IOException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new SSLException("SSL certificate denied: "+e.getMessage(), e);
+      }
+      _connection = channel;
     } else {
-      // Otherwise, just use the JVM's default encoding.
-      inputStreamReader = new InputStreamReader(_socket.getInputStream());
-      outputStreamWriter = new OutputStreamWriter(_socket.getOutputStream());
-    }
+      Socket socket = null;
+
+      // XXX: PircBot Patch for SSL
+      if (_useSSL) {
+        try {
+          this.onConnectionMessage("Opening SSL connection...");
+          SSLContext context = SSLContext.getInstance("TLS");
+          context.init(null, _trustManagers , new SecureRandom());
+          SSLSocketFactory factory = context.getSocketFactory();
+          SSLSocket ssocket = (SSLSocket) factory.createSocket(hostname, port);
+          ssocket.startHandshake();
+          socket = ssocket;
+        } catch(Exception e) {
+          throw new SSLException("SSL certificate denied: "+e.getMessage(), e);
+        }
+      } else {
+        socket =  new Socket(hostname, port);
+      }
 
-    BufferedReader breader = new BufferedReader(inputStreamReader);
-    BufferedWriter bwriter = new BufferedWriter(outputStreamWriter);
 
+      // This makes the socket timeout on read operations after 5 minutes.
+      // Maybe in some future version I will let the user change this at runtime.
+      socket.setSoTimeout(5 * 60 * 1000);
 
-    // Now start the outputThread that will be used to send all messages.
-    if (_outputThread == null) {
-      _outputThread = new OutputThread(this, _outQueue);
-      _outputThread.start();
-    }
+      reader = new LineReader(socket.getInputStream(), fallback);
+      LineWriter writer = new LineWriter(socket.getOutputStream(), charset);
 
+      // Now start the outputThread that will be used to send all messages.
+      if (_outputThread == null) {
+        _outputThread = new OutputThread(this, _outQueue);
+        _outputThread.start();
+      }
 
-    // Set up the input thread.
-    _inputThread = new InputThread(this, _socket, breader, bwriter);
-    // Now start the InputThread to read all other lines from the server.
-    _inputThread.start();
+      // Set up the input thread.
+      InputThread inputThread = new InputThread(this, socket, reader, writer);
+      _connection = inputThread;
+      // Now start the InputThread to read all other lines from the server.
+      inputThread.start();
+    }
 
+    _inetAddress = _connection.getLocalAddress();
 
 
     // Attempt to join the server.
+    String nick = this.getName();
+    ArrayList<String> register = new ArrayList<String>();
     if (password != null && !password.equals("")) {
-      sendRawLine( "PASS " + password);
+      register.add("PASS " + password);
     }
-    String nick = this.getName();
 
     // Capabilities negotiation
-    sendRawLine("CAP LS");
+    register.add("CAP LS");
 
     // For whatever reason, some IRCDs want this NAO.
-    sendRawLine("NICK " + nick);
-    sendRawLine("USER " + this.getLogin() + " 8 * :" + this.getVersion());
+    register.add("NICK " + nick);
+    register.add("USER " + this.getLogin() + " 8 * :" + this.getVersion());
+    sendRawLines(register.toArray(new String[register.size()]));
 
     // XXX: PircBot Patch - Set nick before loop. otherwise we overwrite it in the loop again and again
     //                      But maybe we got a new nickname from the server (bouncers!)
@@ -248,7 +271,11 @@ public abstract class PircBot implements ReplyConstants {
 
     // Read stuff back from the server to see if we connected.
     String line = null;
-    line = breader.readLine();
+    if (channel != null) {
+      line = channel.readFirstLine();
+    } else {
+      line = reader.readLine();
+    }
 
     // XXX: PircBot patch - We are not connected to server if nothing received
     if (line == null) {
@@ -256,7 +283,7 @@ public abstract class PircBot implements ReplyConstants {
     }
 
     // Send the first line to handleLine before the InputThread is started.
-    this.handleLine(line);
+    this.dispatchLine(line);
 
     this.onConnect();
   }
@@ -290,6 +317,27 @@ public abstract class PircBot implements ReplyConstants {
     _useSSL = useSSL;
   }
 
+  /**
+   * Set the SelectorEngine that serves this connection, or null to use
+   * an InputThread and an OutputThread of our own.  Takes effect on the
+   * next connect.
+   *
+   * @param engine The engine, e.g. SelectorEngine.getShared().
+   */
+  public void setSelectorEngine(SelectorEngine engine) {
+    _engine = engine;
+  }
+
+  /**
+   * Returns the SelectorEngine used for connecting, or null if this
+   * PircBot runs its own threads.
+   *
+   * @return The engine, or null.
+   */
+  public SelectorEngine getSelectorEngine() {
+    return _engine;
+  }
+
   /**
    * Set credentials for SASL authentication.
    *
@@ -405,21 +453,83 @@ public abstract class PircBot implements ReplyConstants {
    * @param line The raw line to send to the IRC server.
    */
   public final synchronized void sendRawLine(String line) {
-      if(_inputThread == null || _outputThread == null) return;
-      _inputThread.sendRawLine(line);
+      if(_connection == null) return;
+      _connection.sendRawLine(line);
+  }
+
+  /**
+   * Sends several raw lines to the IRC server as soon as possible,
+   * bypassing the outgoing message queue.  The lines are written with a
+   * single flush, so e.g. joining many channels after connecting goes out
+   * in one packet instead of one per line.
+   *
+   * @param lines The raw lines to send to the IRC server.
+   */
+  public final synchronized void sendRawLines(String... lines) {
+      if(_connection == null) return;
+      _connection.sendRawLines(lines);
+  }
+
+
+  /**
+   * Adds a line to the pending batch of the OutputThread.
+   *
+   * @param line The raw line to send to the IRC server.
+   */
+  final synchronized void appendRawLine(String line) {
+    if (_connection != null) {
+      _connection.appendRawLine(line);
+    }
+  }
+
+
+  /**
+   * Sends the pending batch of the OutputThread.
+   */
+  final synchronized void flushRawLines() {
+    if (_connection != null) {
+      _connection.flush();
+    }
   }
 
+
   /**
    * Sends a raw line through the outgoing message queue.
    *
    * @param line The raw line to send to the IRC server.
    */
   public final synchronized void sendRawLineViaQueue(String line) {
+    sendRawLineViaQueue(line, OutboundQueue.PRIORITY_INTERACTIVE);
+  }
+
+
+  /**
+   * Sends a raw line through the given lane of the outgoing message queue.
+   * Lines in a lane with a higher priority are sent first.
+   *
+   * @param line The raw line to send to the IRC server.
+   * @param priority One of the OutboundQueue.PRIORITY_ constants.
+   */
+  public final synchronized void sendRawLineViaQueue(String line, int priority) {
     if (line == null) {
       throw new NullPointerException("Cannot send null messages to server");
     }
     if (isConnected()) {
-      _outQueue.add(line);
+      queueLine(line, priority);
+    }
+  }
+
+
+  /**
+   * Adds a line to the given lane of the outgoing message queue, and logs
+   * it if the lane was full and the line was dropped.  Only the command is
+   * logged, as the rest of the line may hold a password.
+   */
+  private void queueLine(String line, int priority) {
+    if (!_outQueue.add(line, priority)) {
+      int space = line.indexOf(' ');
+      Log.w("PircBot", "Outgoing queue full, dropped a "
+          + (space == -1 ? line : line.substring(0, space)) + " line");
     }
   }
 
@@ -445,7 +555,21 @@ public abstract class PircBot implements ReplyConstants {
    * @see Colors
    */
   public final void sendMessage(String target, String message) {
-    _outQueue.add("PRIVMSG " + target + " :" + message);
+    queueLine("PRIVMSG " + target + " :" + message, OutboundQueue.PRIORITY_INTERACTIVE);
+  }
+
+
+  /**
+   * Sends a message through the given lane of the outgoing message queue.
+   * Use OutboundQueue.PRIORITY_BULK for messages sent to many targets at
+   * once so they do not delay what the user types next.
+   *
+   * @param target The name of the channel or user nick to send to.
+   * @param message The message to send.
+   * @param priority One of the OutboundQueue.PRIORITY_ constants.
+   */
+  public final void sendMessage(String target, String message, int priority) {
+    queueLine("PRIVMSG " + target + " :" + message, priority);
   }
 
 
@@ -469,7 +593,7 @@ public abstract class PircBot implements ReplyConstants {
    * @param notice The notice to send.
    */
   public final void sendNotice(String target, String notice) {
-    _outQueue.add("NOTICE " + target + " :" + notice);
+    queueLine("NOTICE " + target + " :" + notice, OutboundQueue.PRIORITY_INTERACTIVE);
   }
 
 
@@ -487,7 +611,7 @@ public abstract class PircBot implements ReplyConstants {
    * @param command The CTCP command to send.
    */
   public final void sendCTCPCommand(String target, String command) {
-    _outQueue.add("PRIVMSG " + target + " :\u0001" + command + "\u0001");
+    queueLine("PRIVMSG " + target + " :\u0001" + command + "\u0001", OutboundQueue.PRIORITY_INTERACTIVE);
   }
 
 
@@ -876,13 +1000,37 @@ public abstract class PircBot implements ReplyConstants {
 
   }
 
-  private static String CAP_ACK_REGEX = ":(.+) CAP (.+) (LS|ACK|NAK) :(.+)";
+  /**
+   * Hands a line read from the server to handleLine.  Lines are handled
+   * one at a time, and never together with deliverNetSplits().
+   *
+   * @param line The raw line of text from the server.
+   */
+  final void dispatchLine(String line) throws NickAlreadyInUseException, IOException {
+    synchronized (_lineLock) {
+      this.handleLine(line);
+    }
+  }
+
+  /**
+   * Hands the netsplit batches that are due to onNetSplit and onNetJoin.
+   * Called on the netsplit timer thread; waits for the line being handled.
+   */
+  final void deliverNetSplits() {
+    synchronized (_lineLock) {
+      _netSplits.deliver(null);
+    }
+  }
 
   /**
    * This method handles events when any line of text arrives from the server,
    * then calling the appropriate method in the PircBot.  This method is
    * protected and only called by the InputThread for this instance.
    *  <p>
+   * The line is parsed in a single pass by an {@link IrcLine} that is
+   * reused for every line read by the calling thread, so no regular
+   * expressions are compiled and no tokenizers or tag maps are allocated.
+   *  <p>
    * This method may not be overridden!
    *
    * @param line The raw line of text from the server.
@@ -890,6 +1038,9 @@ public abstract class PircBot implements ReplyConstants {
    * @throws IOException
    */
   protected void handleLine(String line) throws NickAlreadyInUseException, IOException {
+    // Netsplit batches that are due come before this line.
+    _netSplits.deliver(null);
+
     // Check for server pings.
     if (line.startsWith("PING ")) {
       // Respond to the ping and return immediately.
@@ -897,208 +1048,146 @@ public abstract class PircBot implements ReplyConstants {
       return;
     }
 
-    Matcher m = Pattern.compile(CAP_ACK_REGEX).matcher(line);
+    IrcLine ircLine = _lineParsers.get().parse(line);
 
+    if (ircLine.isCommand("CAP") && ircLine.getParamCount() >= 3) {
+      String subCommand = ircLine.getParam(1);
+      String caps = ircLine.getLastParam();
 
-    if(m.matches()) {
-      Log.d("pIRCbot", "Got a "+m.group(3)+" on "+m.group(4));
-      if(m.group(3).equals("LS"))
-      {
-        // Request all CAPs back. (?)
-        sendRawLine("CAP REQ :"+m.group(4));
-      }
-      if(m.group(3).equals("ACK"))
-      {
-        List<String> acked_caps = Arrays.asList( m.group(4).split("\\s+"));
-        if(acked_caps.contains("sasl"))
+      if (subCommand.equals("LS") || subCommand.equals("ACK") || subCommand.equals("NAK")) {
+        Log.d("pIRCbot", "Got a "+subCommand+" on "+caps);
+        if(subCommand.equals("LS"))
         {
-          Log.d("pIRCbot", "Sending sasl auth");
-          doSaslAuth(saslUsername, saslPassword);
+          // Request all CAPs back. (?)
+          sendRawLine("CAP REQ :"+caps);
         }
+        if(subCommand.equals("ACK"))
+        {
+          if(containsWord(caps, "sasl"))
+          {
+            Log.d("pIRCbot", "Sending sasl auth");
+            doSaslAuth(saslUsername, saslPassword);
+          }
+        }
+        if(subCommand.equals("NAK") || subCommand.equals("ACK")) {
+          // Finish the negotiation
+          sendRawLine("CAP END");
+        }
+        return;
       }
-      if(m.group(3).equals("NAK") || m.group(3).equals("ACK")) {
-        // Finish the negotiation
-        sendRawLine("CAP END");
-      }
-      return;
     }
 
-    HashMap<String,String> tags = new HashMap<String,String>();
-    Date messageDate = new Date();
-    // Get tags
-    if(line.startsWith("@")) {
-      String[] tag_raw = line.substring(1, line.indexOf(' ')).split(";");
-      for(String tag_kv : tag_raw) {
-        String key = tag_kv.substring(0,tag_kv.indexOf('='));
-        String valu = tag_kv.substring(tag_kv.indexOf('=')+1);
-        tags.put(key,valu);
-
-      }
-      line = line.substring(line.indexOf(' ')+1);
+    if (ircLine.hasTags()) {
+      // Everything below works on the line as it was before IRCv3 tags.
+      line = ircLine.getUntagged();
     }
 
-    if(tags.containsKey("time")) {
-      // ex 2014-06-11T08:10:29.668Z
-      SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
-      sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
-      try {
-        messageDate = sdf.parse(tags.get("time"));
-      } catch (ParseException e) {
-        Log.d("pIRCbot", "EX! "+e.toString());
-        messageDate = new Date();
-      }
-    }
+    int code = ircLine.getNumeric();
+    if (code != -1 && ircLine.hasPrefix() && !ircLine.hasUserMask() && ircLine.getParamCount() > 0) {
+      this.processServerResponse(code, ircLine.getRawParams());
 
-    String sourceNick = "";
-    String sourceLogin = "";
-    String sourceHostname = "";
-
-    StringTokenizer tokenizer = new StringTokenizer(line);
-    String senderInfo = tokenizer.nextToken();
-    String command = tokenizer.nextToken();
-    String target = null;
-
-    int exclamation = senderInfo.indexOf("!");
-    int at = senderInfo.indexOf("@");
-    if (senderInfo.startsWith(":")) {
-      if (exclamation > 0 && at > 0 && exclamation < at) {
-        sourceNick = senderInfo.substring(1, exclamation);
-        sourceLogin = senderInfo.substring(exclamation + 1, at);
-        sourceHostname = senderInfo.substring(at + 1);
-      } else {
+      if (code == 433 && !_registered) {
+        if (_autoNickChange) {
+          String oldNick = _nick;
 
-        if (tokenizer.hasMoreTokens()) {
-          String token = command;
+          List<String> aliases = getAliases();
+          _autoNickTries++;
 
-          int code = -1;
-          try {
-            code = Integer.parseInt(token);
-          } catch (NumberFormatException e) {
-            // Keep the existing value.
+          if (_autoNickTries - 1 <= aliases.size()) {
+            // Try next alias
+            _nick = aliases.get(_autoNickTries - 2);
+          } else {
+            // Append a number to the nickname
+            _nick = getName() + (_autoNickTries - aliases.size());
           }
 
-          if (code != -1) {
-            String errorStr = token;
-            String response = line.substring(line.indexOf(errorStr, senderInfo.length()) + 4, line.length());
-
-            this.processServerResponse(code, response);
-
-            if (code == 433 && !_registered) {
-              if (_autoNickChange) {
-                String oldNick = _nick;
-
-                List<String> aliases = getAliases();
-                _autoNickTries++;
-
-                if (_autoNickTries - 1 <= aliases.size()) {
-                  // Try next alias
-                  _nick = aliases.get(_autoNickTries - 2);
-                } else {
-                  // Append a number to the nickname
-                  _nick = getName() + (_autoNickTries - aliases.size());
-                }
+          // Notify ourself about the change
+          this.onNickChange(oldNick, getLogin(), "", _nick);
 
-                // Notify ourself about the change
-                this.onNickChange(oldNick, getLogin(), "", _nick);
-
-                this.sendRawLineViaQueue("NICK " + _nick);
-              } else {
-                _socket.close();
-                _inputThread = null;
-                throw new NickAlreadyInUseException(line);
-              }
-            }
-
-            return;
-          } else {
-            // This is not a server response.
-            // It must be a nick without login and hostname.
-            // (or maybe a NOTICE or suchlike from the server)
-            sourceNick = senderInfo;
-            target = token;
-
-            // XXX: PircBot Patch - Sometimes there are senderinfos with an ident but no host
-            if (sourceNick.contains("!") && !sourceNick.contains("@")) {
-              String[] chunks = sourceNick.split("!");
-              sourceNick = chunks[0]; // Use the part before the exclamation mark
-            }
-
-            // XXX: PircBot Patch - (Needed for BIP IRC Proxy)
-            //      If this is a NICK command, use next token as target
-            if (command.equalsIgnoreCase("nick")) {
-              target = tokenizer.nextToken();
-            }
-          }
+          this.sendRawLineViaQueue("NICK " + _nick, OutboundQueue.PRIORITY_CONTROL);
         } else {
-          // We don't know what this line means.
-          this.onUnknown(line);
-          // Return from the method;
-          return;
+          _connection.close();
+          _connection = null;
+          throw new NickAlreadyInUseException(line);
         }
-
       }
-    }
 
-    command = command.toUpperCase(Locale.US);
-    if (sourceNick.startsWith(":")) {
-      sourceNick = sourceNick.substring(1);
+      return;
     }
-    if (target == null) {
-      target = tokenizer.nextToken();
+
+    if (ircLine.getParamCount() == 0) {
+      // We don't know what this line means.
+      this.onUnknown(line);
+      return;
     }
-    if (target.startsWith(":")) {
-      target = target.substring(1);
+
+    String sourceNick = ircLine.getNick();
+    String sourceLogin = ircLine.getLogin();
+    String sourceHostname = ircLine.getHostname();
+    String target = ircLine.getParam(0);
+
+    if (!ircLine.isCommand("JOIN")) {
+      // A user back from a netsplit is reported back before anything
+      // else they do.
+      _netSplits.deliver(sourceNick);
     }
 
-    // Check for CTCP requests.
-    if (command.equals("PRIVMSG") && line.indexOf(":\u0001") > 0 && line.endsWith("\u0001")) {
-      String request = line.substring(line.indexOf(":\u0001") + 2, line.length() - 1);
-      if (request.equals("VERSION")) {
-        // VERSION request
-        this.onVersion(sourceNick, sourceLogin, sourceHostname, target);
-      } else if (request.startsWith("ACTION ")) {
-        // ACTION request
-        this.onAction(messageDate, sourceNick, sourceLogin, sourceHostname, target, request.substring(7));
-      } else if (request.startsWith("PING ")) {
-        // PING request
-        this.onPing(sourceNick, sourceLogin, sourceHostname, target, request.substring(5));
-      } else if (request.equals("TIME")) {
-        // TIME request
-        this.onTime(sourceNick, sourceLogin, sourceHostname, target);
-      } else if (request.equals("FINGER")) {
-        // FINGER request
-        this.onFinger(sourceNick, sourceLogin, sourceHostname, target);
-      } else if ((tokenizer = new StringTokenizer(request)).countTokens() >= 5 && tokenizer.nextToken().equals("DCC")) {
-        // This is a DCC request.
-        boolean success = _dccManager.processRequest(sourceNick, sourceLogin, sourceHostname, request);
-        if (!success) {
-          // The DccManager didn't know what to do with the line.
+    if (ircLine.isCommand("PRIVMSG")) {
+      String text = ircLine.getLastParam();
+      int textLength = text.length();
+
+      if (textLength > 1 && text.charAt(0) == '\u0001' && text.charAt(textLength - 1) == '\u0001') {
+        // Check for CTCP requests.
+        String request = text.substring(1, textLength - 1);
+        if (request.equals("VERSION")) {
+          // VERSION request
+          this.onVersion(sourceNick, sourceLogin, sourceHostname, target);
+        } else if (request.startsWith("ACTION ")) {
+          // ACTION request
+          this.onAction(getMessageDate(ircLine), sourceNick, sourceLogin, sourceHostname, target, request.substring(7));
+        } else if (request.startsWith("PING ")) {
+          // PING request
+          this.onPing(sourceNick, sourceLogin, sourceHostname, target, request.substring(5));
+        } else if (request.equals("TIME")) {
+          // TIME request
+          this.onTime(sourceNick, sourceLogin, sourceHostname, target);
+        } else if (request.equals("FINGER")) {
+          // FINGER request
+          this.onFinger(sourceNick, sourceLogin, sourceHostname, target);
+        } else if (request.startsWith("DCC ") && new StringTokenizer(request).countTokens() >= 5) {
+          // This is a DCC request.
+          boolean success = _dccManager.processRequest(sourceNick, sourceLogin, sourceHostname, request);
+          if (!success) {
+            // The DccManager didn't know what to do with the line.
+            this.onUnknown(line);
+          }
+        } else {
+          // An unknown CTCP message - ignore it.
           this.onUnknown(line);
         }
+      } else if (_channelPrefixes.indexOf(ircLine.getParamChar(0)) >= 0) {
+        // This is a normal message to a channel.
+        this.onMessage(getMessageDate(ircLine), target, sourceNick, sourceLogin, sourceHostname, text);
       } else {
-        // An unknown CTCP message - ignore it.
-        this.onUnknown(line);
+        // This is a private message to us.
+        // XXX PircBot patch to pass target info to privmsg callback
+        this.onPrivateMessage(getMessageDate(ircLine), sourceNick, sourceLogin, sourceHostname, target, text);
       }
-    } else if (command.equals("PRIVMSG") && _channelPrefixes.indexOf(target.charAt(0)) >= 0) {
-      // This is a normal message to a channel.
-      this.onMessage( messageDate, target, sourceNick, sourceLogin, sourceHostname, line.substring(line.indexOf(" :") + 2));
-    } else if (command.equals("PRIVMSG")) {
-      // This is a private message to us.
-      // XXX PircBot patch to pass target info to privmsg callback
-      this.onPrivateMessage(messageDate, sourceNick, sourceLogin, sourceHostname, target, line.substring(line.indexOf(" :") + 2));
-    } else if (command.equals("JOIN")) {
+    } else if (ircLine.isCommand("JOIN")) {
       // Someone is joining a channel.
       String channel = target;
-      this.addUser(channel, new User("", sourceNick));
-      this.onJoin(channel, sourceNick, sourceLogin, sourceHostname);
-    } else if (command.equals("PART")) {
+      this.addUser(channel, sourceNick, 0);
+      if (sourceNick.equals(this.getNick()) || !_netSplits.join(channel, sourceNick)) {
+        this.onJoin(channel, sourceNick, sourceLogin, sourceHostname);
+      }
+    } else if (ircLine.isCommand("PART")) {
       // Someone is parting from a channel.
       this.removeUser(target, sourceNick);
       if (sourceNick.equals(this.getNick())) {
         this.removeChannel(target);
       }
       this.onPart(target, sourceNick, sourceLogin, sourceHostname);
-    } else if (command.equals("NICK")) {
+    } else if (ircLine.isCommand("NICK")) {
       // Somebody is changing their nick.
       String newNick = target;
       this.renameUser(sourceNick, newNick);
@@ -1107,42 +1196,43 @@ public abstract class PircBot implements ReplyConstants {
         this.setNick(newNick);
       }
       this.onNickChange(sourceNick, sourceLogin, sourceHostname, newNick);
-    } else if (command.equals("NOTICE")) {
+    } else if (ircLine.isCommand("NOTICE")) {
       // Someone is sending a notice.
-      this.onNotice(sourceNick, sourceLogin, sourceHostname, target, line.substring(line.indexOf(" :") + 2));
-    } else if (command.equals("QUIT")) {
+      this.onNotice(sourceNick, sourceLogin, sourceHostname, target, ircLine.getLastParam());
+    } else if (ircLine.isCommand("QUIT")) {
       // Someone has quit from the IRC server.
 
       // XXX: Pircbot Patch - Call onQuit before removing the user. This way we
       //                        are able to know which channels the user was on.
-      this.onQuit(sourceNick, sourceLogin, sourceHostname, line.substring(line.indexOf(" :") + 2));
+      String reason = ircLine.getLastParam();
+      if (sourceNick.equals(this.getNick())
+          || !_netSplits.quit(sourceNick, reason, this.getUserChannels(sourceNick))) {
+        this.onQuit(sourceNick, sourceLogin, sourceHostname, reason);
+      }
 
       if (sourceNick.equals(this.getNick())) {
         this.removeAllChannels();
       } else {
         this.removeUser(sourceNick);
       }
-    } else if (command.equals("KICK")) {
+    } else if (ircLine.isCommand("KICK")) {
       // Somebody has been kicked from a channel.
-      String recipient = tokenizer.nextToken();
+      String recipient = ircLine.getParam(1);
+      String reason = ircLine.getParamCount() > 2 ? ircLine.getLastParam() : "";
       if (recipient.equals(this.getNick())) {
         this.removeChannel(target);
       }
       this.removeUser(target, recipient);
-      this.onKick(target, sourceNick, sourceLogin, sourceHostname, recipient, line.substring(line.indexOf(" :") + 2));
-    } else if (command.equals("MODE")) {
+      this.onKick(target, sourceNick, sourceLogin, sourceHostname, recipient, reason);
+    } else if (ircLine.isCommand("MODE")) {
       // Somebody is changing the mode on a channel or user.
-      String mode = line.substring(line.indexOf(target, 2) + target.length() + 1);
-      if (mode.startsWith(":")) {
-        mode = mode.substring(1);
-      }
-      this.processMode(target, sourceNick, sourceLogin, sourceHostname, mode);
-    } else if (command.equals("TOPIC")) {
+      this.processMode(target, sourceNick, sourceLogin, sourceHostname, ircLine.getParamsFrom(1));
+    } else if (ircLine.isCommand("TOPIC")) {
       // Someone is changing the topic.
-      this.onTopic(target, line.substring(line.indexOf(" :") + 2), sourceNick, System.currentTimeMillis(), true);
-    } else if (command.equals("INVITE")) {
+      this.onTopic(target, ircLine.getLastParam(), sourceNick, System.currentTimeMillis(), true);
+    } else if (ircLine.isCommand("INVITE")) {
       // Somebody is inviting somebody else into a channel.
-      this.onInvite(target, sourceNick, sourceLogin, sourceHostname, line.substring(line.indexOf(" :") + 2));
+      this.onInvite(target, sourceNick, sourceLogin, sourceHostname, ircLine.getLastParam());
     } else {
       // If we reach this point, then we've found something that the PircBot
       // Doesn't currently deal with.
@@ -1152,6 +1242,50 @@ public abstract class PircBot implements ReplyConstants {
   }
 
 
+  /**
+   * Returns the time a message was sent at.  This is the value of the
+   * IRCv3 server-time tag if the server supplied one, or now otherwise.
+   *
+   * @param ircLine The parsed line.
+   *
+   * @return The date of the message.
+   */
+  private Date getMessageDate(IrcLine ircLine) {
+    String time = ircLine.getTag("time");
+    if (time == null) {
+      return new Date();
+    }
+    // ex 2014-06-11T08:10:29.668Z
+    synchronized (_serverTimeFormat) {
+      try {
+        return _serverTimeFormat.parse(time);
+      } catch (ParseException e) {
+        Log.d("pIRCbot", "EX! "+e.toString());
+        return new Date();
+      }
+    }
+  }
+
+
+  /**
+   * Checks whether a space separated list contains the given word,
+   * without splitting the list.
+   */
+  private static boolean containsWord(String list, String word) {
+    int length = word.length();
+    int pos = list.indexOf(word);
+    while (pos >= 0) {
+      int end = pos + length;
+      if ((pos == 0 || list.charAt(pos - 1) == ' ')
+          && (end == list.length() || list.charAt(end) == ' ')) {
+        return true;
+      }
+      pos = list.indexOf(word, end);
+    }
+    return false;
+  }
+
+
   /**
    * This method is called once the PircBot has successfully connected to
    * the IRC server.
@@ -1211,7 +1345,27 @@ public abstract class PircBot implements ReplyConstants {
    */
   private final void processServerResponse(int code, String response) {
 
-    if (code == RPL_LIST) {
+    if (code == RPL_ISUPPORT) {
+      // The server tells us about the modes and casemapping it uses.
+      StringTokenizer tokenizer = new StringTokenizer(response);
+      while (tokenizer.hasMoreTokens()) {
+        String token = tokenizer.nextToken();
+        if (token.startsWith(":")) {
+          break;
+        }
+        if (token.startsWith("PREFIX=")) {
+          PrefixModes prefixModes = PrefixModes.parse(token.substring(7));
+          if (prefixModes != null) {
+            _prefixModes = prefixModes;
+          }
+        } else if (token.startsWith("CASEMAPPING=")) {
+          CaseMapping caseMapping = CaseMapping.forName(token.substring(12));
+          if (caseMapping != null) {
+            _caseMapping = caseMapping;
+          }
+        }
+      }
+    } else if (code == RPL_LIST) {
       // This is a bit of information about a channel.
       int firstSpace = response.indexOf(' ');
       int secondSpace = response.indexOf(' ', firstSpace + 1);
@@ -1259,26 +1413,22 @@ public abstract class PircBot implements ReplyConstants {
       int channelEndIndex = response.indexOf(" :");
       String channel = response.substring(response.lastIndexOf(' ', channelEndIndex - 1) + 1, channelEndIndex);
 
+      PrefixModes prefixModes = _prefixModes;
       StringTokenizer tokenizer = new StringTokenizer(response.substring(response.indexOf(" :") + 2));
       while (tokenizer.hasMoreTokens()) {
         String nick = tokenizer.nextToken();
-        String prefix = "";
-        if (nick.startsWith("@")) {
-          // User is an operator in this channel.
-          prefix = "@";
-        } else if (nick.startsWith("+")) {
-          // User is voiced in this channel.
-          prefix = "+";
-        } else if (nick.startsWith(".")) {
-          // Some wibbly status I've never seen before...
-          prefix = ".";
-        }
-        // XXX: PircBot Patch - Recognize % as prefix - Often used as "half-operator" prefix
-        else if (nick.startsWith("%")) {
-          prefix = "%";
+        // With multi-prefix the user has all their prefixes, e.g. "@+Dave".
+        int modes = 0;
+        int start = 0;
+        while (start < nick.length() - 1) {
+          int bit = prefixModes.getPrefixBit(nick.charAt(start));
+          if (bit == 0) {
+            break;
+          }
+          modes |= bit;
+          start++;
         }
-        nick = nick.substring(prefix.length());
-        this.addUser(channel, new User(prefix, nick));
+        this.addUser(channel, nick.substring(start), modes);
       }
     } else if (code == RPL_ENDOFNAMES) {
       // This is the end of a NAMES list, so we know that we've got
@@ -1500,6 +1650,41 @@ public abstract class PircBot implements ReplyConstants {
   protected void onQuit(String sourceNick, String sourceLogin, String sourceHostname, String reason) {}
 
 
+  /**
+   * This method is called with the users that quit in a netsplit, once
+   * the window set with setNetSplitWindow has passed after the first of
+   * them.  onQuit is not called for these users.  By the time this
+   * method is called they have already been removed from the channels.
+   *  <p>
+   * This method is called on the thread that reads from the server or on
+   * a timer thread shared by all PircBots, but never while a line is
+   * being handled.
+   *  <p>
+   * The implementation of this method in the PircBot abstract class
+   * performs no actions and may be overridden as required.
+   *
+   * @param split The servers that split and the users per channel.
+   */
+  protected void onNetSplit(NetSplit split) {}
+
+
+  /**
+   * This method is called with the users that joined again after a
+   * netsplit, once the window set with setNetSplitWindow has passed after
+   * the first of them, or before the next line from one of them if that
+   * comes first.  onJoin is not called for these JOINs.
+   *  <p>
+   * Like onNetSplit, this method is never called while a line is being
+   * handled.
+   *  <p>
+   * The implementation of this method in the PircBot abstract class
+   * performs no actions and may be overridden as required.
+   *
+   * @param join The servers that joined and the users per channel.
+   */
+  protected void onNetJoin(NetSplit join) {}
+
+
   /**
    * This method is called whenever a user sets the topic, or when
    * PircBot joins a new channel and discovers its topic.
@@ -1594,23 +1779,25 @@ public abstract class PircBot implements ReplyConstants {
         if (atPos == '+' || atPos == '-') {
           pn = atPos;
         } else if (atPos == 'o') {
+          this.updateUser(channel, atPos, pn == '+', params[p]);
           if (pn == '+') {
-            this.updateUser(channel, OP_ADD, params[p]);
             onOp(channel, sourceNick, sourceLogin, sourceHostname, params[p]);
           } else {
-            this.updateUser(channel, OP_REMOVE, params[p]);
             onDeop(channel, sourceNick, sourceLogin, sourceHostname, params[p]);
           }
           p++;
         } else if (atPos == 'v') {
+          this.updateUser(channel, atPos, pn == '+', params[p]);
           if (pn == '+') {
-            this.updateUser(channel, VOICE_ADD, params[p]);
             onVoice(channel, sourceNick, sourceLogin, sourceHostname, params[p]);
           } else {
-            this.updateUser(channel, VOICE_REMOVE, params[p]);
             onDeVoice(channel, sourceNick, sourceLogin, sourceHostname, params[p]);
           }
           p++;
+        } else if (_prefixModes.getModeBit(atPos) != 0) {
+          // Any other membership mode, e.g. halfop; there is no callback.
+          this.updateUser(channel, atPos, pn == '+', params[p]);
+          p++;
         } else if (atPos == 'k') {
           if (pn == '+') {
             onSetChannelKey(channel, sourceNick, sourceLogin, sourceHostname, params[p]);
@@ -2324,7 +2511,7 @@ public abstract class PircBot implements ReplyConstants {
    * @param target The target of the VERSION request, be it our nick or a channel name.
    */
   protected void onVersion(String sourceNick, String sourceLogin, String sourceHostname, String target) {
-    this.sendRawLine("NOTICE " + sourceNick + " :\u0001VERSION " + _version + "\u0001");
+    this.sendRawLineViaQueue("NOTICE " + sourceNick + " :\u0001VERSION " + _version + "\u0001", OutboundQueue.PRIORITY_BULK);
   }
 
 
@@ -2343,7 +2530,7 @@ public abstract class PircBot implements ReplyConstants {
    * @param pingValue The value that was supplied as an argument to the PING command.
    */
   protected void onPing(String sourceNick, String sourceLogin, String sourceHostname, String target, String pingValue) {
-    this.sendRawLine("NOTICE " + sourceNick + " :\u0001PING " + pingValue + "\u0001");
+    this.sendRawLineViaQueue("NOTICE " + sourceNick + " :\u0001PING " + pingValue + "\u0001", OutboundQueue.PRIORITY_BULK);
   }
 
 
@@ -2374,7 +2561,7 @@ public abstract class PircBot implements ReplyConstants {
    * @param target The target of the TIME request, be it our nick or a channel name.
    */
   protected void onTime(String sourceNick, String sourceLogin, String sourceHostname, String target) {
-    this.sendRawLine("NOTICE " + sourceNick + " :\u0001TIME " + new Date().toString() + "\u0001");
+    this.sendRawLineViaQueue("NOTICE " + sourceNick + " :\u0001TIME " + new Date().toString() + "\u0001", OutboundQueue.PRIORITY_BULK);
   }
 
 
@@ -2391,7 +2578,7 @@ public abstract class PircBot implements ReplyConstants {
    * @param target The target of the FINGER request, be it our nick or a channel name.
    */
   protected void onFinger(String sourceNick, String sourceLogin, String sourceHostname, String target) {
-    this.sendRawLine("NOTICE " + sourceNick + " :\u0001FINGER " + _finger + "\u0001");
+    this.sendRawLineViaQueue("NOTICE " + sourceNick + " :\u0001FINGER " + _finger + "\u0001", OutboundQueue.PRIORITY_BULK);
   }
 
 
@@ -2543,7 +2730,7 @@ public abstract class PircBot implements ReplyConstants {
    * @return True if and only if the PircBot is currently connected to a server.
    */
   public final synchronized boolean isConnected() {
-    return _inputThread != null && _inputThread.isConnected();
+    return _connection != null && _connection.isConnected();
   }
 
   /**
@@ -2561,11 +2748,9 @@ public abstract class PircBot implements ReplyConstants {
   /**
    * Sets the number of milliseconds to delay between consecutive
    * messages when there are multiple messages waiting in the
-   * outgoing message queue.  This has a default value of 1000ms.
-   * It is a good idea to stick to this default value, as it will
-   * prevent your bot from spamming servers and facing the subsequent
-   * wrath!  However, if you do need to change this delay value (<b>not
-   * recommended</b>), then this is the method to use.
+   * outgoing message queue.  This replaces the RateLimiter with one that
+   * allows no burst; the first message after an idle period is still
+   * sent right away.  Use setRateLimiter for finer control.
    *
    * @param delay The number of milliseconds between each outgoing message.
    *
@@ -2575,6 +2760,111 @@ public abstract class PircBot implements ReplyConstants {
       throw new IllegalArgumentException("Cannot have a negative time.");
     }
     _messageDelay = delay;
+    _rateLimiter = new TokenBucketRateLimiter(1, delay, 0);
+  }
+
+
+  /**
+   * Sets the maximum number of queued lines the OutputThread sends with
+   * a single flush.  The default is 16.
+   *
+   * @param size The maximum number of lines per batch, at least 1.
+   */
+  public final void setMaxBatchSize(int size) {
+    if (size < 1) {
+      throw new IllegalArgumentException("Batch size must be positive");
+    }
+    _maxBatchSize = size;
+  }
+
+
+  /**
+   * Returns the maximum number of queued lines sent with a single flush.
+   *
+   * @return The maximum number of lines per batch.
+   */
+  public final int getMaxBatchSize() {
+    return _maxBatchSize;
+  }
+
+
+  /**
+   * Sets how many milliseconds the OutputThread waits for further lines
+   * before it flushes a batch.  The default of 0 only batches lines that
+   * are already queued, so a single message is never delayed.
+   *
+   * @param latency The number of milliseconds to wait for more lines.
+   */
+  public final void setMaxBatchLatency(long latency) {
+    if (latency < 0) {
+      throw new IllegalArgumentException("Cannot have a negative time.");
+    }
+    _maxBatchLatency = latency;
+  }
+
+
+  /**
+   * Returns how long the OutputThread waits for further lines before it
+   * flushes a batch.
+   *
+   * @return Number of milliseconds.
+   */
+  public final long getMaxBatchLatency() {
+    return _maxBatchLatency;
+  }
+
+
+  /**
+   * Sets how many milliseconds QUITs caused by a netsplit, and the JOINs
+   * when the users come back, are collected before they are reported.
+   * Such QUITs and JOINs are then passed to onNetSplit and onNetJoin in
+   * one batch instead of to onQuit and onJoin one by one.  The default of
+   * 0 does not batch them at all.
+   *
+   * @param window The number of milliseconds to collect a batch for.
+   *
+   * @see #onNetSplit(NetSplit)
+   */
+  public final void setNetSplitWindow(long window) {
+    if (window < 0) {
+      throw new IllegalArgumentException("Cannot have a negative time.");
+    }
+    _netSplits.setWindow(window);
+  }
+
+
+  /**
+   * Returns how long netsplit QUITs and netjoin JOINs are collected.
+   *
+   * @return Number of milliseconds, 0 if they are not batched.
+   */
+  public final long getNetSplitWindow() {
+    return _netSplits.getWindow();
+  }
+
+
+  /**
+   * Sets the RateLimiter that decides how fast queued lines are sent.
+   * By default a TokenBucketRateLimiter allows a burst of 5 lines and
+   * then one line per second, long lines costing more.
+   *
+   * @param rateLimiter The RateLimiter to use.
+   */
+  public final void setRateLimiter(RateLimiter rateLimiter) {
+    if (rateLimiter == null) {
+      throw new NullPointerException("Cannot use a null RateLimiter");
+    }
+    _rateLimiter = rateLimiter;
+  }
+
+
+  /**
+   * Returns the RateLimiter used for the outgoing message queue.
+   *
+   * @return The RateLimiter.
+   */
+  public final RateLimiter getRateLimiter() {
+    return _rateLimiter;
   }
 
 
@@ -2617,6 +2907,17 @@ public abstract class PircBot implements ReplyConstants {
   }
 
 
+  /**
+   * Gets the outgoing message queue, e.g. to read the size of its
+   * priority lanes or the number of dropped lines.
+   *
+   * @return The outgoing message queue.
+   */
+  public final OutboundQueue getOutgoingQueue() {
+    return _outQueue;
+  }
+
+
   /**
    * Returns the name of the last IRC server the PircBot tried to connect to.
    * This does not imply that the connection attempt to the server was
@@ -2721,6 +3022,9 @@ public abstract class PircBot implements ReplyConstants {
    * trying to send text to an IRC server in a different charset, e.g.
    * "GB2312" for Chinese encoding.  If a PircBot is currently connected
    * to a server, then it must reconnect before this change takes effect.
+   *  <p>
+   * Incoming lines that are valid UTF-8 are always decoded as UTF-8;
+   * this charset is used for all other incoming lines.
    *
    * @since PircBot 1.0.4
    *
@@ -2934,20 +3238,50 @@ public abstract class PircBot implements ReplyConstants {
    * @see #onUserList(String,User[]) onUserList
    */
   public final User[] getUsers(String channel) {
-    channel = channel.toLowerCase(Locale.US);
-    User[] userArray = new User[0];
-    synchronized (_channels) {
-      Hashtable<User, User> users = _channels.get(channel);
-      if (users != null) {
-        userArray = new User[users.size()];
-        Enumeration<User> enumeration = users.elements();
-        for (int i = 0; i < userArray.length; i++) {
-          User user = enumeration.nextElement();
-          userArray[i] = user;
-        }
-      }
+    ChannelUsers users = this.getChannelUsers(channel);
+    if (users == null) {
+      return new User[0];
     }
-    return userArray;
+    return users.toUsers();
+  }
+
+
+  /**
+   * Returns the live index of the users in a channel.  Unlike getUsers,
+   * this does not copy anything: the ChannelUsers is updated in place as
+   * people join, leave and change modes, and may be iterated or queried
+   * by nick at any time.
+   *
+   * @param channel The name of the channel.
+   *
+   * @return The users in the channel, or null if we are not in it.
+   *
+   * @see ChannelUsers
+   */
+  public final ChannelUsers getChannelUsers(String channel) {
+    return _channels.get(channel.toLowerCase(Locale.US));
+  }
+
+
+  /**
+   * Returns the channel membership modes of the server, as announced in
+   * its ISUPPORT PREFIX token.
+   *
+   * @return The prefix modes.
+   */
+  public final PrefixModes getPrefixModes() {
+    return _prefixModes;
+  }
+
+
+  /**
+   * Returns how the server compares nicks, as announced in its ISUPPORT
+   * CASEMAPPING token.
+   *
+   * @return The case mapping.
+   */
+  public final CaseMapping getCaseMapping() {
+    return _caseMapping;
   }
 
 
@@ -2964,15 +3298,26 @@ public abstract class PircBot implements ReplyConstants {
    *         are in.
    */
   public final String[] getChannels() {
-    String[] channels = new String[0];
-    synchronized (_channels) {
-      channels = new String[_channels.size()];
-      Enumeration<String> enumeration = _channels.keys();
-      for (int i = 0; i < channels.length; i++) {
-        channels[i] = enumeration.nextElement();
-      }
+    return _channels.keySet().toArray(new String[0]);
+  }
+
+
+  /**
+   * Returns the channels we share with a user.  This is a lookup in an
+   * index kept by nick, so it does not go through the users of every
+   * channel.
+   *
+   * @param nick The nick of the user, in any case.
+   *
+   * @return A String array with the lower case names of the channels,
+   *         empty if we do not share any channel with the user.
+   */
+  public final String[] getUserChannels(String nick) {
+    Set<String> channels = _userChannels.get(_caseMapping.toLowerCase(nick));
+    if (channels == null) {
+      return new String[0];
     }
-    return channels;
+    return channels.toArray(new String[0]);
   }
 
 
@@ -2983,7 +3328,8 @@ public abstract class PircBot implements ReplyConstants {
    * with an existing program.
    *  <p>
    * Each PircBot runs its own threads for dispatching messages from its
-   * outgoing message queue and receiving messages from the server.
+   * outgoing message queue and receiving messages from the server,
+   * unless it uses a SelectorEngine.
    * Calling dispose() ensures that these threads are
    * stopped, thus freeing up system resources and allowing the PircBot
    * object to be garbage collected if there are no other references to
@@ -3000,40 +3346,37 @@ public abstract class PircBot implements ReplyConstants {
     if (_outputThread != null) {
       _outputThread.interrupt();
     }
-    if (_inputThread != null) {
-      _inputThread.dispose();
+    if (_connection != null) {
+      _connection.dispose();
     }
   }
 
 
   /**
    * Add a user to the specified channel in our memory.
-   * Overwrite the existing entry if it exists.
-   */
-  private final void addUser(String channel, User user) {
-    channel = channel.toLowerCase();
-    synchronized (_channels) {
-      Hashtable<User, User> users = _channels.get(channel);
-      if (users == null) {
-        users = new Hashtable<User, User>();
-        _channels.put(channel, users);
-      }
-      users.put(user, user);
+   * Overwrite the existing modes if the user is already known.
+   */
+  private final void addUser(String channel, String nick, int modes) {
+    channel = channel.toLowerCase(Locale.US);
+    ChannelUsers users = _channels.get(channel);
+    if (users == null) {
+      users = new ChannelUsers(_caseMapping, _prefixModes);
+      _channels.put(channel, users);
     }
+    users.add(nick, modes);
+    this.addUserChannel(nick, channel);
   }
 
 
   /**
    * Remove a user from the specified channel in our memory.
    */
-  private final User removeUser(String channel, String nick) {
-    channel = channel.toLowerCase();
-    User user = new User("", nick);
-    synchronized (_channels) {
-      Hashtable<User, User> users = _channels.get(channel);
-      if (users != null) {
-        return users.remove(user);
-      }
+  private final ChannelMember removeUser(String channel, String nick) {
+    channel = channel.toLowerCase(Locale.US);
+    ChannelUsers users = _channels.get(channel);
+    if (users != null) {
+      this.removeUserChannel(nick, channel);
+      return users.remove(nick);
     }
     return null;
   }
@@ -3043,11 +3386,14 @@ public abstract class PircBot implements ReplyConstants {
    * Remove a user from all channels in our memory.
    */
   private final void removeUser(String nick) {
-    synchronized (_channels) {
-      Enumeration<String> enumeration = _channels.keys();
-      while (enumeration.hasMoreElements()) {
-        String channel = enumeration.nextElement();
-        this.removeUser(channel, nick);
+    Set<String> channels = _userChannels.remove(_caseMapping.toLowerCase(nick));
+    if (channels == null) {
+      return;
+    }
+    for (String channel : channels) {
+      ChannelUsers users = _channels.get(channel);
+      if (users != null) {
+        users.remove(nick);
       }
     }
   }
@@ -3057,15 +3403,15 @@ public abstract class PircBot implements ReplyConstants {
    * Rename a user if they appear in any of the channels we know about.
    */
   private final void renameUser(String oldNick, String newNick) {
-    synchronized (_channels) {
-      Enumeration<String> enumeration = _channels.keys();
-      while (enumeration.hasMoreElements()) {
-        String channel = enumeration.nextElement();
-        User user = this.removeUser(channel, oldNick);
-        if (user != null) {
-          user = new User(user.getPrefix(), newNick);
-          this.addUser(channel, user);
-        }
+    Set<String> channels = _userChannels.remove(_caseMapping.toLowerCase(oldNick));
+    if (channels == null) {
+      return;
+    }
+    _userChannels.put(_caseMapping.toLowerCase(newNick), channels);
+    for (String channel : channels) {
+      ChannelUsers users = _channels.get(channel);
+      if (users != null) {
+        users.rename(oldNick, newNick);
       }
     }
   }
@@ -3076,8 +3422,11 @@ public abstract class PircBot implements ReplyConstants {
    */
   private final void removeChannel(String channel) {
     channel = channel.toLowerCase(Locale.US);
-    synchronized (_channels) {
-      _channels.remove(channel);
+    ChannelUsers users = _channels.remove(channel);
+    if (users != null) {
+      for (ChannelMember member : users) {
+        this.removeUserChannel(member.getNick(), channel);
+      }
     }
   }
 
@@ -3086,67 +3435,60 @@ public abstract class PircBot implements ReplyConstants {
    * Removes all channels from our memory of users.
    */
   private final void removeAllChannels() {
-    synchronized(_channels) {
-      _channels = new Hashtable<String, Hashtable<User, User>>();
+    _channels.clear();
+    _userChannels.clear();
+  }
+
+
+  /**
+   * Gives a user a membership mode in a channel or takes it away.
+   */
+  private final void updateUser(String channel, char mode, boolean set, String nick) {
+    channel = channel.toLowerCase(Locale.US);
+    ChannelUsers users = _channels.get(channel);
+    if (users != null) {
+      users.setMode(nick, mode, set);
+      // The user is added if we did not know them yet.
+      this.addUserChannel(nick, channel);
     }
   }
 
 
-  private final void updateUser(String channel, int userMode, String nick) {
-    channel = channel.toLowerCase();
-    synchronized (_channels) {
-      Hashtable<User, User> users = _channels.get(channel);
-      User newUser = null;
-      if (users != null) {
-        Enumeration<User> enumeration = users.elements();
-        while(enumeration.hasMoreElements()) {
-          User userObj = enumeration.nextElement();
-          if (userObj.getNick().equalsIgnoreCase(nick)) {
-            if (userMode == OP_ADD) {
-              if (userObj.hasVoice()) {
-                newUser = new User("@+", nick);
-              } else {
-                newUser = new User("@", nick);
-              }
-            } else if (userMode == OP_REMOVE) {
-              if(userObj.hasVoice()) {
-                newUser = new User("+", nick);
-              } else {
-                newUser = new User("", nick);
-              }
-            } else if (userMode == VOICE_ADD) {
-              if(userObj.isOp()) {
-                newUser = new User("@+", nick);
-              } else {
-                newUser = new User("+", nick);
-              }
-            } else if (userMode == VOICE_REMOVE) {
-              if(userObj.isOp()) {
-                newUser = new User("@", nick);
-              } else {
-                newUser = new User("", nick);
-              }
-            }
-          }
-        }
-      }
-      if (newUser != null) {
-        users.put(newUser, newUser);
-      } else {
-        // just in case ...
-        newUser = new User("", nick);
-        users.put(newUser, newUser);
+  /**
+   * Remembers that a user is in a channel, in the index by nick.
+   */
+  private final void addUserChannel(String nick, String channel) {
+    String key = _caseMapping.toLowerCase(nick);
+    Set<String> channels = _userChannels.get(key);
+    if (channels == null) {
+      channels = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+      _userChannels.put(key, channels);
+    }
+    channels.add(channel);
+  }
+
+
+  /**
+   * Forgets that a user is in a channel, in the index by nick.
+   */
+  private final void removeUserChannel(String nick, String channel) {
+    String key = _caseMapping.toLowerCase(nick);
+    Set<String> channels = _userChannels.get(key);
+    if (channels != null) {
+      channels.remove(channel);
+      if (channels.isEmpty()) {
+        _userChannels.remove(key);
       }
     }
   }
 
 
   // Connection stuff.
-  private InputThread _inputThread = null;
+  private Connection _connection = null;
+  private SelectorEngine _engine = null;
   private OutputThread _outputThread = null;
   private String _charset = null;
   private InetAddress _inetAddress = null;
-  private Socket _socket = null;
 
   // Details about the last server that we connected to.
   private String _server = null;
@@ -3154,16 +3496,31 @@ public abstract class PircBot implements ReplyConstants {
   private String _password = null;
 
   // Outgoing message stuff.
-  private final Queue _outQueue = new Queue();
+  private final OutboundQueue _outQueue = new OutboundQueue();
   private long _messageDelay = 1000;
+  private volatile int _maxBatchSize = 16;
+  private volatile long _maxBatchLatency = 0;
+  private volatile RateLimiter _rateLimiter = new TokenBucketRateLimiter(5, 1000, 512);
 
   // SASL
   private String saslUsername;
   private String saslPassword;
 
-  // A Hashtable of channels that points to a selfreferential Hashtable of
-  // User objects (used to remember which users are in which channels).
-  private Hashtable<String, Hashtable<User, User>> _channels = new Hashtable<String, Hashtable<User, User>>();
+  // The users of every channel we are in, keyed by lower case channel name.
+  private final ConcurrentHashMap<String, ChannelUsers> _channels = new ConcurrentHashMap<String, ChannelUsers>();
+
+  // The lower case names of the channels of every user we share a
+  // channel with, keyed by case mapped nick.
+  private final ConcurrentHashMap<String, Set<String>> _userChannels = new ConcurrentHashMap<String, Set<String>>();
+
+  // What the server announced in ISUPPORT.
+  private volatile PrefixModes _prefixModes = PrefixModes.DEFAULT;
+  private volatile CaseMapping _caseMapping = CaseMapping.RFC1459;
+
+  // Batches the QUITs and JOINs of netsplits.
+  private final NetSplitTracker _netSplits = new NetSplitTracker(this);
+  // Held while a line is handled or netsplit batches are delivered.
+  private final Object _lineLock = new Object();
 
   // A Hashtable to temporarily store channel topics when we join them
   // until we find out who set that topic.
@@ -3189,6 +3546,23 @@ public abstract class PircBot implements ReplyConstants {
 
   private final String _channelPrefixes = "#&+!";
 
+  // Every thread that hands lines to handleLine gets its own reusable parser.
+  private static final ThreadLocal<IrcLine> _lineParsers = new ThreadLocal<IrcLine>() {
+    @Override
+    protected IrcLine initialValue() {
+      return new IrcLine();
+    }
+  };
+
+  // Parser for the IRCv3 server-time tag, shared by all lines of this bot.
+  private final SimpleDateFormat _serverTimeFormat = createServerTimeFormat();
+
+  private static SimpleDateFormat createServerTimeFormat() {
+    SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+    sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+    return sdf;
+  }
+
 
 
   // XXX: Better TLS support
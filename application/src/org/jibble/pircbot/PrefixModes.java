@@ -0,0 +1,164 @@
+package org.jibble.pircbot;
+
+/**
+ * The channel membership modes a server supports and the nick prefixes
+ * that stand for them, as announced in the ISUPPORT PREFIX token, e.g.
+ * "(qaohv)~&@%+".
+ *  <p>
+ * Every mode gets one bit of an int, the highest ranked mode the lowest
+ * bit, so the modes of a channel member fit in a single bitset.  Lookups
+ * in both directions are table based and toPrefix() returns shared
+ * Strings, so none of the methods allocate.  Instances are immutable.
+ */
+public final class PrefixModes {
+
+  /**
+   * The modes assumed until the server announces its own.  This covers
+   * the prefixes of all common servers, so NAMES replies are understood
+   * even if no PREFIX token is sent.
+   */
+  public static final PrefixModes DEFAULT = parse("(qaohv)~&@%+");
+
+  /**
+   * The largest number of modes kept; more do not fit into the bitset.
+   */
+  public static final int MAX_MODES = 31;
+
+  // Up to this many modes every prefix String is built up front.
+  private static final int MAX_CACHED_MODES = 8;
+
+
+  private PrefixModes(String modes, String prefixes) {
+    _modes = modes;
+    _prefixes = prefixes;
+    for (int i = 0; i < modes.length(); i++) {
+      _modeBits[modes.charAt(i) & 0x7f] = 1 << i;
+      _prefixBits[prefixes.charAt(i) & 0x7f] = 1 << i;
+    }
+    if (modes.length() <= MAX_CACHED_MODES) {
+      _cache = new String[1 << modes.length()];
+      for (int bits = 0; bits < _cache.length; bits++) {
+        _cache[bits] = buildPrefix(bits);
+      }
+    } else {
+      _cache = null;
+    }
+  }
+
+
+  /**
+   * Parses the value of an ISUPPORT PREFIX token.
+   *
+   * @param value The value, e.g. "(ov)@+".
+   *
+   * @return The prefix modes, or null if the value is malformed.
+   */
+  public static PrefixModes parse(String value) {
+    if (value == null || !value.startsWith("(")) {
+      return null;
+    }
+    int close = value.indexOf(')');
+    if (close < 0) {
+      return null;
+    }
+    String modes = value.substring(1, close);
+    String prefixes = value.substring(close + 1);
+    if (modes.length() != prefixes.length() || modes.length() > MAX_MODES) {
+      return null;
+    }
+    for (int i = 0; i < modes.length(); i++) {
+      if (modes.charAt(i) > 0x7f || prefixes.charAt(i) > 0x7f) {
+        return null;
+      }
+    }
+    return new PrefixModes(modes, prefixes);
+  }
+
+
+  /**
+   * Returns the bit of a membership mode.
+   *
+   * @param mode The mode letter, e.g. 'o'.
+   *
+   * @return The bit, or 0 if the mode is not a membership mode.
+   */
+  public int getModeBit(char mode) {
+    return mode > 0x7f ? 0 : _modeBits[mode];
+  }
+
+
+  /**
+   * Returns the bit of a nick prefix.
+   *
+   * @param prefix The prefix, e.g. '@'.
+   *
+   * @return The bit, or 0 if the character is not a prefix.
+   */
+  public int getPrefixBit(char prefix) {
+    return prefix > 0x7f ? 0 : _prefixBits[prefix];
+  }
+
+
+  /**
+   * Returns the prefixes of a set of modes, highest ranked first.
+   *
+   * @param bits The mode bits.
+   *
+   * @return The prefixes, e.g. "@+", or an empty String.
+   */
+  public String toPrefix(int bits) {
+    if (_cache != null) {
+      return _cache[bits & (_cache.length - 1)];
+    }
+    return buildPrefix(bits);
+  }
+
+
+  /**
+   * Returns the mode letters in rank order, e.g. "ov".
+   *
+   * @return The mode letters.
+   */
+  public String getModes() {
+    return _modes;
+  }
+
+
+  /**
+   * Returns the prefixes in rank order, e.g. "@+".
+   *
+   * @return The prefixes.
+   */
+  public String getPrefixes() {
+    return _prefixes;
+  }
+
+
+  /**
+   * Returns the PREFIX token value this was parsed from.
+   *
+   * @return The value, e.g. "(ov)@+".
+   */
+  public String toString() {
+    return "(" + _modes + ")" + _prefixes;
+  }
+
+
+  private String buildPrefix(int bits) {
+    StringBuilder prefix = new StringBuilder();
+    for (int i = 0; i < _prefixes.length(); i++) {
+      if ((bits & (1 << i)) != 0) {
+        prefix.append(_prefixes.charAt(i));
+      }
+    }
+    return prefix.toString();
+  }
+
+
+  private final String _modes;
+  private final String _prefixes;
+  private final int[] _modeBits = new int[128];
+  private final int[] _prefixBits = new int[128];
+  private final String[] _cache;
+
+}
@@ -0,0 +1,32 @@
+package org.jibble.pircbot;
+
+/**
+ * Decides how long the OutputThread has to wait before it may send the
+ * next line without being disconnected for excess flood.
+ *  <p>
+ * A RateLimiter is charged by the OutputThread of one connection, but
+ * reset() is called by the thread that (re)connects, so implementations
+ * must be thread safe.
+ *
+ * @see TokenBucketRateLimiter
+ */
+public interface RateLimiter {
+
+  /**
+   * Charges the cost of a line that is about to be sent.
+   *
+   * @param bytes The length of the line, including CR LF.
+   * @param now The current time in milliseconds.
+   *
+   * @return The number of milliseconds to wait before sending the line,
+   *         0 if it may be sent right away.
+   */
+  public long reserve(int bytes, long now);
+
+
+  /**
+   * Forgets all charged lines, e.g. after reconnecting.
+   */
+  public void reset();
+
+}
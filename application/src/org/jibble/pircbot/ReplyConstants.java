@@ -78,6 +78,7 @@ public interface ReplyConstants {
 
 
   // Command Responses.
+  public static final int RPL_ISUPPORT = 5;
   public static final int RPL_TRACELINK = 200;
   public static final int RPL_TRACECONNECTING = 201;
   public static final int RPL_TRACEHANDSHAKE = 202;
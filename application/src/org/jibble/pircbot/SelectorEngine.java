@@ -0,0 +1,724 @@
+package org.jibble.pircbot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+
+import android.util.Log;
+
+/**
+ * Serves many PircBot connections with two threads in total.
+ *  <p>
+ * Without an engine every PircBot runs an InputThread and an
+ * OutputThread.  A PircBot that was given a SelectorEngine with
+ * setSelectorEngine() instead registers its socket with the engine: one
+ * selector thread reads, writes, runs TLS through an SSLEngine and
+ * drains the outgoing message queues (honouring each RateLimiter), and
+ * one dispatch thread calls handleLine() for the lines received.
+ *  <p>
+ * Because all connections share the dispatch thread, a callback that
+ * blocks holds up the lines of every other server until it returns.
+ */
+public class SelectorEngine {
+
+  private static final String TAG = "SelectorEngine";
+
+  /**
+   * Send a PING after this long without hearing from the server, like
+   * the read timeout of the InputThread.
+   */
+  private static final long PING_INTERVAL = 5 * 60 * 1000;
+
+  private static final int PLAIN_BUFFER_SIZE = 16 * 1024;
+
+  private static SelectorEngine _shared = null;
+
+
+  /**
+   * Returns the engine shared by all PircBots of this process.  Its
+   * threads are started when the first connection is made and are
+   * daemon threads.
+   *
+   * @return The shared SelectorEngine.
+   */
+  public static synchronized SelectorEngine getShared() {
+    if (_shared == null) {
+      _shared = new SelectorEngine();
+    }
+    return _shared;
+  }
+
+
+  /**
+   * Constructs a SelectorEngine.  No thread is started until the first
+   * connection is opened.
+   */
+  public SelectorEngine() {
+  }
+
+
+  /**
+   * Returns the number of connections currently served.
+   *
+   * @return The number of open connections.
+   */
+  public int getConnectionCount() {
+    return _connectionCount;
+  }
+
+
+  /**
+   * Opens a connection for a PircBot.  The TCP connect and the TLS
+   * handshake happen on the calling thread's time: this method blocks
+   * until both are done.
+   */
+  Channel open(PircBot bot, String hostname, int port, SSLContext sslContext,
+               Charset charset, Charset fallback) throws IOException {
+    start();
+
+    SocketChannel socketChannel = SocketChannel.open();
+    try {
+      socketChannel.socket().connect(new InetSocketAddress(hostname, port));
+      socketChannel.configureBlocking(false);
+    } catch (IOException e) {
+      socketChannel.close();
+      throw e;
+    }
+
+    SSLEngine sslEngine = null;
+    if (sslContext != null) {
+      sslEngine = sslContext.createSSLEngine(hostname, port);
+      sslEngine.setUseClientMode(true);
+    }
+
+    Channel channel = new Channel(bot, socketChannel, sslEngine, charset, fallback);
+    wake(channel);
+    channel.awaitReady();
+    return channel;
+  }
+
+
+  private synchronized void start() throws IOException {
+    if (_selector != null) {
+      return;
+    }
+    _selector = Selector.open();
+    _dispatcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, TAG + "-Dispatch");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    Thread selectorThread = new Thread(TAG + "-Selector") {
+      public void run() {
+        loop();
+      }
+    };
+    selectorThread.setDaemon(true);
+    _selectorThread = selectorThread;
+    selectorThread.start();
+  }
+
+
+  /**
+   * Lets the selector thread look at a channel as soon as possible.
+   */
+  private void wake(Channel channel) {
+    _pending.add(channel);
+    if (Thread.currentThread() != _selectorThread) {
+      _selector.wakeup();
+    }
+  }
+
+
+  private void loop() {
+    ArrayList<Channel> channels = new ArrayList<Channel>();
+    while (true) {
+      try {
+        long now = System.currentTimeMillis();
+        long timeout = PING_INTERVAL;
+        for (int i = 0; i < channels.size(); i++) {
+          timeout = Math.min(timeout, channels.get(i).getTimeout(now));
+        }
+        _selector.select(Math.max(1, timeout));
+
+        Channel channel;
+        while ((channel = _pending.poll()) != null) {
+          if (channel._key == null && !channel._closed) {
+            channel.register();
+            channels.add(channel);
+          }
+        }
+
+        Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (key.isValid() && key.isReadable()) {
+            ((Channel) key.attachment()).read();
+          }
+        }
+
+        now = System.currentTimeMillis();
+        for (int i = channels.size() - 1; i >= 0; i--) {
+          channel = channels.get(i);
+          channel.pump(now);
+          if (channel._closed) {
+            channels.remove(i);
+          }
+        }
+        _connectionCount = channels.size();
+      } catch (Throwable t) {
+        // Never let one connection take down the others.
+        Log.e(TAG, "Selector loop failed", t);
+      }
+    }
+  }
+
+
+  /**
+   * One connection served by the engine.
+   */
+  class Channel implements Connection {
+
+    Channel(PircBot bot, SocketChannel socketChannel, SSLEngine sslEngine,
+            Charset charset, Charset fallback) {
+      _bot = bot;
+      _socketChannel = socketChannel;
+      _ssl = sslEngine;
+      _reader = new LineReader(fallback);
+      _writer = new LineWriter(_output, charset);
+      _queue = bot.getOutgoingQueue();
+      _lastRead = _lastPing = System.currentTimeMillis();
+
+      int packetSize = sslEngine != null ? sslEngine.getSession().getPacketBufferSize() : PLAIN_BUFFER_SIZE;
+      int appSize = sslEngine != null ? sslEngine.getSession().getApplicationBufferSize() : PLAIN_BUFFER_SIZE;
+      _netIn = ByteBuffer.allocate(packetSize);
+      _netOut = ByteBuffer.allocate(packetSize);
+      _appIn = sslEngine != null ? ByteBuffer.allocate(appSize) : _netIn;
+      _plainOut = ByteBuffer.allocate(PLAIN_BUFFER_SIZE);
+    }
+
+
+    // --- Selector thread ------------------------------------------------
+
+    void register() {
+      try {
+        _key = _socketChannel.register(_selector, SelectionKey.OP_READ, this);
+        if (_ssl != null) {
+          _ssl.beginHandshake();
+        } else {
+          setReady();
+        }
+        _queue.setListener(new Runnable() {
+          public void run() {
+            if (_ready) {
+              wake(Channel.this);
+            }
+          }
+        });
+      } catch (IOException e) {
+        fail(e);
+      }
+    }
+
+
+    /**
+     * Returns how long the selector may sleep before this channel needs
+     * attention again.
+     */
+    long getTimeout(long now) {
+      long timeout = Math.max(_lastRead, _lastPing) + PING_INTERVAL - now;
+      if (_held != null) {
+        timeout = Math.min(timeout, _heldUntil - now);
+      }
+      return timeout;
+    }
+
+
+    void read() {
+      try {
+        int count = _socketChannel.read(_netIn);
+        if (count < 0) {
+          close(true);
+          return;
+        }
+        if (count > 0) {
+          _lastRead = System.currentTimeMillis();
+        }
+        if (_ssl != null) {
+          unwrap();
+        } else {
+          deliver();
+        }
+      } catch (IOException e) {
+        fail(e);
+      }
+    }
+
+
+    /**
+     * Turns the received application bytes into lines and hands them to
+     * the dispatch thread.
+     */
+    private void deliver() {
+      ArrayList<String> lines = null;
+      _appIn.flip();
+      while (true) {
+        _reader.feed(_appIn);
+        String line;
+        while ((line = _reader.pollLine()) != null) {
+          synchronized (this) {
+            if (_awaitingFirstLine) {
+              _firstLine = line;
+              _awaitingFirstLine = false;
+              notifyAll();
+              continue;
+            }
+          }
+          if (lines == null) {
+            lines = new ArrayList<String>();
+          }
+          lines.add(line);
+        }
+        if (!_appIn.hasRemaining()) {
+          break;
+        }
+      }
+      _appIn.clear();
+
+      if (lines != null) {
+        final ArrayList<String> batch = lines;
+        _dispatcher.execute(new Runnable() {
+          public void run() {
+            for (int i = 0; i < batch.size(); i++) {
+              try {
+                _bot.dispatchLine(batch.get(i));
+              } catch (Throwable t) {
+                Log.e(TAG, "Failed to handle line", t);
+              }
+            }
+          }
+        });
+      }
+    }
+
+
+    private void unwrap() throws IOException {
+      _netIn.flip();
+      while (true) {
+        SSLEngineResult result = _ssl.unwrap(_netIn, _appIn);
+        runDelegatedTasks();
+
+        switch (result.getStatus()) {
+          case BUFFER_OVERFLOW:
+            // Make room by handing out the lines we have.
+            deliver();
+            continue;
+          case CLOSED:
+            _netIn.compact();
+            deliver();
+            close(true);
+            return;
+          default:
+            break;
+        }
+
+        if (!_ready && isHandshakeDone()) {
+          setReady();
+        }
+        if (_ssl.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+          wrap();
+        }
+        if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW
+            || (result.bytesConsumed() == 0 && result.bytesProduced() == 0)) {
+          break;
+        }
+      }
+      _netIn.compact();
+      if (_appIn.position() > 0) {
+        deliver();
+      }
+    }
+
+
+    private void runDelegatedTasks() {
+      Runnable task;
+      while ((task = _ssl.getDelegatedTask()) != null) {
+        task.run();
+      }
+    }
+
+
+    private boolean isHandshakeDone() {
+      return _ssl.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
+    }
+
+
+    /**
+     * Encrypts whatever the handshake or the pending plain bytes need
+     * into the network buffer.
+     */
+    private void wrap() throws IOException {
+      synchronized (this) {
+        _plainOut.flip();
+        try {
+          while (true) {
+            boolean handshaking = _ssl.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP;
+            if (!handshaking && (!_ready || !_plainOut.hasRemaining())) {
+              break;
+            }
+            SSLEngineResult result = _ssl.wrap(_plainOut, _netOut);
+            runDelegatedTasks();
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+              if (!writeNet()) {
+                // The socket is full; try again when it drains.
+                break;
+              }
+              continue;
+            }
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+              break;
+            }
+            if (!_ready && isHandshakeDone()) {
+              setReady();
+            }
+            if (result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+              break;
+            }
+          }
+        } finally {
+          _plainOut.compact();
+        }
+      }
+      writeNet();
+    }
+
+
+    /**
+     * Writes the network buffer to the socket.
+     *
+     * @return True if everything was written.
+     */
+    private boolean writeNet() throws IOException {
+      _netOut.flip();
+      _socketChannel.write(_netOut);
+      boolean done = !_netOut.hasRemaining();
+      _netOut.compact();
+      return done;
+    }
+
+
+    /**
+     * Sends queued lines the RateLimiter allows, writes pending bytes and
+     * pings an idle server.
+     */
+    void pump(long now) {
+      if (_closed) {
+        return;
+      }
+      if (_closeRequested) {
+        close(!_disposed);
+        return;
+      }
+      try {
+        if (_ready) {
+          drainQueue(now);
+          if (now - Math.max(_lastRead, _lastPing) >= PING_INTERVAL) {
+            _lastPing = now;
+            sendRawLine("PING " + (now / 1000));
+          }
+        }
+
+        if (_ssl != null) {
+          wrap();
+        } else {
+          synchronized (this) {
+            _plainOut.flip();
+            _socketChannel.write(_plainOut);
+            _plainOut.compact();
+          }
+        }
+
+        boolean pending;
+        synchronized (this) {
+          pending = _plainOut.position() > 0 || _netOut.position() > 0;
+        }
+        int ops = SelectionKey.OP_READ | (pending ? SelectionKey.OP_WRITE : 0);
+        if (_key.interestOps() != ops) {
+          _key.interestOps(ops);
+        }
+      } catch (IOException e) {
+        fail(e);
+      }
+    }
+
+
+    private void drainQueue(long now) {
+      RateLimiter limiter = _bot.getRateLimiter();
+      int maxBatch = _bot.getMaxBatchSize();
+      int batched = 0;
+
+      if (_held != null) {
+        if (now < _heldUntil) {
+          return;
+        }
+        OutputThread.appendRawLine(_bot, _writer, _held);
+        _held = null;
+        batched++;
+      }
+
+      String line;
+      while ((line = _queue.poll(0)) != null) {
+        long wait = limiter.reserve(line.length() + 2, now);
+        if (wait > 0) {
+          _held = line;
+          _heldUntil = now + wait;
+          break;
+        }
+        OutputThread.appendRawLine(_bot, _writer, line);
+        batched++;
+        if (batched >= maxBatch) {
+          OutputThread.flush(_writer);
+          batched = 0;
+        }
+      }
+      if (batched > 0) {
+        OutputThread.flush(_writer);
+      }
+    }
+
+
+    private void fail(IOException e) {
+      synchronized (this) {
+        _failure = e;
+      }
+      close(!_disposed);
+    }
+
+
+    private void close(boolean notify) {
+      if (_closed) {
+        return;
+      }
+      if (_key != null) {
+        _key.cancel();
+      }
+      try {
+        _socketChannel.close();
+      } catch (IOException e) {
+        // Just assume the socket was already closed.
+      }
+      _queue.setListener(null);
+
+      synchronized (this) {
+        _closed = true;
+        _connected = false;
+        notifyAll();
+      }
+
+      if (notify && !_disposed) {
+        _dispatcher.execute(new Runnable() {
+          public void run() {
+            _bot.onDisconnect();
+          }
+        });
+      }
+    }
+
+
+    private synchronized void setReady() {
+      _ready = true;
+      notifyAll();
+    }
+
+
+    // --- Connecting thread ----------------------------------------------
+
+    /**
+     * Blocks until the TLS handshake is done.
+     */
+    synchronized void awaitReady() throws IOException {
+      long deadline = System.currentTimeMillis() + PING_INTERVAL;
+      while (!_ready && !_closed) {
+        long left = deadline - System.currentTimeMillis();
+        if (left <= 0) {
+          break;
+        }
+        try {
+          wait(left);
+        } catch (InterruptedException e) {
+          break;
+        }
+      }
+      if (!_ready) {
+        dispose();
+        if (_failure instanceof SSLException) {
+          throw (SSLException) _failure;
+        }
+        throw new IOException("Could not connect to server", _failure);
+      }
+    }
+
+
+    /**
+     * Blocks until the server sent its first line.  That line is not
+     * dispatched, the connecting thread handles it itself.
+     *
+     * @return The first line, or null if the connection closed first.
+     */
+    synchronized String readFirstLine() {
+      long deadline = System.currentTimeMillis() + PING_INTERVAL;
+      while (_awaitingFirstLine && !_closed) {
+        long left = deadline - System.currentTimeMillis();
+        if (left <= 0) {
+          break;
+        }
+        try {
+          wait(left);
+        } catch (InterruptedException e) {
+          break;
+        }
+      }
+      _awaitingFirstLine = false;
+      return _firstLine;
+    }
+
+
+    // --- Connection -------------------------------------------------------
+
+    public void sendRawLine(String line) {
+      OutputThread.sendRawLine(_bot, _writer, line);
+    }
+
+
+    public void sendRawLines(String[] lines) {
+      OutputThread.sendRawLines(_bot, _writer, lines);
+    }
+
+
+    public void appendRawLine(String line) {
+      OutputThread.appendRawLine(_bot, _writer, line);
+    }
+
+
+    public void flush() {
+      OutputThread.flush(_writer);
+    }
+
+
+    public boolean isConnected() {
+      return _connected;
+    }
+
+
+    public InetAddress getLocalAddress() {
+      return _socketChannel.socket().getLocalAddress();
+    }
+
+
+    public void close() {
+      _closeRequested = true;
+      wake(this);
+    }
+
+
+    public void dispose() {
+      _disposed = true;
+      close();
+    }
+
+
+    /**
+     * Collects the bytes of the LineWriter for the selector thread.
+     */
+    private synchronized void append(byte[] bytes, int offset, int length) throws IOException {
+      if (_closed) {
+        throw new IOException("Connection closed");
+      }
+      if (_plainOut.remaining() < length) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(_plainOut.capacity() * 2, _plainOut.position() + length));
+        _plainOut.flip();
+        bigger.put(_plainOut);
+        _plainOut = bigger;
+      }
+      _plainOut.put(bytes, offset, length);
+    }
+
+
+    private final OutputStream _output = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        append(new byte[] { (byte) b }, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] bytes, int offset, int length) throws IOException {
+        append(bytes, offset, length);
+      }
+
+      @Override
+      public void flush() {
+        // The selector thread writes the bytes.
+        wake(Channel.this);
+      }
+    };
+
+
+    private final PircBot _bot;
+    private final SocketChannel _socketChannel;
+    private final SSLEngine _ssl;
+    private final LineReader _reader;
+    private final LineWriter _writer;
+    private final OutboundQueue _queue;
+
+    private final ByteBuffer _netIn;
+    private final ByteBuffer _netOut;
+    private final ByteBuffer _appIn;
+    private ByteBuffer _plainOut;
+
+    private SelectionKey _key = null;
+    private volatile boolean _ready = false;
+    private volatile boolean _connected = true;
+    private volatile boolean _closed = false;
+    private volatile boolean _closeRequested = false;
+    private volatile boolean _disposed = false;
+    private IOException _failure = null;
+
+    private boolean _awaitingFirstLine = true;
+    private String _firstLine = null;
+
+    private String _held = null;
+    private long _heldUntil = 0;
+    private long _lastRead;
+    private long _lastPing;
+
+  }
+
+
+  // Set once by start(), but read by wake() on any thread
+  private volatile Selector _selector = null;
+  private volatile Thread _selectorThread = null;
+  private ExecutorService _dispatcher = null;
+  private final ConcurrentLinkedQueue<Channel> _pending = new ConcurrentLinkedQueue<Channel>();
+  private volatile int _connectionCount = 0;
+
+}
@@ -0,0 +1,75 @@
+package org.jibble.pircbot;
+
+/**
+ * The penalty model most ircds use for flood protection, expressed as a
+ * token bucket.
+ *  <p>
+ * The server keeps a clock per client.  Every line advances the clock by
+ * a fixed cost plus a cost per byte; the clock never falls behind real
+ * time.  As long as the clock is less than the burst window ahead of
+ * real time the line is accepted, otherwise the client is killed for
+ * excess flood.  Mirroring this here means an idle connection can send a
+ * whole burst at once, while a long paste drains at exactly the rate the
+ * server tolerates.
+ */
+public class TokenBucketRateLimiter implements RateLimiter {
+
+  /**
+   * Constructs a TokenBucketRateLimiter.
+   *
+   * @param burst The number of short lines that may be sent at once.
+   * @param interval The cost of one line in milliseconds; a full bucket
+   *                 refills one line per interval.
+   * @param bytesPerInterval Every this many bytes of a line cost one more
+   *                         interval, 0 to charge per line only.
+   */
+  public TokenBucketRateLimiter(int burst, long interval, int bytesPerInterval) {
+    if (burst < 1 || interval < 0 || bytesPerInterval < 0) {
+      throw new IllegalArgumentException("Invalid rate limit");
+    }
+    _window = burst * interval;
+    _interval = interval;
+    _bytesPerInterval = bytesPerInterval;
+  }
+
+
+  public synchronized long reserve(int bytes, long now) {
+    long cost = _interval;
+    if (_bytesPerInterval > 0) {
+      cost += _interval * bytes / _bytesPerInterval;
+    }
+
+    if (_clock < now) {
+      _clock = now;
+    }
+    _clock += cost;
+
+    long wait = _clock - now - _window;
+    return wait > 0 ? wait : 0;
+  }
+
+
+  public synchronized void reset() {
+    _clock = 0;
+  }
+
+
+  /**
+   * Returns how many milliseconds the penalty clock is ahead of the given
+   * time, i.e. how long an idle connection needs to be able to burst again.
+   *
+   * @param now The current time in milliseconds.
+   *
+   * @return The backlog in milliseconds.
+   */
+  public synchronized long getBacklog(long now) {
+    return _clock > now ? _clock - now : 0;
+  }
+
+
+  private final long _window;
+  private final long _interval;
+  private final int _bytesPerInterval;
+  private long _clock = 0;
+
+}
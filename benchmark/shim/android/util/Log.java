@@ -0,0 +1,19 @@
+package android.util;
+
+/**
+ * Minimal stand-in for android.util.Log so the protocol classes can be
+ * loaded on a plain JVM.  Everything is dropped; benchmarks should not
+ * measure logging.
+ */
+public final class Log {
+  private Log() {}
+
+  public static int v(String tag, String msg) { return 0; }
+  public static int d(String tag, String msg) { return 0; }
+  public static int i(String tag, String msg) { return 0; }
+  public static int w(String tag, String msg) { return 0; }
+  public static int e(String tag, String msg) { return 0; }
+  public static int d(String tag, String msg, Throwable tr) { return 0; }
+  public static int w(String tag, String msg, Throwable tr) { return 0; }
+  public static int e(String tag, String msg, Throwable tr) { return 0; }
+}
@@ -0,0 +1,99 @@
+package indrora.atomic.benchmark;
+
+import java.util.Date;
+
+import org.jibble.pircbot.PircBot;
+import org.jibble.pircbot.User;
+
+/**
+ * A PircBot that is never connected.  Lines are fed straight into
+ * handleLine and every callback only bumps a counter, so what gets
+ * measured is the parsing, dispatch and user bookkeeping in PircBot.
+ */
+public class BenchBot extends PircBot {
+  private int events = 0;
+
+  public BenchBot() {
+    setName("AtomicBench");
+    // A 433 in a recorded corpus would otherwise try to close the socket.
+    setAutoNickChange(true);
+  }
+
+  /**
+   * Hand a raw line to the bot as if the InputThread had read it.
+   *
+   * @return The number of callbacks seen so far
+   */
+  public int feed(String line) {
+    try {
+      handleLine(line);
+    } catch (Exception e) {
+      // The InputThread swallows these too.
+    }
+    return events;
+  }
+
+  public int getEvents() {
+    return events;
+  }
+
+  @Override
+  protected void onMessage(Date evDate, String channel, String sender, String login, String hostname, String message) {
+    events++;
+  }
+
+  @Override
+  protected void onPrivateMessage(Date evDate, String sender, String login, String hostname, String target, String message) {
+    events++;
+  }
+
+  @Override
+  protected void onAction(Date messageDate, String sender, String login, String hostname, String target, String action) {
+    events++;
+  }
+
+  @Override
+  protected void onNotice(String sourceNick, String sourceLogin, String sourceHostname, String target, String notice) {
+    events++;
+  }
+
+  @Override
+  protected void onJoin(String channel, String sender, String login, String hostname) {
+    events++;
+  }
+
+  @Override
+  protected void onPart(String channel, String sender, String login, String hostname) {
+    events++;
+  }
+
+  @Override
+  protected void onQuit(String sourceNick, String sourceLogin, String sourceHostname, String reason) {
+    events++;
+  }
+
+  @Override
+  protected void onNickChange(String oldNick, String login, String hostname, String newNick) {
+    events++;
+  }
+
+  @Override
+  protected void onMode(String channel, String sourceNick, String sourceLogin, String sourceHostname, String mode) {
+    events++;
+  }
+
+  @Override
+  protected void onUserList(String channel, User[] users) {
+    events += users.length;
+  }
+
+  @Override
+  protected void onServerResponse(int code, String response) {
+    events++;
+  }
+
+  @Override
+  protected void onUnknown(String line) {
+    events++;
+  }
+}
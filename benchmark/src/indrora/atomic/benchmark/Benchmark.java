@@ -0,0 +1,33 @@
+package indrora.atomic.benchmark;
+
+/**
+ * A single benchmark.  The runner calls setUp() once, then calls run()
+ * repeatedly on the same thread, counting one call as one operation.
+ */
+public abstract class Benchmark {
+  private final String name;
+
+  protected Benchmark(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Get the name the benchmark is reported and filtered by
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Prepare the state needed by run(). Not measured.
+   */
+  public void setUp() throws Exception {
+  }
+
+  /**
+   * Execute one operation.
+   *
+   * @return Any value derived from the work done, so the JIT cannot drop it
+   */
+  public abstract int run() throws Exception;
+}
@@ -0,0 +1,92 @@
+package indrora.atomic.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs the benchmarks and prints throughput (ops/s) and the number of
+ * bytes allocated per operation.
+ *
+ * System properties:
+ *   bench.filter  - only run benchmarks whose name contains this text
+ *   bench.seconds - measurement time per benchmark (default 3)
+ *   bench.corpus  - file with recorded raw IRC lines (default: synthetic)
+ */
+public class BenchmarkRunner {
+  private static final int WARMUP_ROUNDS = 2;
+
+  private static int sink;
+
+  public static void main(String[] args) throws Exception {
+    String filter = System.getProperty("bench.filter", "");
+    int seconds = Integer.parseInt(System.getProperty("bench.seconds", "3"));
+    TrafficCorpus corpus = TrafficCorpus.load(System.getProperty("bench.corpus", ""), 20000);
+
+    List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+    benchmarks.addAll(ProtocolBenchmarks.create(corpus));
+    benchmarks.addAll(RenderBenchmarks.create(corpus));
+
+    System.out.println("Corpus: " + corpus.size() + " lines");
+    System.out.println(String.format(Locale.US, "%-24s %16s %14s", "Benchmark", "ops/s", "B/op"));
+
+    for (Benchmark benchmark : benchmarks) {
+      if (filter.length() > 0 && !benchmark.getName().contains(filter)) {
+        continue;
+      }
+      benchmark.setUp();
+
+      for (int i = 0; i < WARMUP_ROUNDS; i++) {
+        measure(benchmark, 1000);
+      }
+      double[] result = measure(benchmark, seconds * 1000L);
+
+      System.out.println(String.format(Locale.US, "%-24s %16.1f %14.1f", benchmark.getName(), result[0], result[1]));
+    }
+
+    if (sink == 42) {
+      System.out.println();
+    }
+  }
+
+  /**
+   * Run a benchmark for the given time.
+   *
+   * @return { operations per second, bytes allocated per operation }
+   */
+  private static double[] measure(Benchmark benchmark, long millis) throws Exception {
+    long deadline = System.nanoTime() + millis * 1000000L;
+    long ops = 0;
+    long bytesBefore = allocatedBytes();
+    long start = System.nanoTime();
+    long now;
+
+    do {
+      // Check the clock only every 64 operations.
+      for (int i = 0; i < 64; i++) {
+        sink += benchmark.run();
+      }
+      ops += 64;
+      now = System.nanoTime();
+    } while (now < deadline);
+
+    long bytes = allocatedBytes() - bytesBefore;
+    double opsPerSecond = ops / ((now - start) / 1e9);
+    double bytesPerOp = bytes < 0 ? Double.NaN : (double) bytes / ops;
+
+    return new double[] { opsPerSecond, bytesPerOp };
+  }
+
+  /**
+   * Bytes allocated by the current thread so far, or -1 if the JVM
+   * cannot tell.
+   */
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+}
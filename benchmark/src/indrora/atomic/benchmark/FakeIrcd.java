@@ -0,0 +1,165 @@
+package indrora.atomic.benchmark;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.KeyStore;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+/**
+ * A scripted IRC server stand-in listening on the loopback interface.
+ *
+ * It accepts a single client, completes registration (001-004 after the
+ * client sent USER) and from then on only writes what the load test
+ * tells it to.  Everything the client sends afterwards is read and
+ * discarded on a separate thread so the client never blocks on a full
+ * socket buffer.
+ */
+public class FakeIrcd {
+  public static final String SERVER_NAME = "irc.loadtest.local";
+
+  private final ServerSocket serverSocket;
+  private Socket client;
+  private BufferedWriter writer;
+  private volatile int linesFromClient = 0;
+
+  /**
+   * Listen on an ephemeral loopback port.
+   *
+   * @param keystore Path to a JKS keystore to serve TLS with, or null
+   *                 for a plain socket
+   * @param password The keystore and key password
+   */
+  public FakeIrcd(String keystore, String password) throws Exception {
+    InetAddress loopback = InetAddress.getByName("127.0.0.1");
+    if (keystore == null) {
+      serverSocket = new ServerSocket(0, 1, loopback);
+    } else {
+      KeyStore ks = KeyStore.getInstance("JKS");
+      FileInputStream in = new FileInputStream(keystore);
+      try {
+        ks.load(in, password.toCharArray());
+      } finally {
+        in.close();
+      }
+      KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+      kmf.init(ks, password.toCharArray());
+      SSLContext context = SSLContext.getInstance("TLS");
+      context.init(kmf.getKeyManagers(), null, null);
+      serverSocket = context.getServerSocketFactory().createServerSocket(0, 1, loopback);
+    }
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Accept the client and run the registration handshake in the
+   * background. Returns immediately.
+   */
+  public void start(final String nick) {
+    Thread acceptor = new Thread("FakeIrcd-accept") {
+      @Override
+      public void run() {
+        try {
+          accept(nick);
+        } catch (IOException e) {
+          System.err.println("FakeIrcd: " + e);
+        }
+      }
+    };
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  private void accept(String nick) throws IOException {
+    client = serverSocket.accept();
+    client.setTcpNoDelay(true);
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(), "UTF-8"));
+    BufferedWriter out = new BufferedWriter(new OutputStreamWriter(client.getOutputStream(), "UTF-8"), 64 * 1024);
+
+    String line;
+    while ((line = reader.readLine()) != null) {
+      linesFromClient++;
+      if (line.startsWith("USER ")) {
+        break;
+      }
+    }
+
+    out.write(":" + SERVER_NAME + " 001 " + nick + " :Welcome to the load test\r\n");
+    out.write(":" + SERVER_NAME + " 002 " + nick + " :Your host is " + SERVER_NAME + "\r\n");
+    out.write(":" + SERVER_NAME + " 003 " + nick + " :This server was created just now\r\n");
+    out.write(":" + SERVER_NAME + " 004 " + nick + " " + SERVER_NAME + " fake-1.0 io ovbkl\r\n");
+    out.flush();
+
+    Thread drain = new Thread("FakeIrcd-drain") {
+      @Override
+      public void run() {
+        try {
+          while (reader.readLine() != null) {
+            linesFromClient++;
+          }
+        } catch (IOException e) {
+          // Client went away.
+        }
+      }
+    };
+    drain.setDaemon(true);
+    drain.start();
+
+    synchronized (this) {
+      writer = out;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Block until the client is registered and the server may send.
+   */
+  public synchronized void awaitClient(long timeoutMillis) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (writer == null) {
+      long left = deadline - System.currentTimeMillis();
+      if (left <= 0) {
+        throw new IllegalStateException("Client did not register within " + timeoutMillis + "ms");
+      }
+      wait(left);
+    }
+  }
+
+  /**
+   * Queue a raw line. It is not written to the socket until flush().
+   */
+  public void write(String line) throws IOException {
+    writer.write(line);
+    writer.write("\r\n");
+  }
+
+  public void flush() throws IOException {
+    writer.flush();
+  }
+
+  public int getLinesFromClient() {
+    return linesFromClient;
+  }
+
+  public void close() {
+    try {
+      if (client != null) {
+        client.close();
+      }
+      serverSocket.close();
+    } catch (IOException e) {
+      // Nothing left to do.
+    }
+  }
+}
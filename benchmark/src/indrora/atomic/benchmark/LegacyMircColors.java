@@ -0,0 +1,176 @@
+package indrora.atomic.benchmark;
+
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The regex based MircColors.toSpannable that MircFormatter replaced,
+ * kept for comparison.
+ *
+ * The algorithm is unchanged: one regex pass per style, deleting the
+ * codes one character at a time, a color pass that resets its matcher
+ * after every code, and a cleanup pass.  SpannableStringBuilder is
+ * replaced by SpanText, which like it moves the spans on every delete;
+ * spans are recorded as ranges and a kind instead of span objects.
+ */
+final class LegacyMircColors {
+  private LegacyMircColors() {}
+
+  static final int BOLD = 0;
+  static final int UNDERLINE = 1;
+  static final int ITALIC = 2;
+  static final int BACKGROUND = 3;
+  static final int FOREGROUND = 4;
+
+  private static final Pattern boldPattern = Pattern.compile("\\x02([^\\x02\\x0F]*)(\\x02|(\\x0F))?");
+  private static final Pattern underlinePattern = Pattern.compile("\\x1F([^\\x1F\\x0F]*)(\\x1F|(\\x0F))?");
+  private static final Pattern italicPattern = Pattern.compile("\\x1D([^\\x1D\\x0F]*)(\\x1D|(\\x0F))?");
+  private static final Pattern inversePattern = Pattern.compile("\\x16([^\\x16\\x0F]*)(\\x16|(\\x0F))?");
+  private static final Pattern colorPattern = Pattern.compile("\\x03(\\d{1,2})(?:,(\\d{1,2}))?([^\\x03\\x0F]*)(\\x03|\\x0F)?");
+  private static final Pattern cleanupPattern = Pattern.compile("(?:\\x02|\\x1F|\\x1D|\\x0F|\\x16|\\x03(?:(?:\\d{1,2})(?:,\\d{1,2})?)?)");
+
+  static SpanText toSpannable(String text) {
+    SpanText ssb = new SpanText(text);
+    replaceControlCodes(boldPattern.matcher(ssb), ssb, BOLD);
+    replaceControlCodes(underlinePattern.matcher(ssb), ssb, UNDERLINE);
+    replaceControlCodes(italicPattern.matcher(ssb), ssb, ITALIC);
+
+    replaceControlCodes(inversePattern.matcher(ssb), ssb, BACKGROUND);
+    int spans = ssb.getSpanCount();
+    for (int i = 0; i < spans; i++) {
+      if (ssb.getKind(i) == BACKGROUND) {
+        ssb.setSpan(FOREGROUND, ssb.getStart(i), ssb.getEnd(i));
+      }
+    }
+
+    Matcher m = colorPattern.matcher(ssb);
+
+    while (m.find()) {
+      int start = m.start();
+      int end = m.end();
+
+      Integer color = Integer.parseInt(m.group(1));
+      int codelength = m.group(1).length()+1;
+
+      if (color <= 15 && color >= 0) {
+        ssb.setSpan(FOREGROUND, start, end);
+      }
+
+      if (m.group(2) != null) {
+        color = Integer.parseInt(m.group(2));
+        if (color <= 15 && color >= 0) {
+          ssb.setSpan(BACKGROUND, start, end);
+        }
+        codelength = codelength + m.group(2).length() + 1;
+      }
+
+      ssb.delete(start, start+codelength);
+      m.reset(ssb);
+    }
+
+    ArrayList<int[]> toremove = new ArrayList<int[]>();
+    m = cleanupPattern.matcher(ssb);
+    while (m.find()) {
+      toremove.add(0, new int[] {m.start(), m.end()});
+    }
+    for (int[] i : toremove) {
+      ssb.delete(i[0], i[1]);
+    }
+    return ssb;
+  }
+
+  private static void replaceControlCodes(Matcher m, SpanText ssb, int kind) {
+    ArrayList<Integer> toremove = new ArrayList<Integer>();
+
+    while (m.find()) {
+      toremove.add(0, m.start());
+      if (m.group(2) != null && m.group(2) != m.group(3)) {
+        toremove.add(0, m.end()-1);
+      }
+      ssb.setSpan(kind, m.start(), m.end());
+    }
+
+    for (Integer i : toremove) {
+      ssb.delete(i, i+1);
+    }
+  }
+
+  /**
+   * Text with spans that follow deletions, standing in for
+   * SpannableStringBuilder.
+   */
+  static final class SpanText implements CharSequence {
+    private final StringBuilder text;
+    private int[] spans = new int[3 * 8];
+    private int spanCount = 0;
+
+    SpanText(String text) {
+      this.text = new StringBuilder(text);
+    }
+
+    void setSpan(int kind, int start, int end) {
+      if (3 * (spanCount + 1) > spans.length) {
+        int[] grown = new int[2 * spans.length];
+        System.arraycopy(spans, 0, grown, 0, 3 * spanCount);
+        spans = grown;
+      }
+      spans[3 * spanCount] = kind;
+      spans[3 * spanCount + 1] = start;
+      spans[3 * spanCount + 2] = end;
+      spanCount++;
+    }
+
+    void delete(int start, int end) {
+      text.delete(start, end);
+      int removed = end - start;
+      for (int i = 0; i < spanCount; i++) {
+        spans[3 * i + 1] = move(spans[3 * i + 1], start, end, removed);
+        spans[3 * i + 2] = move(spans[3 * i + 2], start, end, removed);
+      }
+    }
+
+    private static int move(int offset, int start, int end, int removed) {
+      if (offset >= end) {
+        return offset - removed;
+      }
+      return offset > start ? start : offset;
+    }
+
+    int getSpanCount() {
+      return spanCount;
+    }
+
+    int getKind(int span) {
+      return spans[3 * span];
+    }
+
+    int getStart(int span) {
+      return spans[3 * span + 1];
+    }
+
+    int getEnd(int span) {
+      return spans[3 * span + 2];
+    }
+
+    @Override
+    public int length() {
+      return text.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+      return text.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return text.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+      return text.toString();
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package indrora.atomic.benchmark;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.jibble.pircbot.NetSplit;
+import org.jibble.pircbot.PircBot;
+
+/**
+ * A PircBot that measures how long stamped messages took from the
+ * moment FakeIrcd wrote them until onMessage was called.
+ *
+ * Stamped messages start with "t=" followed by System.nanoTime() of the
+ * server; both ends run in the same JVM so the clocks agree.
+ */
+public class LoadBot extends PircBot {
+  public static final String END_MARKER = "END-OF-LOAD";
+
+  private static final int MAX_SAMPLES = 1 << 20;
+
+  private final long[] samples = new long[MAX_SAMPLES];
+  private int sampleCount = 0;
+  private volatile long messages = 0;
+  private volatile long otherEvents = 0;
+  private volatile long endSeenAt = 0;
+
+  public LoadBot(String nick) {
+    setName(nick);
+  }
+
+  @Override
+  protected void onMessage(Date evDate, String channel, String sender, String login, String hostname, String message) {
+    long now = System.nanoTime();
+    messages++;
+
+    if (message.startsWith("t=")) {
+      int end = message.indexOf(' ');
+      long sent = Long.parseLong(end < 0 ? message.substring(2) : message.substring(2, end));
+      synchronized (samples) {
+        if (sampleCount < MAX_SAMPLES) {
+          samples[sampleCount++] = now - sent;
+        }
+      }
+    } else if (message.equals(END_MARKER)) {
+      synchronized (this) {
+        endSeenAt = now;
+        notifyAll();
+      }
+    }
+  }
+
+  @Override
+  protected void onJoin(String channel, String sender, String login, String hostname) {
+    otherEvents++;
+  }
+
+  @Override
+  protected void onPart(String channel, String sender, String login, String hostname) {
+    otherEvents++;
+  }
+
+  @Override
+  protected void onQuit(String sourceNick, String sourceLogin, String sourceHostname, String reason) {
+    otherEvents++;
+  }
+
+  @Override
+  protected void onNetSplit(NetSplit split) {
+    otherEvents++;
+  }
+
+  @Override
+  protected void onNetJoin(NetSplit join) {
+    otherEvents++;
+  }
+
+  @Override
+  protected void onServerResponse(int code, String response) {
+    otherEvents++;
+  }
+
+  /**
+   * Wait until the end marker was delivered.
+   *
+   * @return System.nanoTime() at delivery, or 0 on timeout
+   */
+  public synchronized long awaitEnd(long timeoutMillis) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (endSeenAt == 0) {
+      long left = deadline - System.currentTimeMillis();
+      if (left <= 0) {
+        break;
+      }
+      wait(left);
+    }
+    return endSeenAt;
+  }
+
+  public long getMessages() {
+    return messages;
+  }
+
+  public long getOtherEvents() {
+    return otherEvents;
+  }
+
+  /**
+   * Latency percentiles in microseconds.
+   *
+   * @return { count, p50, p90, p99, max }
+   */
+  public long[] getLatencyStats() {
+    long[] sorted;
+    synchronized (samples) {
+      sorted = Arrays.copyOf(samples, sampleCount);
+    }
+    if (sorted.length == 0) {
+      return new long[] { 0, 0, 0, 0, 0 };
+    }
+    Arrays.sort(sorted);
+    return new long[] {
+      sorted.length,
+      sorted[(int) (sorted.length * 0.50)] / 1000,
+      sorted[(int) (sorted.length * 0.90)] / 1000,
+      sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.99))] / 1000,
+      sorted[sorted.length - 1] / 1000
+    };
+  }
+}
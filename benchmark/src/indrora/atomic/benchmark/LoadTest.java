@@ -0,0 +1,225 @@
+package indrora.atomic.benchmark;
+
+import java.util.List;
+import java.util.Locale;
+
+import org.jibble.pircbot.SelectorEngine;
+
+/**
+ * End-to-end load test: a PircBot connected over loopback to FakeIrcd.
+ *
+ * System properties:
+ *   loadtest.scenario - flood, joinflood, netsplit, names or replay (default flood)
+ *   loadtest.rate     - lines per second written by the server, 0 = as fast as possible
+ *   loadtest.seconds  - how long to generate load (default 10)
+ *   loadtest.keystore - JKS keystore; if set the server speaks TLS
+ *   loadtest.password - keystore password (default "loadtest")
+ *   loadtest.corpus   - raw IRC log for the replay scenario
+ *   loadtest.engine   - "threads" (default) or "selector" for SelectorEngine
+ *   loadtest.netsplit - netsplit batching window in ms, 0 = off (default)
+ *
+ * Reported are the lines/s written by the server, the lines/s the client
+ * kept up with until the last line was delivered, server-write to
+ * onMessage latency percentiles and the heap growth after a full GC.
+ */
+public class LoadTest {
+  private static final String NICK = "LoadBot";
+  private static final String CHANNEL = "#load";
+
+  public static void main(String[] args) throws Exception {
+    String scenario = System.getProperty("loadtest.scenario", "flood");
+    int rate = Integer.parseInt(System.getProperty("loadtest.rate", "500"));
+    int seconds = Integer.parseInt(System.getProperty("loadtest.seconds", "10"));
+    String keystore = System.getProperty("loadtest.keystore", "");
+    String password = System.getProperty("loadtest.password", "loadtest");
+    String corpusPath = System.getProperty("loadtest.corpus", "");
+    boolean selector = System.getProperty("loadtest.engine", "threads").equals("selector");
+    long netSplitWindow = Long.parseLong(System.getProperty("loadtest.netsplit", "0"));
+
+    Scenario script = createScenario(scenario, corpusPath);
+    boolean tls = keystore.length() > 0;
+
+    FakeIrcd server = new FakeIrcd(tls ? keystore : null, password);
+    server.start(NICK);
+
+    final LoadBot bot = new LoadBot(NICK);
+    bot.setUseSSL(tls);
+    bot.setNetSplitWindow(netSplitWindow);
+    if (selector) {
+      bot.setSelectorEngine(SelectorEngine.getShared());
+    }
+    // After the bot, so that its latency buffer does not count as growth
+    long heapBefore = usedHeap();
+    final int port = server.getPort();
+
+    // connect() returns only after it read a line itself, but the
+    // InputThread is already racing it for the welcome burst; connect
+    // on a helper thread and keep the server talking until it returns.
+    Thread connector = new Thread("LoadTest-connect") {
+      @Override
+      public void run() {
+        try {
+          bot.connect("127.0.0.1", port);
+        } catch (Exception e) {
+          System.err.println("Connect failed: " + e);
+        }
+      }
+    };
+    connector.start();
+    server.awaitClient(10000);
+
+    // Join the channel the load is sent to.
+    server.write(":" + NICK + "!~load@127.0.0.1 JOIN " + CHANNEL);
+    for (String line : TrafficCorpus.namesBurst(CHANNEL, script.initialUsers())) {
+      server.write(line);
+    }
+    server.flush();
+    while (connector.isAlive()) {
+      server.write("PING :" + FakeIrcd.SERVER_NAME);
+      server.flush();
+      connector.join(100);
+    }
+    if (!bot.isConnected()) {
+      server.close();
+      throw new IllegalStateException("Client did not connect");
+    }
+
+    System.out.println(String.format(Locale.US, "Scenario %s, %s, %s, rate %s, %ds",
+                                     scenario, tls ? "TLS" : "plain", selector ? "selector" : "threads",
+                                     rate == 0 ? "unlimited" : rate + " lines/s", seconds));
+
+    long start = System.nanoTime();
+    long deadline = start + seconds * 1000000000L;
+    long written = 0;
+    long now;
+
+    while ((now = System.nanoTime()) < deadline) {
+      long due = rate == 0 ? written + 64 : (now - start) * rate / 1000000000L;
+      if (due <= written) {
+        Thread.sleep(1);
+        continue;
+      }
+      while (written < due) {
+        server.write(script.line(written, System.nanoTime()));
+        written++;
+      }
+      server.flush();
+    }
+    long writeEnd = System.nanoTime();
+
+    server.write(":sender!~s@127.0.0.1 PRIVMSG " + CHANNEL + " :" + LoadBot.END_MARKER);
+    server.flush();
+    long endSeen = bot.awaitEnd(60000);
+
+    long[] latency = bot.getLatencyStats();
+    double writeSeconds = (writeEnd - start) / 1e9;
+    double deliverySeconds = ((endSeen == 0 ? System.nanoTime() : endSeen) - start) / 1e9;
+
+    bot.dispose();
+    server.close();
+    long heapAfter = usedHeap();
+
+    System.out.println(String.format(Locale.US, "Server wrote     %10d lines   %10.1f lines/s", written, written / writeSeconds));
+    System.out.println(String.format(Locale.US, "Client delivered %10d msgs    %10.1f lines/s%s", bot.getMessages(),
+                                     written / deliverySeconds, endSeen == 0 ? " (timed out)" : ""));
+    System.out.println(String.format(Locale.US, "Latency (us)     n=%d p50=%d p90=%d p99=%d max=%d",
+                                     latency[0], latency[1], latency[2], latency[3], latency[4]));
+    System.out.println(String.format(Locale.US, "Other events     %10d", bot.getOtherEvents()));
+    System.out.println(String.format(Locale.US, "Heap growth      %10.1f KiB", (heapAfter - heapBefore) / 1024.0));
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(50);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static Scenario createScenario(String name, String corpusPath) throws Exception {
+    if (name.equals("flood")) {
+      return new Scenario(50) {
+        @Override
+        String line(long index, long nanos) {
+          return ":user" + (index % 50) + "!~u@10.0.0.1 PRIVMSG " + CHANNEL + " :t=" + nanos
+                 + " the quick brown fox jumps over the lazy dog " + index;
+        }
+      };
+    } else if (name.equals("joinflood")) {
+      return new Scenario(100) {
+        @Override
+        String line(long index, long nanos) {
+          if (index % 10 == 0) {
+            return ":user1!~u@10.0.0.1 PRIVMSG " + CHANNEL + " :t=" + nanos + " still here";
+          }
+          return ":clone" + index + "!~c@203.0.113." + (index % 250) + " JOIN " + CHANNEL;
+        }
+      };
+    } else if (name.equals("netsplit")) {
+      // 5,000 users; every cycle they all split off and come back.
+      return new Scenario(5000) {
+        @Override
+        String line(long index, long nanos) {
+          long step = index % 10001;
+          if (step == 10000) {
+            return ":user1!~u@10.0.0.1 PRIVMSG " + CHANNEL + " :t=" + nanos + " split over";
+          }
+          int user = (int) (step % 5000);
+          if (user == 1) {
+            return ":user1!~u@10.0.0.1 PRIVMSG " + CHANNEL + " :t=" + nanos + " still here";
+          }
+          if (step < 5000) {
+            return ":user" + user + "!~u@10.0.0.1 QUIT :hub.example.net leaf.example.net";
+          }
+          return ":user" + user + "!~u@10.0.0.1 JOIN " + CHANNEL;
+        }
+      };
+    } else if (name.equals("names")) {
+      final List<String> burst = TrafficCorpus.namesBurst(CHANNEL, 5000);
+      return new Scenario(0) {
+        @Override
+        String line(long index, long nanos) {
+          int step = (int) (index % (burst.size() + 1));
+          if (step == burst.size()) {
+            return ":user1!~u@10.0.0.1 PRIVMSG " + CHANNEL + " :t=" + nanos + " names done";
+          }
+          return burst.get(step);
+        }
+      };
+    } else if (name.equals("replay")) {
+      final List<String> lines = TrafficCorpus.load(corpusPath, 20000).getLines();
+      return new Scenario(50) {
+        @Override
+        String line(long index, long nanos) {
+          if (index % 100 == 0) {
+            return ":user1!~u@10.0.0.1 PRIVMSG " + CHANNEL + " :t=" + nanos + " replaying";
+          }
+          return lines.get((int) (index % lines.size()));
+        }
+      };
+    }
+    throw new IllegalArgumentException("Unknown scenario: " + name);
+  }
+
+  /**
+   * Generates the lines the server writes during the test.
+   */
+  abstract static class Scenario {
+    private final int initialUsers;
+
+    Scenario(int initialUsers) {
+      this.initialUsers = initialUsers;
+    }
+
+    int initialUsers() {
+      return initialUsers;
+    }
+
+    /**
+     * @param index Number of lines written before this one
+     * @param nanos System.nanoTime() to stamp messages with
+     */
+    abstract String line(long index, long nanos);
+  }
+}
@@ -0,0 +1,249 @@
+package indrora.atomic.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jibble.pircbot.IrcLine;
+import org.jibble.pircbot.LineReader;
+
+/**
+ * Benchmarks for the inbound protocol path of PircBot.
+ */
+public final class ProtocolBenchmarks {
+  private ProtocolBenchmarks() {}
+
+  /**
+   * Create all protocol benchmarks fed by the given corpus
+   */
+  public static List<Benchmark> create(final TrafficCorpus corpus) {
+    List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+    benchmarks.add(new FrameLineReader(corpus));
+    benchmarks.add(new FrameBufferedReader(corpus));
+    benchmarks.add(new LineParse(corpus));
+    benchmarks.add(new HandleLine(corpus));
+    benchmarks.add(new ModeBurst());
+    benchmarks.add(new NamesBurst());
+    return benchmarks;
+  }
+
+  /**
+   * Inbound framing and decoding with LineReader: one line per operation,
+   * read from the corpus as raw bytes.
+   */
+  static class FrameLineReader extends Benchmark {
+    private final byte[] bytes;
+    private LineReader reader;
+
+    FrameLineReader(TrafficCorpus corpus) {
+      super("frame.linereader");
+      bytes = toBytes(corpus);
+    }
+
+    @Override
+    public void setUp() {
+      reader = new LineReader(new LoopingStream(bytes), null);
+    }
+
+    @Override
+    public int run() {
+      try {
+        return reader.readLine().length();
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /**
+   * The same as FrameLineReader with the BufferedReader PircBot used to
+   * read lines with, for comparison.
+   */
+  static class FrameBufferedReader extends Benchmark {
+    private final byte[] bytes;
+    private BufferedReader reader;
+
+    FrameBufferedReader(TrafficCorpus corpus) {
+      super("frame.bufferedreader");
+      bytes = toBytes(corpus);
+    }
+
+    @Override
+    public void setUp() {
+      try {
+        reader = new BufferedReader(new InputStreamReader(new LoopingStream(bytes), "UTF-8"));
+      } catch (UnsupportedEncodingException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public int run() {
+      try {
+        return reader.readLine().length();
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /**
+   * Parsing alone: one corpus line per operation, reading the fields
+   * every handler needs.
+   */
+  static class LineParse extends Benchmark {
+    private final String[] lines;
+    private final IrcLine parser = new IrcLine();
+    private int next = 0;
+
+    LineParse(TrafficCorpus corpus) {
+      super("parse.line");
+      lines = corpus.getLines().toArray(new String[corpus.size()]);
+    }
+
+    @Override
+    public int run() {
+      IrcLine line = parser.parse(lines[next]);
+      next = (next + 1) % lines.length;
+      return line.getNick().length() + line.getParam(0).length() + line.getLastParam().length();
+    }
+  }
+
+  /**
+   * Full handleLine dispatch, one corpus line per operation, against a
+   * bot that sits in the 40 busy channels of the corpus.
+   */
+  static class HandleLine extends Benchmark {
+    private final String[] lines;
+    private BenchBot bot;
+    private int next = 0;
+
+    HandleLine(TrafficCorpus corpus) {
+      super("dispatch.line");
+      lines = corpus.getLines().toArray(new String[corpus.size()]);
+    }
+
+    @Override
+    public void setUp() {
+      bot = new BenchBot();
+      for (int i = 0; i < 40; i++) {
+        for (String line : TrafficCorpus.namesBurst("#channel" + i, 2000)) {
+          bot.feed(line);
+        }
+      }
+    }
+
+    @Override
+    public int run() {
+      int events = bot.feed(lines[next]);
+      next = (next + 1) % lines.length;
+      return events;
+    }
+  }
+
+  /**
+   * processMode: one "MODE +vvvv" (or -vvvv) line per operation in a
+   * channel of 3,000 users.
+   */
+  static class ModeBurst extends Benchmark {
+    private final String[] lines = new String[64];
+    private BenchBot bot;
+    private int next = 0;
+
+    ModeBurst() {
+      super("mode.vvvv");
+    }
+
+    @Override
+    public void setUp() {
+      bot = new BenchBot();
+      for (String line : TrafficCorpus.namesBurst("#big", 3000)) {
+        bot.feed(line);
+      }
+      for (int i = 0; i < lines.length; i++) {
+        int base = (i / 2) * 4;
+        lines[i] = ":op!~op@staff.example.net MODE #big " + (i % 2 == 0 ? "+vvvv" : "-vvvv")
+                   + " user" + base + " user" + (base + 1) + " user" + (base + 2) + " user" + (base + 3);
+      }
+    }
+
+    @Override
+    public int run() {
+      int events = bot.feed(lines[next]);
+      next = (next + 1) % lines.length;
+      return events;
+    }
+  }
+
+  /**
+   * NAMES ingestion: one operation is the complete 353/366 burst of a
+   * 5,000 user channel, after which we part it again.
+   */
+  static class NamesBurst extends Benchmark {
+    private String[] lines;
+    private BenchBot bot;
+
+    NamesBurst() {
+      super("names.5000");
+    }
+
+    @Override
+    public void setUp() {
+      bot = new BenchBot();
+      List<String> burst = TrafficCorpus.namesBurst("#huge", 5000);
+      lines = burst.toArray(new String[burst.size()]);
+    }
+
+    @Override
+    public int run() {
+      for (String line : lines) {
+        bot.feed(line);
+      }
+      return bot.feed(":" + bot.getNick() + "!~bench@localhost PART #huge");
+    }
+  }
+
+  private static byte[] toBytes(TrafficCorpus corpus) {
+    StringBuilder sb = new StringBuilder();
+    for (String line : corpus.getLines()) {
+      sb.append(line).append("\r\n");
+    }
+    try {
+      return sb.toString().getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * An endless stream that repeats the given bytes, handed out in
+   * socket sized chunks.
+   */
+  static class LoopingStream extends InputStream {
+    private final byte[] bytes;
+    private int position = 0;
+
+    LoopingStream(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    @Override
+    public int read() {
+      int b = bytes[position] & 0xff;
+      position = (position + 1) % bytes.length;
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+      int count = Math.min(Math.min(length, 1460), bytes.length - position);
+      System.arraycopy(bytes, position, buffer, offset, count);
+      position = (position + count) % bytes.length;
+      return count;
+    }
+  }
+}
@@ -0,0 +1,274 @@
+package indrora.atomic.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import indrora.atomic.utils.MircFormatter;
+import indrora.atomic.utils.SmileyMatcher;
+
+/**
+ * Benchmarks for the parts of message rendering that do not need the
+ * Android framework.
+ */
+public final class RenderBenchmarks {
+  private RenderBenchmarks() {}
+
+  private static final long SEED = 0x6d697263L;
+
+  // The nick the bot of the corpus goes by
+  private static final String MENTIONED_NICK = "AtomicBench";
+
+  // The smilies of utils.Smilies, which needs Android for its drawables
+  private static final String[] SMILIES = {
+    ">:o", ">:-o", "O:)", "O:-)", ":)", ":-)", ":(", ":-(", ";)", ";-)",
+    ":p", ":-p", ":P", ":-P", ":D", ":-D", ":[", ":-[", ":\\", ":-\\",
+    ":o", ":-o", ":O", ":-O", ":*", ":-*", "8)", "8-)", ":!", ":-!",
+    ":'(", ":'-(", ":X", ":-X", "o_O", "O_o", "XP", ";P", "-_-", "X)",
+    ":3", "o3o", ":'3"
+  };
+
+  /**
+   * Create all render benchmarks; message texts are taken from the
+   * PRIVMSGs of the given corpus
+   */
+  public static List<Benchmark> create(TrafficCorpus corpus) {
+    String[] messages = messages(corpus);
+    String[] colorful = colorful(2000);
+
+    List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+    benchmarks.add(new MircSinglePass("mirc.singlepass", messages));
+    benchmarks.add(new MircLegacy("mirc.legacy", messages));
+    benchmarks.add(new MircSinglePass("mirc.singlepass.heavy", colorful));
+    benchmarks.add(new MircLegacy("mirc.legacy.heavy", colorful));
+    benchmarks.add(new SmiliesTrie(messages));
+    benchmarks.add(new SmiliesRegex(messages));
+    benchmarks.add(new NickMention(mentions(messages)));
+    return benchmarks;
+  }
+
+  /**
+   * MircFormatter, one message per operation
+   */
+  static class MircSinglePass extends Benchmark {
+    private final String[] messages;
+    private int next = 0;
+
+    MircSinglePass(String name, String[] messages) {
+      super(name);
+      this.messages = messages;
+    }
+
+    @Override
+    public int run() {
+      MircFormatter formatter = MircFormatter.parse(messages[next]);
+      next = (next + 1) % messages.length;
+      return formatter.getText().length() + formatter.getRunCount();
+    }
+  }
+
+  /**
+   * The regex passes MircFormatter replaced, one message per operation
+   */
+  static class MircLegacy extends Benchmark {
+    private final String[] messages;
+    private int next = 0;
+
+    MircLegacy(String name, String[] messages) {
+      super(name);
+      this.messages = messages;
+    }
+
+    @Override
+    public int run() {
+      LegacyMircColors.SpanText text = LegacyMircColors.toSpannable(messages[next]);
+      next = (next + 1) % messages.length;
+      return text.length() + text.getSpanCount();
+    }
+  }
+
+  /**
+   * SmileyMatcher, one message per operation
+   */
+  static class SmiliesTrie extends Benchmark {
+    private final String[] messages;
+    private SmileyMatcher matcher;
+    private int next = 0;
+
+    SmiliesTrie(String[] messages) {
+      super("smilies.trie");
+      this.messages = messages;
+    }
+
+    @Override
+    public void setUp() {
+      matcher = new SmileyMatcher(smilies());
+    }
+
+    @Override
+    public int run() {
+      int[] matches = matcher.findAll(messages[next]);
+      next = (next + 1) % messages.length;
+      return matches.length;
+    }
+  }
+
+  /**
+   * How Smilies used to find smilies: an alternation of all of them,
+   * compiled for every message
+   */
+  static class SmiliesRegex extends Benchmark {
+    private final String[] messages;
+    private Map<String, Integer> smilies;
+    private int next = 0;
+
+    SmiliesRegex(String[] messages) {
+      super("smilies.regex");
+      this.messages = messages;
+    }
+
+    @Override
+    public void setUp() {
+      smilies = smilies();
+    }
+
+    @Override
+    public int run() {
+      StringBuilder regex = new StringBuilder("(");
+      for (String smiley : smilies.keySet()) {
+        regex.append(Pattern.quote(smiley));
+        regex.append("|");
+      }
+      regex.deleteCharAt(regex.length()-1);
+      regex.append(")");
+
+      Matcher m = Pattern.compile(regex.toString()).matcher(messages[next]);
+      next = (next + 1) % messages.length;
+
+      int found = 0;
+      while (m.find()) {
+        found += smilies.get(m.group(1));
+      }
+      return found;
+    }
+  }
+
+  /**
+   * IRCConnection.isMentioned(): colors stripped, then the nick pattern
+   * searched for, one message per operation
+   */
+  static class NickMention extends Benchmark {
+    private final String[] messages;
+    private Pattern nickMatch;
+    private int next = 0;
+
+    NickMention(String[] messages) {
+      super("mention.nick");
+      this.messages = messages;
+    }
+
+    @Override
+    public void setUp() {
+      // As IRCConnection.updateNickMatchPattern() builds it
+      nickMatch = Pattern.compile("(?:^|[\\s?!'\ufffd:;,.])" + Pattern.quote(MENTIONED_NICK)
+                                  + "(?:[\\s?!'\ufffd:;,.]|$)", Pattern.CASE_INSENSITIVE);
+    }
+
+    @Override
+    public int run() {
+      boolean mentioned = nickMatch.matcher(MircFormatter.strip(messages[next])).find();
+      next = (next + 1) % messages.length;
+      return mentioned ? 1 : 0;
+    }
+  }
+
+  private static Map<String, Integer> smilies() {
+    Map<String, Integer> smilies = new HashMap<String, Integer>();
+    for (int i = 0; i < SMILIES.length; i++) {
+      smilies.put(SMILIES[i], i);
+    }
+    return smilies;
+  }
+
+  private static String[] messages(TrafficCorpus corpus) {
+    List<String> messages = new ArrayList<String>();
+    for (String line : corpus.getLines()) {
+      int command = line.indexOf(" PRIVMSG ");
+      int text = (command < 0) ? -1 : line.indexOf(" :", command);
+      if (text >= 0) {
+        messages.add(line.substring(text + 2));
+      }
+    }
+    if (messages.isEmpty()) {
+      messages.add("no messages in the corpus");
+    }
+    return messages.toArray(new String[messages.size()]);
+  }
+
+  /**
+   * The messages, one in ten addressed to MENTIONED_NICK and another one
+   * in ten mentioning it in colors at the end
+   */
+  private static String[] mentions(String[] messages) {
+    String[] mentions = new String[messages.length];
+    for (int i = 0; i < messages.length; i++) {
+      if (i % 10 == 0) {
+        mentions[i] = MENTIONED_NICK.toLowerCase() + ": " + messages[i];
+      } else if (i % 10 == 5) {
+        mentions[i] = messages[i] + " \u000304" + MENTIONED_NICK + "\u0003, right?";
+      } else {
+        mentions[i] = messages[i];
+      }
+    }
+    return mentions;
+  }
+
+  /**
+   * Synthesize lines as colorful as IRC gets: rainbow text with a color
+   * code per character, nested styles and color changes mid-word
+   */
+  static String[] colorful(int count) {
+    Random random = new Random(SEED);
+    String[] lines = new String[count];
+    String words = "the quick brown fox jumps over the lazy dog and then some more words";
+
+    for (int i = 0; i < count; i++) {
+      StringBuilder line = new StringBuilder();
+      switch (i % 3) {
+      case 0:
+        // Rainbow
+        for (int j = 0; j < words.length(); j++) {
+          line.append('\u0003').append(random.nextInt(16));
+          if (random.nextBoolean()) {
+            line.append(',').append(random.nextInt(16));
+          }
+          line.append(words.charAt(j));
+        }
+        break;
+      case 1:
+        // Nested styles
+        for (String word : words.split(" ")) {
+          char style = "\u0002\u001d\u001f\u0016".charAt(random.nextInt(4));
+          line.append(style).append(word).append(' ');
+          if (random.nextInt(3) == 0) {
+            line.append('\u000f');
+          }
+        }
+        break;
+      default:
+        // Colored words
+        for (String word : words.split(" ")) {
+          line.append('\u0003').append(String.format("%02d", random.nextInt(16)));
+          line.append(word).append("\u0003 ");
+        }
+        break;
+      }
+      lines[i] = line.toString();
+    }
+    return lines;
+  }
+}
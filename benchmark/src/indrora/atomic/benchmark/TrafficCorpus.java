@@ -0,0 +1,152 @@
+package indrora.atomic.benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Raw IRC lines to feed the benchmarks with.
+ *
+ * A recorded corpus is a plain text file with one raw server line per
+ * line, exactly as received (e.g. captured with the "debug traffic"
+ * setting).  Without one, traffic resembling a busy network is
+ * synthesized from a fixed seed so results are comparable between runs.
+ */
+public class TrafficCorpus {
+  private static final long SEED = 0x41746f6d6963L;
+
+  private static final String[] WORDS = {
+    "the", "build", "is", "green", "again", "anyone", "seen", "this", "crash",
+    "on", "startup", "lol", "thanks", "https://example.org/issue/42", "ok",
+    "reconnecting", "works", "for", "me", "\u0002bold\u0002", "\u000304red\u0003",
+    "\u000312,01blue on black\u000f", ":)", "été", "netsplit?"
+  };
+
+  private final List<String> lines;
+
+  private TrafficCorpus(List<String> lines) {
+    this.lines = lines;
+  }
+
+  /**
+   * Load a recorded corpus, or synthesize one if path is empty
+   */
+  public static TrafficCorpus load(String path, int syntheticSize) throws IOException {
+    if (path == null || path.length() == 0) {
+      return synthesize(syntheticSize);
+    }
+
+    List<String> lines = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.length() > 0) {
+          lines.add(line);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return new TrafficCorpus(lines);
+  }
+
+  /**
+   * Synthesize mixed channel traffic. Joins are always followed by a part
+   * or quit of the same user, so replaying the corpus in a loop keeps the
+   * user lists at a steady size.
+   */
+  public static TrafficCorpus synthesize(int size) {
+    Random random = new Random(SEED);
+    List<String> lines = new ArrayList<String>(size);
+    int joined = 0;
+
+    while (lines.size() < size) {
+      String channel = "#channel" + random.nextInt(40);
+      String nick = "user" + random.nextInt(2000);
+      String prefix = ":" + nick + "!~" + nick + "@host-" + random.nextInt(500) + ".example.net";
+      int kind = random.nextInt(100);
+
+      if (kind < 55) {
+        lines.add(prefix + " PRIVMSG " + channel + " :" + sentence(random));
+      } else if (kind < 70) {
+        lines.add("@time=2014-06-11T08:10:29.668Z;account=" + nick + " " + prefix
+                  + " PRIVMSG " + channel + " :" + sentence(random));
+      } else if (kind < 74) {
+        lines.add(prefix + " PRIVMSG " + channel + " :\u0001ACTION " + sentence(random) + "\u0001");
+      } else if (kind < 77) {
+        lines.add(prefix + " NOTICE " + channel + " :" + sentence(random));
+      } else if (kind < 87) {
+        String joiner = "joiner" + (joined++);
+        String joinPrefix = ":" + joiner + "!~" + joiner + "@198.51.100." + (joined % 250);
+        lines.add(joinPrefix + " JOIN " + channel);
+        if (random.nextBoolean()) {
+          lines.add(joinPrefix + " PART " + channel + " :bye");
+        } else {
+          lines.add(joinPrefix + " QUIT :hub.example.net leaf.example.net");
+        }
+      } else if (kind < 93) {
+        lines.add(prefix + " MODE " + channel + " +o " + nick);
+        lines.add(prefix + " MODE " + channel + " -o " + nick);
+      } else {
+        lines.add(":irc.example.net 372 AtomicBench :- " + sentence(random));
+      }
+    }
+
+    return new TrafficCorpus(lines);
+  }
+
+  private static String sentence(Random random) {
+    StringBuilder sb = new StringBuilder();
+    int words = 3 + random.nextInt(15);
+    for (int i = 0; i < words; i++) {
+      if (i > 0) {
+        sb.append(' ');
+      }
+      sb.append(WORDS[random.nextInt(WORDS.length)]);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * NAMES reply lines (353) followed by the end of names (366) for a
+   * channel holding the given number of users, split like a real server
+   * does at roughly 400 bytes per line.
+   */
+  public static List<String> namesBurst(String channel, int users) {
+    List<String> lines = new ArrayList<String>();
+    String head = ":irc.example.net 353 AtomicBench = " + channel + " :";
+    StringBuilder sb = new StringBuilder(head);
+
+    for (int i = 0; i < users; i++) {
+      if (sb.length() > 400) {
+        lines.add(sb.toString());
+        sb.setLength(0);
+        sb.append(head);
+      } else if (sb.length() > head.length()) {
+        sb.append(' ');
+      }
+      if (i % 50 == 0) {
+        sb.append('@');
+      } else if (i % 7 == 0) {
+        sb.append('+');
+      }
+      sb.append("user").append(i);
+    }
+    lines.add(sb.toString());
+    lines.add(":irc.example.net 366 AtomicBench " + channel + " :End of /NAMES list.");
+    return lines;
+  }
+
+  public List<String> getLines() {
+    return lines;
+  }
+
+  public int size() {
+    return lines.size();
+  }
+}